@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lower bound for the hybridization number of trees, so the k-search starts above k which are
+ * refuted without a SAT call.
+ *
+ * A network with k reticulation nodes displaying two trees gives an agreement forest of them
+ * with at most k + 1 components, so k is at least the rSPR distance of every pair of trees.
+ * The distance is the number of cuts of a maximum agreement forest, it is searched with the
+ * 3-way branching of Whidden, Beiko and Zeh: distances 0, 1, 2, ... are refuted one after
+ * another until a forest is found or the step budget is spent, and every refuted one is sound.
+ */
+public class AgreementForestBound {
+    private final int maxSteps;
+
+    private int steps;
+
+    /**
+     * @param maxSteps number of branching steps for all pairs of trees together
+     */
+    public AgreementForestBound(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * @return maximal lower bound for rSPR distances of pairs of trees, 0 for one tree
+     */
+    public int lowerBound(List<PhylogeneticTree> trees) {
+        Map<String, Integer> taxa = new HashMap<>();
+        PhylogeneticTree first = trees.get(0);
+        for (int i = 0; i < first.getTaxaSize(); i++) {
+            taxa.put(first.getLabel(i), i);
+        }
+        List<Forest> forests = new ArrayList<>();
+        for (PhylogeneticTree tree : trees) {
+            forests.add(new Forest(tree, taxa));
+        }
+        steps = 0;
+        int bound = 0;
+        for (int i = 0; i < forests.size(); i++) {
+            for (int j = i + 1; j < forests.size(); j++) {
+                bound = Math.max(bound, distanceBound(forests.get(i), forests.get(j), bound));
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * @param known distances up to it are not searched, they do not raise the bound
+     * @return rSPR distance, or the largest distance not refuted when the budget is spent
+     */
+    private int distanceBound(Forest t1, Forest t2, int known) {
+        for (int k = known; ; k++) {
+            try {
+                if (hasForest(t1.copy(), t2.copy(), k)) {
+                    return k;
+                }
+            } catch (BudgetExceededException e) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Cuts are made in f2 only, components of f1 are detached when they become components of f2.
+     *
+     * @return whether f2 becomes an agreement forest of f1 with at most k more cuts
+     */
+    private boolean hasForest(Forest f1, Forest f2, int k) {
+        if (++steps > maxSteps) {
+            throw new BudgetExceededException();
+        }
+        while (true) {
+            for (int label = 0; label < f1.labels; label++) {
+                if (f2.node[label] != -1 && f2.parent[f2.node[label]] == -1) {
+                    f1.cut(f1.node[label]);
+                }
+            }
+            int a = -1;
+            for (int label = 0; label < f1.labels && a == -1; label++) {
+                int node = f1.node[label];
+                if (node != -1 && f1.parent[node] != -1 && f1.isLeaf(f1.sibling(node))) {
+                    a = label;
+                }
+            }
+            if (a == -1) {
+                return true;
+            }
+            int c = f1.label[f1.sibling(f1.node[a])];
+            int a2 = f2.node[a], c2 = f2.node[c];
+            if (f2.parent[a2] == f2.parent[c2]) {
+                int label = f1.labels;
+                f1.contract(f1.parent[f1.node[a]], label);
+                f2.contract(f2.parent[a2], label);
+                continue;
+            }
+            if (k == 0) {
+                return false;
+            }
+            if (branch(f1, f2, k, a2) || branch(f1, f2, k, c2)) {
+                return true;
+            }
+            if (f2.root(a2) != f2.root(c2)) {
+                return false;
+            }
+            List<Integer> pendants = f2.pendants(a2, c2);
+            return pendants.size() <= k && branch(f1, f2, k, pendants.stream().mapToInt(i -> i).toArray());
+        }
+    }
+
+    private boolean branch(Forest f1, Forest f2, int k, int... cuts) {
+        Forest cut = f2.copy();
+        for (int node : cuts) {
+            cut.cut(node);
+        }
+        return hasForest(f1.copy(), cut, k - cuts.length);
+    }
+
+    private static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Binary forest with a root leaf above the tree. Leaves carry labels, taxa first and then
+     * labels of contracted cherries; nodes and labels which are gone have no node.
+     */
+    private static class Forest {
+        final int[] parent;
+
+        final int[] left;
+
+        final int[] right;
+
+        final int[] label;
+
+        final int[] node;
+
+        int labels;
+
+        Forest(PhylogeneticTree tree, Map<String, Integer> taxa) {
+            int size = tree.size() + 2;
+            parent = new int[size];
+            left = new int[size];
+            right = new int[size];
+            label = new int[size];
+            node = new int[2 * taxa.size() + 2];
+            Arrays.fill(node, -1);
+            for (int v = 0; v < tree.size(); v++) {
+                List<Integer> children = tree.getChildren(v);
+                parent[v] = tree.getParent(v);
+                left[v] = children.isEmpty() ? -1 : children.get(0);
+                right[v] = children.isEmpty() ? -1 : children.get(1);
+                label[v] = -1;
+                if (tree.isLeaf(v)) {
+                    label[v] = taxa.get(tree.getLabel(v));
+                    node[label[v]] = v;
+                }
+            }
+            int rootLeaf = size - 2, root = size - 1;
+            int oldRoot = 0;
+            while (parent[oldRoot] != -1) {
+                oldRoot = parent[oldRoot];
+            }
+            parent[oldRoot] = root;
+            parent[rootLeaf] = root;
+            left[rootLeaf] = right[rootLeaf] = -1;
+            label[rootLeaf] = taxa.size();
+            node[taxa.size()] = rootLeaf;
+            parent[root] = -1;
+            left[root] = oldRoot;
+            right[root] = rootLeaf;
+            label[root] = -1;
+            labels = taxa.size() + 1;
+        }
+
+        private Forest(Forest other) {
+            parent = other.parent.clone();
+            left = other.left.clone();
+            right = other.right.clone();
+            label = other.label.clone();
+            node = other.node.clone();
+            labels = other.labels;
+        }
+
+        Forest copy() {
+            return new Forest(this);
+        }
+
+        boolean isLeaf(int v) {
+            return label[v] != -1;
+        }
+
+        int sibling(int v) {
+            int p = parent[v];
+            return left[p] == v ? right[p] : left[p];
+        }
+
+        int root(int v) {
+            while (parent[v] != -1) {
+                v = parent[v];
+            }
+            return v;
+        }
+
+        /**
+         * Cuts the edge above v and suppresses its parent, which is left with one child.
+         */
+        void cut(int v) {
+            int p = parent[v];
+            if (p == -1) {
+                return;
+            }
+            int s = sibling(v);
+            int g = parent[p];
+            parent[v] = -1;
+            parent[s] = g;
+            if (g != -1) {
+                if (left[g] == p) {
+                    left[g] = s;
+                } else {
+                    right[g] = s;
+                }
+            }
+            parent[p] = left[p] = right[p] = -1;
+        }
+
+        /**
+         * Replaces the cherry below p with a leaf with the new label.
+         */
+        void contract(int p, int newLabel) {
+            node[label[left[p]]] = -1;
+            node[label[right[p]]] = -1;
+            parent[left[p]] = parent[right[p]] = -1;
+            left[p] = right[p] = -1;
+            label[p] = newLabel;
+            node[newLabel] = p;
+            labels = newLabel + 1;
+        }
+
+        /**
+         * @return roots of subtrees hanging off the path between a and c, which are in one tree
+         */
+        List<Integer> pendants(int a, int c) {
+            boolean[] above = new boolean[parent.length];
+            for (int v = a; v != -1; v = parent[v]) {
+                above[v] = true;
+            }
+            int lca = c;
+            while (!above[lca]) {
+                lca = parent[lca];
+            }
+            List<Integer> pendants = new ArrayList<>();
+            for (int end : new int[]{a, c}) {
+                for (int v = end; parent[v] != lca; v = parent[v]) {
+                    pendants.add(sibling(v));
+                }
+            }
+            return pendants;
+        }
+    }
+}
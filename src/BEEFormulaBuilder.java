@@ -15,6 +15,7 @@ public class BEEFormulaBuilder {
     private boolean enableReticulationConnection;
     private StringBuilder sb;
     private int tempVarCounter;
+    private NodeDomains domains;
 
     public BEEFormulaBuilder(List<PhylogeneticTree> trees,
                              int hybridisationNumber,
@@ -25,6 +26,7 @@ public class BEEFormulaBuilder {
         this.n = trees.get(0).getTaxaSize() - 1; 
         this.sb = new StringBuilder();
         this.tempVarCounter = 0;
+        this.domains = new NodeDomains(n, 2 * n + 1 + k, k, enableReticulationConnection);
         System.out.println("n = " + n + ", k = " + k);
         System.out.println("L = " + makeList(L()));
         System.out.println("V = " + makeList(V()));
@@ -488,53 +490,11 @@ public class BEEFormulaBuilder {
 
 
     private List<Integer> PC(int v) {
-        int treeNodesCount = 2 * n + 1 + k;
-        if (v < 0 || v >= treeNodesCount + k) {
-            throw new RuntimeException("Node number out of bounds: " + v);
-        }
-
-        List<Integer> ans = new ArrayList<>();
-        if (v < n) {
-            return ans;
-        }
-        for (int childNumber : LVR()) {
-            if (v < treeNodesCount) {
-                if (childNumber < v || childNumber >= treeNodesCount) {
-                    ans.add(childNumber);
-                }
-            } else if (childNumber < treeNodesCount - 1 || (enableReticulationConnection && childNumber < v)) {
-                ans.add(childNumber);
-            }
-        }
-
-        return ans;
+        return NodeDomains.asList(domains.children(v));
     }
 
     private List<Integer> PP(int v) {
-        int treeNodesCount = 2 * n + 1 + k;
-        if (v < 0 || v >= treeNodesCount + k) {
-            throw new RuntimeException("Node number out of bounds");
-        }
-
-        List<Integer> ans = new ArrayList<>();
-        if (v == treeNodesCount - 1) {
-            return ans;
-        }
-        for (int parentNumber = n; parentNumber < treeNodesCount + k; parentNumber++) {
-            if (v < n) {
-                ans.add(parentNumber);
-            } else if (v < treeNodesCount) {
-                if (v < parentNumber) {
-                    ans.add(parentNumber);
-                }
-            } else if (parentNumber < treeNodesCount) {
-                ans.add(parentNumber);
-            }
-        }
-        if (enableReticulationConnection && v >= treeNodesCount)
-            ans.add(v + 1);
-
-        return ans;
+        return NodeDomains.asList(domains.parents(v));
     }
 
     private Iterable<Integer> PU(int v) {
@@ -15,7 +15,6 @@ import java.util.*;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
-import java.util.stream.Collectors;
 
 /**
  * Moklev Vyacheslav
@@ -38,6 +37,12 @@ public class BEEMain {
             "-s"}, usage = "launch with this solver and solver options", metaVar = "<string>")
     private String solverOptions = "cryptominisat --threads=4";
 
+    @Option(name = "--portfolio", usage = "run these solver commands with options, separated by semicolons, "
+            + "concurrently and take the first answer; used instead of --solverOptions", metaVar = "<string>")
+    private String portfolio = null;
+
+    private SolverPortfolio solver = null;
+
     @Option(name = "--hybridizationNumber", aliases = {
             "-h"}, usage = "hybridization number, available in -ds mode", metaVar = "<int>")
     private int hn = -1;
@@ -54,6 +59,39 @@ public class BEEMain {
             "-ds"}, handler = BooleanOptionHandler.class, usage = "disables splits, so it is possible to set hybridization number")
     private boolean disableSplits = false;
 
+    @Option(name = "--workDir", usage = "create the workspace for intermediate files in this directory, "
+            + "the system temporary directory by default", metaVar = "<dir>")
+    private String workDirPath = null;
+
+    @Option(name = "--cleanup", usage = "when to delete the workspace: ALWAYS, ON_SUCCESS or NEVER", metaVar = "<policy>")
+    private Workspace.Cleanup cleanup = Workspace.Cleanup.ON_SUCCESS;
+
+    @Option(name = "--inMemory", handler = BooleanOptionHandler.class, usage = "keep intermediate artifacts "
+            + "which external tools do not read, e.g. BEE++ sources, in memory")
+    private boolean inMemory = false;
+
+    @Option(name = "--lowerBoundSteps", usage = "branching steps for the agreement forest lower bound of the "
+            + "hybridization number, the k-search starts from it; 0 disables it", metaVar = "<int>")
+    private int lowerBoundSteps = 1_000_000;
+
+    @Option(name = "--kSearch", usage = "order of k tried by the sequential search: ASCENDING, DESCENDING, GALLOPING "
+            + "or BISECTION; chosen per subtask if not set", metaVar = "<strategy>")
+    private KSearchStrategy kSearchStrategy = null;
+
+    @Option(name = "--journal", usage = "append proven UNSAT k, found networks and solved subtasks to this file",
+            metaVar = "<file>")
+    private String journalPath = null;
+
+    @Option(name = "--resume", handler = BooleanOptionHandler.class, usage = "continue the search from facts "
+            + "of the journal instead of starting it anew, solved subtasks are not searched again")
+    private boolean resume = false;
+
+    private SearchJournal journal = null;
+
+    private SubtaskSearch subtaskSearch = null;
+
+    private Workspace workspace = null;
+
     private FileHandler loggerHandler = null;
 
     Logger logger = Logger.getLogger("Logger");
@@ -94,6 +132,30 @@ public class BEEMain {
             return -1;
         }
 
+        try {
+            solver = portfolio != null ? SolverPortfolio.parse(portfolio, logger)
+                    : new SolverPortfolio(Collections.singletonList(solverOptions), logger);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return -1;
+        }
+
+        if (resume && journalPath == null) {
+            System.out.println("Search can be resumed only with --journal");
+            return -1;
+        }
+
+        if (journalPath != null) {
+            try {
+                journal = new SearchJournal(new File(journalPath), resume);
+            } catch (IOException e) {
+                System.err.println("Can't use journal " + journalPath + ": " + e.getMessage());
+                return -1;
+            }
+        }
+
+        subtaskSearch = new SubtaskSearch(logger, lowerBoundSteps, kSearchStrategy, journal, enableReticulationEdges);
+
         if (logFilePath != null) {
             try {
                 this.loggerHandler = addLoggerHandler(logFilePath);
@@ -103,6 +165,8 @@ public class BEEMain {
             }
         }
 
+        workspace = new Workspace(workDirPath != null ? new File(workDirPath) : null, "phylosat", inMemory, cleanup);
+
         List<SimpleRootedTree> trees = new ArrayList<>();
         for (String filePath : treesPaths) {
             try {
@@ -129,6 +193,7 @@ public class BEEMain {
         }
 
         int finalK = 0;
+        int subtasks = 0;
         List<PhylogeneticNetwork> res = new ArrayList<>();
         for (List<PhylogeneticTree> subtaskTrees : preprocessing(inputTrees)) {
             subtaskTrees = normalize(subtaskTrees);
@@ -138,11 +203,12 @@ public class BEEMain {
             }
             logger.info(loggerStr);
 
+            Workspace subtaskWorkspace = workspace.child("subtask" + subtasks++);
             PhylogeneticNetwork cur;
             if (hn >= 0) {
-                cur = solveSubtask(subtaskTrees, hn, 1_000_000, new long[1]);
+                cur = solveSubtask(subtaskTrees, hn, 1_000_000, subtaskWorkspace).getNetwork();
             } else {
-                cur = solveSubtaskWithoutUNSAT(subtaskTrees);
+                cur = solveSubtaskWithoutUNSAT(subtaskTrees, subtaskWorkspace);
             }
 
             if (cur == null) {
@@ -200,117 +266,57 @@ public class BEEMain {
         return finalK;
     }
 
-    private PhylogeneticNetwork solveSubtaskWithoutUNSAT(List<PhylogeneticTree> trees) throws IOException {
-        int CHECK_FIRST = 3;
-        long FIRST_TIME_LIMIT = 1000; // timelimit is 1 second due to paper
-        long MAX_TL = 1000_000; // 1000 seconds? Too small? FIXME
-        // long TL_COEF = 50;
-
-        int mink = 0;
-        while (mink <= CHECK_FIRST) {
-            long[] time = new long[1];
-            PhylogeneticNetwork res = solveSubtask(trees, mink, FIRST_TIME_LIMIT, time);
-            if (time[0] == -1) {
-                break;
-            }
-            if (res != null) {
-                return res;
-            }
-            mink++;
-        }
-
-        int k = calcUpperBound(trees);
-        long[] time = new long[1];
-        PhylogeneticNetwork cur = null;
-
-        // PhylogeneticNetwork res = solveSubtask(trees, k, MAX_TL, time);
-        // if (time[0] == -1) {
-        // logger.info("There is no solution found in MAX_TL time");
-        // return res;
-        // }
-        // if (res == null) {
-        // logger.info("There is no solution with max bound k = " + k);
-        // return res;
-        // }
-
-        // why ascending? descending is faster
-        int l = mink, r = k + 1;
-        while (l < r) {
-            cur = solveSubtask(trees, l, MAX_TL, time);
-            if (cur == null) {
-                l = l + 1;
-            } else {
-                break;
-            }
-        }
-        return cur;
-
-        // TODO
-        // Heuristics: descending from upper bound with step 2 (or sqrt(k - 3))
-        // When found UNSAT case, roll back to the last known SAT - 1 and continue
-        // with step 1 (or max(last_step / 2, 1))
-
-//        while (k >= mink) {
-//            PhylogeneticNetwork temp = solveSubtask(trees, k, MAX_TL, time);
-//            if (temp == null) {
-//                return cur;
-//            }
-//            cur = temp;
-//            k--;
-//        }
-//        assert false; // should never happen I think FIXME
-//        return null;
-    }
-
-    private int calcUpperBound(List<PhylogeneticTree> trees) {
-        return trees.get(0).getTaxaSize();
+    private PhylogeneticNetwork solveSubtaskWithoutUNSAT(List<PhylogeneticTree> trees, Workspace workspace)
+            throws IOException {
+        return subtaskSearch.solve(trees, (k, timeLimit) -> solveSubtask(trees, k, timeLimit, workspace));
     }
 
-    private static String path(String filepath) throws IOException {
-        return new File(filepath).getCanonicalPath();
+    private static String path(File file) throws IOException {
+        return file.getCanonicalPath();
     }
 
-    private PhylogeneticNetwork solveSubtask(List<PhylogeneticTree> trees, int k, long timeLimit, long[] time)
+    /**
+     * @param workspace workspace of the subtask, files for this k are written to its child
+     * @return result with the network if it is SAT
+     */
+    private SolveResult solveSubtask(List<PhylogeneticTree> trees, int k, long timeLimit, Workspace workspace)
             throws IOException {
+        Workspace job = workspace.child("k" + k);
         logger.info("Making BEE++ source...");
-        PrintWriter pw = new PrintWriter(new FileWriter("out.keksik"), true);
+        PrintWriter pw = new PrintWriter(job.output("out.keksik"), true);
         pw.print(new BEEFormulaBuilder(trees, k, false).build());
         pw.close();
 
         logger.info("Compiling BEE++ to BEE...");
-        BEEppCompiler.fastCompile(new FileInputStream("out.keksik"), new FileOutputStream("out.bee"));
+        BEEppCompiler.fastCompile(job.input("out.keksik"), new FileOutputStream(job.file("out.bee")));
 
         logger.info("Compiling BEE to SAT...");
-        BEERunner.makeDimacs(path("out.bee"), path("bee.dimacs"), path("bee.map"));
-
-        String cnf = new BufferedReader(new FileReader("bee.dimacs")).lines().collect(Collectors.joining("\n"));
+        BEERunner.makeDimacs(path(job.file("out.bee")), path(job.file("bee.dimacs")), path(job.file("bee.map")));
 
         logger.info("Trying to solve problem of size " + trees.get(0).size() + " with " + k + " reticulation nodes");
 
         logger.info("Solving SAT...");
-        boolean[] solution = CryptominisatPort.solve(
-                cnf,
-                null,
-                null,
-                timeLimit,
-                time,
-                solverOptions
-        );
-
-        if (time[0] == -1) {
-            logger.info("TIME LIMIT EXCEEDED (" + timeLimit + ")");
-            return null;
-        }
-        logger.info("Execution time : " + time[0] + " / " + timeLimit);
-        if (solution == null) {
-            logger.info("NO SOLUTION with k = " + k);
-        } else {
-            Map<String, Object> map = MapResolver.resolve(new File("bee.map"), solution);
-            logger.info("SOLUTION FOUND with k = " + k);
-            return BEENetworkBuilder.buildNetwork(map, trees, k);
+        SolveResult result = solver.solve(job.file("bee.dimacs"), timeLimit);
+        logger.info("Solver result with k = " + k + ": " + result);
+
+        switch (result.getStatus()) {
+            case SAT:
+                logger.info("Execution time : " + result.getWallTime() + " / " + timeLimit);
+                Map<String, Object> map = MapResolver.resolve(job.file("bee.map"), result.getModel());
+                logger.info("SOLUTION FOUND with k = " + k);
+                return result.withNetwork(BEENetworkBuilder.buildNetwork(map, trees, k));
+            case UNSAT:
+                logger.info("Execution time : " + result.getWallTime() + " / " + timeLimit);
+                logger.info("NO SOLUTION with k = " + k);
+                break;
+            case TIMEOUT:
+                logger.info("TIME LIMIT EXCEEDED (" + timeLimit + ")");
+                break;
+            case ERROR:
+                logger.warning("SOLVER ERROR with k = " + k + ": " + result.getMessage());
+                break;
         }
-
-        return null;
+        return result;
     }
 
     private List<PhylogeneticTree> normalize(List<PhylogeneticTree> inputTrees) {
@@ -507,11 +513,22 @@ public class BEEMain {
 
     public int run(String[] args) {
         try {
-            return launcher(args);
+            int result = launcher(args);
+            if (workspace != null) {
+                workspace.setSucceeded(result >= 0);
+            }
+            return result;
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         } finally {
+            if (workspace != null) {
+                try {
+                    workspace.close();
+                } catch (IOException e) {
+                    System.err.println("Can't clean up workspace " + workspace + ": " + e.getMessage());
+                }
+            }
             if (this.loggerHandler != null) {
                 this.logger.removeHandler(loggerHandler);
                 loggerHandler.close();
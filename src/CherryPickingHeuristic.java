@@ -0,0 +1,456 @@
+import java.util.*;
+
+/**
+ * Builds a network displaying all trees without a solver, so the hybridization number is bounded
+ * from above and there is an answer if the SAT search runs out of time.
+ *
+ * Every tree gets a root leaf above it. Picking a pair (x, y) removes leaf x from every tree
+ * where x and y form a cherry, and pairs are picked until only the root leaves are left.
+ * The network is built from the sequence in reverse: x is attached to the edge above y when
+ * it is new, otherwise the edge above y gets an edge to a new reticulation above x
+ * [van Iersel et al. 2022]. It displays every tree and has one reticulation per pair beyond
+ * the first n, some of them are redundant and suppressed when the root leaf is removed.
+ *
+ * Cherries of all trees containing both leaves cost nothing. Otherwise the pair is chosen by
+ * finishing the sequence greedily after each candidate, several such runs with random ties and
+ * cheaper randomized greedy runs are tried.
+ */
+public class CherryPickingHeuristic {
+    private static final int LOOKAHEAD_ATTEMPTS = 8;
+
+    private static final int ATTEMPTS = 32;
+
+    // pairs picked while looking ahead, later choices are plain greedy ones
+    private static final long MAX_LOOKAHEAD_STEPS = 1_000_000;
+
+    private final int n;
+
+    private final List<String> labels = new ArrayList<>();
+
+    private final List<Tree> trees = new ArrayList<>();
+
+    private long lookaheadSteps = 0;
+
+    /**
+     * @param trees trees with the same taxa, a fictitious root is ignored
+     */
+    public CherryPickingHeuristic(List<PhylogeneticTree> trees) {
+        PhylogeneticTree first = trees.get(0);
+        Map<String, Integer> taxa = new HashMap<>();
+        for (int i = 0; i < first.getTaxaSize(); i++) {
+            if (!isFictitious(first, i)) {
+                taxa.put(first.getLabel(i), labels.size());
+                labels.add(first.getLabel(i));
+            }
+        }
+        n = labels.size();
+        for (PhylogeneticTree tree : trees) {
+            this.trees.add(new Tree(tree, taxa));
+        }
+    }
+
+    /**
+     * @return network with the fewest reticulation nodes found
+     */
+    public PhylogeneticNetwork build() {
+        PhylogeneticNetwork best = network(pickWithLookahead(copy(trees), null));
+        Random random = new Random(239);
+        for (int attempt = 0; attempt < LOOKAHEAD_ATTEMPTS && best.getK() > 0; attempt++) {
+            PhylogeneticNetwork network = network(pickWithLookahead(copy(trees), random));
+            if (network.getK() < best.getK()) {
+                best = network;
+            }
+        }
+        for (int attempt = 0; attempt < ATTEMPTS && best.getK() > 0; attempt++) {
+            PhylogeneticNetwork network = network(pick(copy(trees), random));
+            if (network.getK() < best.getK()) {
+                best = network;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isFictitious(PhylogeneticTree tree, int leaf) {
+        return tree.hasFictitiousRoot() && leaf == tree.getTaxaSize() - 1;
+    }
+
+    /**
+     * @param random chooses between equally good pairs, the first ones are taken if null
+     * @return cherry picking sequence reducing every tree to the root leaf, which is taxon n
+     */
+    private List<int[]> pick(List<Tree> reduced, Random random) {
+        List<int[]> sequence = new ArrayList<>();
+        for (int[] pair = choose(reduced, random); pair != null; pair = choose(reduced, random)) {
+            apply(reduced, pair);
+            sequence.add(pair);
+        }
+        return sequence;
+    }
+
+    /**
+     * Like {@link #pick(List, Random)}, but a pair which costs a reticulation is chosen
+     * by finishing the sequence greedily after each of the candidates.
+     *
+     * @param random chooses between equally good candidates, the first one is taken if null
+     */
+    private List<int[]> pickWithLookahead(List<Tree> reduced, Random random) {
+        List<int[]> sequence = new ArrayList<>();
+        for (int[] pair = choose(reduced, null); pair != null; pair = choose(reduced, null)) {
+            if (pair[2] == 0 && lookaheadSteps < MAX_LOOKAHEAD_STEPS) {
+                List<int[]> best = new ArrayList<>();
+                int bestLength = Integer.MAX_VALUE;
+                for (int[] candidate : candidates(reduced)) {
+                    List<Tree> copy = copy(reduced);
+                    apply(copy, candidate);
+                    int length = pick(copy, null).size();
+                    lookaheadSteps += length;
+                    if (length < bestLength) {
+                        bestLength = length;
+                        best.clear();
+                    }
+                    if (length == bestLength) {
+                        best.add(candidate);
+                    }
+                }
+                pair = best.get(random == null ? 0 : random.nextInt(best.size()));
+            }
+            apply(reduced, pair);
+            sequence.add(pair);
+        }
+        return sequence;
+    }
+
+    /**
+     * @return pair (x, y) to pick and 1 if it costs no reticulation, null if all trees are reduced
+     */
+    private int[] choose(List<Tree> reduced, Random random) {
+        Map<Long, Integer> cherries = cherries(reduced);
+        if (cherries.isEmpty()) {
+            return null;
+        }
+        List<Long> candidates = new ArrayList<>();
+        int bestScore = -1;
+        for (Map.Entry<Long, Integer> cherry : cherries.entrySet()) {
+            int x = (int) (cherry.getKey() / (n + 1)), y = (int) (cherry.getKey() % (n + 1));
+            int containing = 0;
+            for (Tree tree : reduced) {
+                containing += tree.contains(x) && tree.contains(y) ? 1 : 0;
+            }
+            int score = cherry.getValue() == containing ? Integer.MAX_VALUE : cherry.getValue();
+            if (score > bestScore) {
+                bestScore = score;
+                candidates.clear();
+            }
+            if (score == bestScore) {
+                candidates.add(cherry.getKey());
+            }
+        }
+        long chosen = candidates.get(random == null ? 0 : random.nextInt(candidates.size()));
+        int x = (int) (chosen / (n + 1)), y = (int) (chosen % (n + 1));
+        if (y != n && orientation(reduced, x, y, random)) {
+            int t = x;
+            x = y;
+            y = t;
+        }
+        return new int[]{x, y, bestScore == Integer.MAX_VALUE ? 1 : 0};
+    }
+
+    /**
+     * Leaves which are gone from more trees are removed first, so fewer of them are picked again.
+     *
+     * @return whether y should be removed instead of x
+     */
+    private static boolean orientation(List<Tree> reduced, int x, int y, Random random) {
+        int xTrees = 0, yTrees = 0;
+        for (Tree tree : reduced) {
+            xTrees += tree.contains(x) ? 1 : 0;
+            yTrees += tree.contains(y) ? 1 : 0;
+        }
+        if (xTrees != yTrees) {
+            return yTrees < xTrees;
+        }
+        return random != null && random.nextBoolean();
+    }
+
+    /**
+     * @return both orientations of every cherry, the root leaf is never picked
+     */
+    private List<int[]> candidates(List<Tree> reduced) {
+        List<int[]> candidates = new ArrayList<>();
+        for (long cherry : cherries(reduced).keySet()) {
+            int x = (int) (cherry / (n + 1)), y = (int) (cherry % (n + 1));
+            candidates.add(new int[]{x, y, 0});
+            if (y != n) {
+                candidates.add(new int[]{y, x, 0});
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return cherries {x, y} with x < y as x * (n + 1) + y, with the number of trees having them
+     */
+    private Map<Long, Integer> cherries(List<Tree> reduced) {
+        Map<Long, Integer> cherries = new LinkedHashMap<>();
+        for (Tree tree : reduced) {
+            for (int x = 0; x < n; x++) {
+                int y = tree.cherry(x);
+                if (x < y) {
+                    cherries.merge((long) x * (n + 1) + y, 1, Integer::sum);
+                }
+            }
+        }
+        return cherries;
+    }
+
+    private static void apply(List<Tree> reduced, int[] pair) {
+        for (Tree tree : reduced) {
+            if (tree.cherry(pair[0]) == pair[1]) {
+                tree.remove(pair[0]);
+            }
+        }
+    }
+
+    private static List<Tree> copy(List<Tree> trees) {
+        List<Tree> copy = new ArrayList<>();
+        for (Tree tree : trees) {
+            copy.add(tree.copy());
+        }
+        return copy;
+    }
+
+    private PhylogeneticNetwork network(List<int[]> sequence) {
+        Graph graph = new Graph();
+        int[] leaves = new int[n + 1];
+        Arrays.fill(leaves, -1);
+        int top = graph.addNode();
+        leaves[n] = graph.addNode();
+        graph.addEdge(top, leaves[n]);
+        for (int i = sequence.size() - 1; i >= 0; i--) {
+            int x = sequence.get(i)[0], y = sequence.get(i)[1];
+            int p = graph.subdivide(leaves[y]);
+            if (leaves[x] == -1) {
+                leaves[x] = graph.addNode();
+                graph.addEdge(p, leaves[x]);
+            } else {
+                graph.addEdge(p, graph.subdivide(leaves[x]));
+            }
+        }
+        graph.remove(leaves[n]);
+
+        // leaves, tree nodes with the root last and reticulation nodes, as the network expects
+        List<Integer> order = new ArrayList<>();
+        for (int x = 0; x < n; x++) {
+            order.add(leaves[x]);
+        }
+        int root = -1;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.alive(v) && graph.children.get(v).size() == 2) {
+                if (graph.parents.get(v).isEmpty()) {
+                    root = v;
+                } else {
+                    order.add(v);
+                }
+            }
+        }
+        if (root != -1) {
+            order.add(root);
+        }
+        int k = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.alive(v) && graph.parents.get(v).size() == 2) {
+                order.add(v);
+                k++;
+            }
+        }
+        int[] index = new int[graph.size()];
+        for (int i = 0; i < order.size(); i++) {
+            index[order.get(i)] = i;
+        }
+        List<List<Integer>> network = new ArrayList<>();
+        for (int v : order) {
+            List<Integer> children = new ArrayList<>();
+            for (int child : graph.children.get(v)) {
+                children.add(index[child]);
+            }
+            network.add(children);
+        }
+        return new PhylogeneticNetwork(network, labels, k);
+    }
+
+    /**
+     * Directed graph where removed nodes have neither parents nor children.
+     */
+    private static class Graph {
+        final List<List<Integer>> children = new ArrayList<>();
+
+        final List<List<Integer>> parents = new ArrayList<>();
+
+        int size() {
+            return children.size();
+        }
+
+        boolean alive(int v) {
+            return !children.get(v).isEmpty() || !parents.get(v).isEmpty();
+        }
+
+        int addNode() {
+            children.add(new ArrayList<>());
+            parents.add(new ArrayList<>());
+            return size() - 1;
+        }
+
+        void addEdge(int from, int to) {
+            children.get(from).add(to);
+            parents.get(to).add(from);
+        }
+
+        void removeEdge(int from, int to) {
+            children.get(from).remove(Integer.valueOf(to));
+            parents.get(to).remove(Integer.valueOf(from));
+        }
+
+        /**
+         * @return new node on the edge above the leaf
+         */
+        int subdivide(int leaf) {
+            int parent = parents.get(leaf).get(0);
+            int node = addNode();
+            removeEdge(parent, leaf);
+            addEdge(parent, node);
+            addEdge(node, leaf);
+            return node;
+        }
+
+        /**
+         * Removes the leaf and then nodes left with one parent and one child, parallel edges
+         * and a root with one child.
+         */
+        void remove(int leaf) {
+            removeEdge(parents.get(leaf).get(0), leaf);
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int v = 0; v < size(); v++) {
+                    List<Integer> in = parents.get(v), out = children.get(v);
+                    if (in.size() == 2 && in.get(0).equals(in.get(1))) {
+                        removeEdge(in.get(0), v);
+                        changed = true;
+                    } else if (in.size() == 1 && out.size() == 1) {
+                        int parent = in.get(0), child = out.get(0);
+                        removeEdge(parent, v);
+                        removeEdge(v, child);
+                        addEdge(parent, child);
+                        changed = true;
+                    } else if (in.isEmpty() && out.size() == 1) {
+                        removeEdge(v, out.get(0));
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary tree on taxa numbers with the root leaf n above it, leaves are removed with their
+     * parents suppressed.
+     */
+    private static class Tree {
+        final int[] parent;
+
+        final int[] left;
+
+        final int[] right;
+
+        final int[] leaf;
+
+        final int[] taxon;
+
+        Tree(PhylogeneticTree tree, Map<String, Integer> taxa) {
+            int size = tree.size() + 2;
+            parent = new int[size];
+            left = new int[size];
+            right = new int[size];
+            leaf = new int[taxa.size() + 1];
+            taxon = new int[size];
+            Arrays.fill(taxon, -1);
+            int root = 0;
+            while (tree.getParent(root) != -1) {
+                root = tree.getParent(root);
+            }
+            if (tree.hasFictitiousRoot()) {
+                for (int child : tree.getChildren(root)) {
+                    if (!isFictitious(tree, child)) {
+                        root = child;
+                        break;
+                    }
+                }
+            }
+            for (int v = 0; v < tree.size(); v++) {
+                List<Integer> children = tree.getChildren(v);
+                parent[v] = tree.getParent(v);
+                left[v] = children.isEmpty() ? -1 : children.get(0);
+                right[v] = children.isEmpty() ? -1 : children.get(1);
+                if (tree.isLeaf(v) && !isFictitious(tree, v)) {
+                    taxon[v] = taxa.get(tree.getLabel(v));
+                    leaf[taxon[v]] = v;
+                }
+            }
+            int rootLeaf = size - 2, newRoot = size - 1;
+            parent[root] = parent[rootLeaf] = newRoot;
+            left[rootLeaf] = right[rootLeaf] = -1;
+            taxon[rootLeaf] = taxa.size();
+            leaf[taxa.size()] = rootLeaf;
+            parent[newRoot] = -1;
+            left[newRoot] = root;
+            right[newRoot] = rootLeaf;
+        }
+
+        private Tree(Tree other) {
+            parent = other.parent.clone();
+            left = other.left.clone();
+            right = other.right.clone();
+            leaf = other.leaf.clone();
+            taxon = other.taxon;
+        }
+
+        Tree copy() {
+            return new Tree(this);
+        }
+
+        boolean contains(int x) {
+            return leaf[x] != -1;
+        }
+
+        /**
+         * @return the other leaf of the cherry with x, -1 if x is not in a cherry
+         */
+        int cherry(int x) {
+            if (leaf[x] == -1 || parent[leaf[x]] == -1) {
+                return -1;
+            }
+            return taxon[sibling(leaf[x])];
+        }
+
+        void remove(int x) {
+            int v = leaf[x];
+            int p = parent[v];
+            int s = sibling(v);
+            int g = parent[p];
+            parent[s] = g;
+            if (g != -1) {
+                if (left[g] == p) {
+                    left[g] = s;
+                } else {
+                    right[g] = s;
+                }
+            }
+            leaf[x] = -1;
+        }
+
+        private int sibling(int v) {
+            int p = parent[v];
+            return left[p] == v ? right[p] : left[p];
+        }
+    }
+}
@@ -1,101 +1,512 @@
+import cnf.ClauseSink;
+import cnf.DimacsStreamSink;
 import org.apache.commons.exec.*;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Vladimir Ulyantsev Date: 24.04.13 Time: 19:15
  */
 public class CryptominisatPort {
-    public static boolean[] solve(String CNFString, PrintWriter CNFPrintWriter, PrintWriter solverPrintWriter,
-                                  long timeLimit, long[] executionTime, String solverOptions) throws IOException {
+    private static final Pattern STATISTIC = Pattern.compile(
+            "^c?\\s*(conflicts|decisions|propagations)\\s*:\\s*([0-9.]+)(?:\\s*([KMG])\\b)?",
+            Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    private static final Pattern CPU_TIME = Pattern.compile(
+            "^c?\\s*(?:cpu time|total time \\(this thread\\)|process-time)\\s*:\\s*([0-9.]+)",
+            Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    /**
+     * Writes formula to standard input of the solver.
+     */
+    public interface Input {
+        void writeTo(OutputStream in) throws IOException;
+    }
+
+    public static SolveResult solve(String CNFString, PrintWriter CNFPrintWriter, PrintWriter solverPrintWriter,
+                                    long timeLimit, String solverOptions) throws IOException {
         if (CNFPrintWriter != null) {
             CNFPrintWriter.println(CNFString);
             CNFPrintWriter.flush();
         }
 
-        File tmpFile = new File("tmp.cnf");
-        PrintWriter tmpPW = new PrintWriter(tmpFile);
-        tmpPW.print(CNFString);
-        tmpPW.close();
-        String command = solverOptions + " tmp.cnf";
-        CommandLine cmdLine = CommandLine.parse(command);
+        return solve(in -> {
+            Writer writer = new OutputStreamWriter(in);
+            writer.write(CNFString);
+            writer.flush();
+        }, solverPrintWriter, timeLimit, solverOptions);
+    }
+
+    /**
+     * Runs solver directly on already written DIMACS file, so the formula is never copied through memory.
+     */
+    public static SolveResult solve(File CNFFile, PrintWriter solverPrintWriter,
+                                    long timeLimit, String solverOptions) throws IOException {
+        return run(fileCommandLine(solverOptions, CNFFile), null, solverPrintWriter, timeLimit);
+    }
+
+    /**
+     * Feeds the formula to standard input of the solver while it is generated, so nothing is written to disk.
+     * DIMACS header goes first, so the counts have to be exact, e.g. from {@link FormulaSizeEstimator}.
+     * The solver is started before generation and its time limit includes it.
+     *
+     * @param formula generates clauses into the given sink, e.g. {@code builder::buildCNF}
+     */
+    public static SolveResult solve(Consumer<ClauseSink> formula, int variablesCount, int clausesCount,
+                                    PrintWriter solverPrintWriter, long timeLimit, String solverOptions)
+            throws IOException {
+        return solve(dimacsInput(formula, variablesCount, clausesCount), solverPrintWriter, timeLimit, solverOptions);
+    }
+
+    static Input dimacsInput(Consumer<ClauseSink> formula, int variablesCount, int clausesCount) {
+        return in -> {
+            DimacsStreamSink sink = new DimacsStreamSink(in, variablesCount, clausesCount);
+            try {
+                formula.accept(sink);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            sink.finish();
+        };
+    }
+
+    /**
+     * Runs solver without arguments after the options, so it reads the formula from standard input.
+     */
+    public static SolveResult solve(Input input, PrintWriter solverPrintWriter,
+                                    long timeLimit, String solverOptions) throws IOException {
+        return run(CommandLine.parse(solverOptions), input, solverPrintWriter, timeLimit);
+    }
+
+    private static SolveResult run(CommandLine cmdLine, Input input, PrintWriter solverPrintWriter, long timeLimit)
+            throws IOException {
+        Run run = new Run(cmdLine, input, solverPrintWriter, timeLimit, null);
+        run.start();
+        return run.waitFor();
+    }
+
+    static CommandLine fileCommandLine(String solverOptions, File CNFFile) {
+        CommandLine cmdLine = CommandLine.parse(solverOptions);
+        cmdLine.addArgument(CNFFile.getPath());
+        return cmdLine;
+    }
+
+    /**
+     * One launched solver process which can be killed before it finishes.
+     */
+    static class Run {
+        private final CommandLine cmdLine;
+
+        private final long timeLimit;
+
+        private final ExecuteWatchdog watchdog;
+
+        private final SolverStreams streams;
+
+        private final DefaultExecuteResultHandler resultHandler;
+
+        private volatile boolean cancelled = false;
 
-        DefaultExecutor executor = new DefaultExecutor();
-        DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
+        private SolveResult result = null;
 
-        executor.setExitValue(20);
-        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeLimit);
-        executor.setWatchdog(watchdog);
+        private long startTime;
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ByteArrayOutputStream errStream = new ByteArrayOutputStream();
-        PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream, errStream);
-        executor.setStreamHandler(streamHandler);
+        /**
+         * @param onComplete called on the executor thread when the process exits, may be null
+         */
+        Run(CommandLine cmdLine, Input input, PrintWriter solverPrintWriter, long timeLimit, Runnable onComplete) {
+            this.cmdLine = cmdLine;
+            this.timeLimit = timeLimit;
+            this.watchdog = new ExecuteWatchdog(timeLimit);
+            this.streams = new SolverStreams(input, solverPrintWriter);
+            this.resultHandler = new DefaultExecuteResultHandler() {
+                @Override
+                public void onProcessComplete(int exitValue) {
+                    super.onProcessComplete(exitValue);
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
+                }
 
-        long curTime = System.currentTimeMillis();
-        try {
+                @Override
+                public void onProcessFailed(ExecuteException e) {
+                    super.onProcessFailed(e);
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
+                }
+            };
+        }
+
+        void start() throws IOException {
+            DefaultExecutor executor = new DefaultExecutor();
+            executor.setExitValue(20);
+            executor.setWatchdog(watchdog);
+            executor.setStreamHandler(streams);
+            startTime = System.currentTimeMillis();
             executor.execute(cmdLine, resultHandler);
-            resultHandler.waitFor();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
         }
 
-        executionTime[0] = System.currentTimeMillis() - curTime;
-        if (executionTime[0] > timeLimit) {
-            executionTime[0] = -1;
+        /**
+         * @return result of the process, the same one for every call
+         */
+        SolveResult waitFor() {
+            if (result != null) {
+                return result;
+            }
+            // interruption of the waiting thread kills the solver, the flag is restored afterwards
+            boolean interrupted = false;
+            while (!resultHandler.hasResult()) {
+                try {
+                    resultHandler.waitFor();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    cancel();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            long time = System.currentTimeMillis() - startTime;
+
+            SolveResult.Status status;
+            String message = null;
+            if (cancelled) {
+                status = SolveResult.Status.CANCELLED;
+            } else if (watchdog.killedProcess() || time > timeLimit) {
+                status = SolveResult.Status.TIMEOUT;
+            } else if (getExitValue() == 20 && (streams.inputError == null || streams.pipeClosed)) {
+                // the solver may stop reading once it refutes the complete clauses it has read,
+                // which is valid; a failed writer is an error even if the solver refuted its part
+                status = SolveResult.Status.UNSAT;
+            } else if (getExitValue() == 10 && streams.model != null && streams.inputError == null) {
+                status = SolveResult.Status.SAT;
+            } else {
+                status = SolveResult.Status.ERROR;
+                message = "Solver exited with code " + getExitValue()
+                        + (streams.inputError != null ? ", can't write formula to it: " + streams.inputError : "")
+                        + "\n" + streams.output;
+                System.err.println(message);
+            }
+            if (status == SolveResult.Status.TIMEOUT) {
+                System.err.println("Process was timeouted");
+            }
+            long[] statistics = readStatistics(streams.output);
+            result = new SolveResult(status, streams.model, time, statistics[3], statistics[0], statistics[1],
+                    statistics[2], message);
+            return result;
+        }
+
+        /**
+         * Kills the process, its result is not definitive then.
+         */
+        void cancel() {
+            cancelled = true;
+            watchdog.destroyProcess();
+        }
+
+        boolean isDone() {
+            return resultHandler.hasResult();
         }
-        
-        if (resultHandler.getExitValue() != 10) {
-            System.err.println("Cryptomonisat exited with error code " + resultHandler.getExitValue());
-            System.err.println(outputStream.toString());
-            return null;
+
+        int getExitValue() {
+            return resultHandler.getExitValue();
+        }
+    }
+
+    /**
+     * Finds the last statistics lines in the solver output, e.g. "c conflicts : 4196" and
+     * "c propagations : 2.43 M" of cryptominisat or "CPU time : 0.01 s" of minisat.
+     *
+     * @return conflicts, decisions, propagations and CPU time in milliseconds, -1 for missing ones
+     */
+    static long[] readStatistics(CharSequence output) {
+        long[] statistics = {-1, -1, -1, -1};
+        Matcher matcher = STATISTIC.matcher(output);
+        while (matcher.find()) {
+            int index = Arrays.asList("conflicts", "decisions", "propagations").indexOf(matcher.group(1).toLowerCase());
+            double value = Double.parseDouble(matcher.group(2));
+            String suffix = matcher.group(3) == null ? "" : matcher.group(3).toUpperCase();
+            value *= suffix.equals("K") ? 1e3 : suffix.equals("M") ? 1e6 : suffix.equals("G") ? 1e9 : 1;
+            statistics[index] = Math.round(value);
         }
-        
-        if (watchdog.killedProcess()) {
-            System.err.println("Process was timeouted");
-            return null;
+        matcher = CPU_TIME.matcher(output);
+        while (matcher.find()) {
+            statistics[3] = Math.round(1000 * Double.parseDouble(matcher.group(1)));
         }
+        return statistics;
+    }
 
-        String ansLine = "";
-        Scanner input = new Scanner(outputStream.toString());
-        String line;
-        while (input.hasNextLine()) {
-            line = input.nextLine();
+    /**
+     * Reads solver output line by line, "v" lines are parsed into the model right away.
+     *
+     * @param output gets all lines except "v" ones, for error messages
+     * @return value of every variable up to the largest one in the model, variables missing
+     * from it are true; null if there are no "v" lines
+     */
+    static boolean[] readModel(InputStream in, PrintWriter solverPrintWriter, StringBuilder output)
+            throws IOException {
+        ModelParser parser = new ModelParser();
+        StringBuilder line = new StringBuilder();
+        boolean lineStart = true, modelLine = false, hasModel = false;
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                char c = (char) (buffer[i] & 0xff);
+                if (lineStart) {
+                    modelLine = c == 'v';
+                    hasModel |= modelLine;
+                    lineStart = false;
+                }
+                if (modelLine) {
+                    parser.accept(c);
+                }
+                if (c == '\n') {
+                    if (solverPrintWriter != null) {
+                        solverPrintWriter.println(line);
+                    }
+                    if (!modelLine) {
+                        output.append(line).append('\n');
+                    }
+                    line.setLength(0);
+                    lineStart = true;
+                } else if (!modelLine || solverPrintWriter != null) {
+                    line.append(c);
+                }
+            }
+        }
+        parser.accept('\n');
+        if (line.length() > 0) {
             if (solverPrintWriter != null) {
                 solverPrintWriter.println(line);
             }
-            if (line.length() > 0 && line.charAt(0) == 'v') {
-                ansLine += line.substring(2);
-                if (!(line.charAt(line.length() - 1) == ' '))
-                    ansLine += " ";
+            if (!modelLine) {
+                output.append(line).append('\n');
             }
         }
-        input.close();
-        // tmpFile.delete();
+        return hasModel ? parser.getModel() : null;
+    }
+
+    private static class ModelParser {
+        private byte[] values = new byte[1024]; // 1 true, -1 false, 0 missing
+
+        private int maxVariable = 0;
+
+        private int number = 0;
+
+        private boolean negative = false;
 
-        if (ansLine.isEmpty()) {
-            return null;
+        void accept(char c) {
+            if (c >= '0' && c <= '9') {
+                number = 10 * number + (c - '0');
+            } else if (c == '-') {
+                negative = true;
+            } else {
+                if (number != 0) {
+                    if (number >= values.length) {
+                        values = Arrays.copyOf(values, Math.max(2 * values.length, number + 1));
+                    }
+                    values[number] = (byte) (negative ? -1 : 1);
+                    maxVariable = Math.max(maxVariable, number);
+                }
+                number = 0;
+                negative = false;
+            }
+        }
+
+        boolean[] getModel() {
+            boolean[] ans = new boolean[maxVariable];
+            for (int i = 0; i < ans.length; i++) {
+                ans[i] = values[i + 1] >= 0;
+            }
+            return ans;
+        }
+    }
+
+    /**
+     * Passes only complete lines to the solver, so a writer which fails never leaves a clause cut
+     * in the middle; the last line without a line break is written by {@link #finish()}.
+     */
+    static class LineOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private byte[] buffer = new byte[1 << 16];
+
+        private int size = 0;
+
+        /**
+         * Whether writing to the solver failed, i.e. it closed its input.
+         */
+        boolean failed = false;
+
+        LineOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length) {
+                    drain();
+                    if (size == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                    }
+                }
+                int count = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, count);
+                size += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * Writes everything up to the last line break.
+         */
+        private void drain() throws IOException {
+            int end = size;
+            while (end > 0 && buffer[end - 1] != '\n') {
+                end--;
+            }
+            send(end);
         }
 
-        String[] splitAns = ansLine.split(" ");
-        ArrayList<Integer> model = new ArrayList<Integer>();
-        int max_c = 0;
-        for (int i = 0; i < splitAns.length; i++) {
-            int c = Integer.parseInt(splitAns[i]);
-            model.add(c);
-            max_c = Math.max(Math.abs(c), max_c);
+        private void send(int end) throws IOException {
+            if (end == 0) {
+                return;
+            }
+            try {
+                out.write(buffer, 0, end);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            System.arraycopy(buffer, end, buffer, 0, size - end);
+            size -= end;
         }
-        boolean[] ans = new boolean[max_c];
-        for (int i = 0; i < ans.length; i++) {
-            ans[i] = true;
+
+        void finish() throws IOException {
+            send(size);
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
         }
-        for (int m : model) {
-            if (!(m == 0)) {
-                ans[Math.abs(m) - 1] = m > 0;
+    }
+
+    /**
+     * Writes the input on one thread and parses standard output on another, error stream is drained
+     * into the output kept for error messages.
+     */
+    private static class SolverStreams implements ExecuteStreamHandler {
+        private final Input input;
+
+        private final PrintWriter solverPrintWriter;
+
+        private final StringBuilder output = new StringBuilder();
+
+        private final StringBuilder errors = new StringBuilder();
+
+        private OutputStream processInput;
+
+        private InputStream processOutput;
+
+        private InputStream processErrors;
+
+        private Thread[] threads;
+
+        private volatile Throwable inputError;
+
+        private volatile boolean pipeClosed = false;
+
+        private volatile boolean[] model;
+
+        SolverStreams(Input input, PrintWriter solverPrintWriter) {
+            this.input = input;
+            this.solverPrintWriter = solverPrintWriter;
+        }
+
+        @Override
+        public void setProcessInputStream(OutputStream os) {
+            processInput = os;
+        }
+
+        @Override
+        public void setProcessErrorStream(InputStream is) {
+            processErrors = is;
+        }
+
+        @Override
+        public void setProcessOutputStream(InputStream is) {
+            processOutput = is;
+        }
+
+        @Override
+        public void start() {
+            threads = new Thread[]{
+                    new Thread(() -> {
+                        LineOutputStream in = new LineOutputStream(processInput);
+                        try {
+                            if (input != null) {
+                                input.writeTo(in);
+                            }
+                            in.finish();
+                        } catch (Throwable e) {
+                            inputError = e;
+                            pipeClosed = in.failed && e instanceof IOException;
+                        } finally {
+                            try {
+                                processInput.close();
+                            } catch (IOException ignored) {
+                                // the solver has exited already
+                            }
+                        }
+                    }, "solver input"),
+                    new Thread(() -> {
+                        try {
+                            model = readModel(processOutput, solverPrintWriter, output);
+                        } catch (IOException ignored) {
+                            // output is cut by a killed process
+                        }
+                    }, "solver output"),
+                    new Thread(() -> {
+                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(processErrors))) {
+                            String line;
+                            while ((line = reader.readLine()) != null) {
+                                errors.append(line).append('\n');
+                            }
+                        } catch (IOException ignored) {
+                        }
+                    }, "solver errors")
+            };
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        @Override
+        public void stop() {
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
+            output.append(errors);
         }
-        return ans;
     }
 }
@@ -99,17 +99,16 @@ public class DummyMain {
         String cnf = new BufferedReader(new FileReader("bee.dimacs")).lines().collect(Collectors.joining("\n"));
 
         System.err.println("Solving SAT...");
-        long[] time = new long[1];
-        boolean[] result = CryptominisatPort.solve(
+        SolveResult solved = CryptominisatPort.solve(
                 cnf, 
                 null, 
                 null, 
                 1_000_000, 
-                time, 
                 "cryptominisat --threads=4"
         );
+        boolean[] result = solved.getModel();
         System.out.println(Arrays.toString(result));
-        System.out.println(Arrays.toString(time));
+        System.out.println(solved);
 
         if (result != null) {
             PrintWriter resPw = new PrintWriter("result");
@@ -0,0 +1,158 @@
+import cnf.ClauseArena;
+import cnf.DimacsFileSink;
+import jebl.evolution.io.ImportException;
+import jebl.evolution.io.NewickImporter;
+import jebl.evolution.trees.SimpleRootedTree;
+import jebl.evolution.trees.Tree;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compares formula variants: for every input file, every at-most-one encoding and every symmetry
+ * breaking level reports variables, clauses, generation time and solve time of the formula for fixed k.
+ *
+ * Ablation of symmetry breaking is done by running it for k one less than the optimum,
+ * where the formula is unsatisfiable, with e.g. "--symmetry NONE,RETICULATION,FULL".
+ */
+public class EncodingBenchmark {
+    @Argument(usage = "files or directories with trees, directories are scanned recursively (data/tests by default)",
+            metaVar = "paths")
+    private List<String> paths = new ArrayList<>();
+
+    @Option(name = "--hybridizationNumber", aliases = {"-h"}, usage = "hybridization number of built formulas", metaVar = "<int>")
+    private int k = 2;
+
+    @Option(name = "--encodings", usage = "comma-separated at-most-one encodings to compare", metaVar = "<string>")
+    private String encodings = "pairwise,sequential,commander:3,product,binary,bimander:2,bimander:4";
+
+    @Option(name = "--families", usage = "comma-separated families the encoding is applied to, * for all", metaVar = "<string>")
+    private String families = "*";
+
+    @Option(name = "--symmetry", usage = "comma-separated symmetry breaking levels to compare", metaVar = "<string>")
+    private String symmetryLevels = "NONE";
+
+    @Option(name = "--solverOptions", aliases = {"-s"}, usage = "solver and its options", metaVar = "<string>")
+    private String solverOptions = "cryptominisat --threads=4";
+
+    @Option(name = "--timeLimit", aliases = {"-t"}, usage = "solver time limit in milliseconds", metaVar = "<long>")
+    private long timeLimit = 60_000;
+
+    @Option(name = "--noSolve", usage = "only count variables and clauses")
+    private boolean noSolve = false;
+
+    @Option(name = "--cnf", usage = "temporary CNF file", metaVar = "<file>")
+    private String cnfFilePath = "benchmark.cnf";
+
+    public static void main(String[] args) throws IOException, ImportException {
+        Locale.setDefault(Locale.US);
+        EncodingBenchmark benchmark = new EncodingBenchmark();
+        CmdLineParser parser = new CmdLineParser(benchmark);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.out.print("Usage: EncodingBenchmark");
+            parser.printSingleLineUsage(System.out);
+            System.out.println();
+            parser.printUsage(System.out);
+            return;
+        }
+        benchmark.run();
+    }
+
+    private void run() throws IOException, ImportException {
+        if (paths.isEmpty()) {
+            paths.add("data/tests");
+        }
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            collect(new File(path), files);
+        }
+        Collections.sort(files);
+
+        System.out.println("file\tencoding\tsymmetry\tvars\tclauses\tbuild ms\tsolve ms\tresult");
+        File cnfFile = new File(cnfFilePath);
+        for (File file : files) {
+            List<PhylogeneticTree> trees = load(file);
+            for (String encoding : encodings.split(",")) {
+                for (String level : symmetryLevels.split(",")) {
+                    String spec = familySpec(encoding.trim());
+                    SymmetryBreaking symmetryBreaking = SymmetryBreaking.valueOf(level.trim());
+                    long start = System.currentTimeMillis();
+                    FormulaBuilder builder = new FormulaBuilder(trees, k, false, true);
+                    builder.setAtMostOneEncodings(spec);
+                    builder.setSymmetryBreaking(symmetryBreaking);
+                    ClauseArena formula = builder.buildCNF();
+                    long buildTime = System.currentTimeMillis() - start;
+
+                    String solveTime = "-";
+                    String result = "-";
+                    if (!noSolve) {
+                        DimacsFileSink sink = new DimacsFileSink(cnfFile);
+                        try {
+                            formula.writeTo(sink);
+                            sink.finish(builder.getVariablesCount());
+                        } finally {
+                            sink.close();
+                        }
+                        SolveResult solved = CryptominisatPort.solve(cnfFile, null, timeLimit, solverOptions);
+                        if (solved.getStatus() == SolveResult.Status.TIMEOUT) {
+                            result = "TL";
+                        } else {
+                            solveTime = String.valueOf(solved.getWallTime());
+                            result = solved.getStatus().toString();
+                        }
+                    }
+                    System.out.println(file.getName() + "\t" + encoding.trim() + "\t" + symmetryBreaking + "\t"
+                            + builder.getVariablesCount() + "\t" + builder.getClausesCount() + "\t" + buildTime + "\t"
+                            + solveTime + "\t" + result);
+                }
+            }
+        }
+        cnfFile.delete();
+    }
+
+    private String familySpec(String encoding) {
+        StringBuilder spec = new StringBuilder();
+        for (String family : families.split(",")) {
+            if (spec.length() > 0) {
+                spec.append(",");
+            }
+            spec.append(family.trim()).append("=").append(encoding);
+        }
+        return spec.toString();
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, files);
+                }
+            }
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Loads trees the way Main does for a subtask which is not normalized: with a fictitious root.
+     */
+    private static List<PhylogeneticTree> load(File file) throws IOException, ImportException {
+        List<PhylogeneticTree> trees = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            NewickImporter importer = new NewickImporter(reader, false);
+            for (Tree tree : importer.importTrees()) {
+                PhylogeneticTree phTree = new PhylogeneticTree((SimpleRootedTree) tree);
+                phTree.addFictitiousRoot();
+                trees.add(phTree);
+            }
+        }
+        return trees;
+    }
+}
@@ -1,5 +1,14 @@
+import cnf.AtMostOne;
+import cnf.AtMostOneEncoding;
+import cnf.ClauseArena;
+import cnf.ClauseSink;
+import cnf.VariableRegistry;
+import cnf.VariableRegistry.Family;
+
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Vladimir Ulyantsev
@@ -7,51 +16,124 @@ import java.util.concurrent.Callable;
  * Time: 21:01
  */
 public class FormulaBuilder {
+    public static final String[] AMO_FAMILIES = {"parent", "left", "right", "ch", "lp", "rp", "up", "x"};
+
+    private static final AtMostOneEncoding DEFAULT_AMO = AtMostOne.bimander(2);
+
+    // part of formula descriptions, must be changed whenever generated clauses change
+    private static final int FORMULA_VERSION = 1;
+
     private int n;
 
     private int k;
 
     private int treeNodesCount;
 
+    private NodeDomains domains;
+
     private List<PhylogeneticTree> phTrees;
 
-    private Map<String, Integer> m;
+    private VariableRegistry vars;
+
+    private Family parentVars, leftVars, rightVars, chVars, lpVars, rpVars;
 
-    private StringBuilder sb, hb;
+    private Family dirVars, usedVars, rusedVars, upVars, xVars;
+
+    private Family actVars;
+
+    private ClauseSink sink;
 
     private boolean enableReticulationConnection;
 
     private boolean disableComments;
 
-    private int clausesCount;
+    private boolean incremental;
 
-//    public FormulaBuilder(List<PhylogeneticTree> trees, int hybridisationNumber, Map<String, Integer> translationMap) {
-//        this(trees, hybridisationNumber, translationMap, false, false);
-//    }
+    private int parallelism = 1;
+
+    private SymmetryBreaking symmetryBreaking = SymmetryBreaking.NONE;
+
+    // "family_tree" -> [first, last] ids, filled while declaring variables
+    private Map<String, int[]> intervals;
+
+    private Map<String, Family> amoFamilies;
+
+    // tree -> tree node - n -> network nodes the tree node may be mapped to
+    private int[][][] xDomains;
+
+    // tree -> taxon -> network nodes which may be up of the taxon
+    private int[][][] taxonUpDomains;
+
+    private Map<String, AtMostOneEncoding> amoEncodings = new HashMap<>();
+
+    // routes clauses of AMO encodings through addClause, so they are counted
+    private final ClauseSink clauses = new ClauseSink() {
+        @Override
+        public void addClause(int... literals) {
+            FormulaBuilder.this.addClause(literals);
+        }
+
+        @Override
+        public void comment(String text) {
+            commentCNF("%s", text);
+        }
+    };
+
+    private int clausesCount;
 
     public FormulaBuilder(List<PhylogeneticTree> trees,
                           int hybridisationNumber,
-                          Map<String, Integer> translationMap,
                           boolean enableReticulationConnection,
                           boolean disableComments) {
         this.phTrees = trees;
 
         this.k = hybridisationNumber;
-        this.m = translationMap;
 
         this.n = phTrees.get(0).getTaxaSize();
         this.treeNodesCount = 2 * n - 1 + k;
         this.enableReticulationConnection = enableReticulationConnection;
         this.disableComments = disableComments;
         this.clausesCount = 0;
+        this.domains = new NodeDomains(n, treeNodesCount, k, enableReticulationConnection);
 
         System.out.println("n = " + n);
         System.out.println("k = " + k);
         System.out.println("froot = " + phTrees.get(0).hasFictitiousRoot());
     }
 
-    public String getHelpMap() {
-        return this.hb.toString();
+    /**
+     * Worker which shares variables of the parent builder and writes clauses of one tree to its own sink.
+     */
+    private FormulaBuilder(FormulaBuilder parent, ClauseSink sink) {
+        this.n = parent.n;
+        this.k = parent.k;
+        this.treeNodesCount = parent.treeNodesCount;
+        this.domains = parent.domains;
+        this.phTrees = parent.phTrees;
+        this.vars = parent.vars;
+        this.parentVars = parent.parentVars;
+        this.leftVars = parent.leftVars;
+        this.rightVars = parent.rightVars;
+        this.chVars = parent.chVars;
+        this.lpVars = parent.lpVars;
+        this.rpVars = parent.rpVars;
+        this.dirVars = parent.dirVars;
+        this.usedVars = parent.usedVars;
+        this.rusedVars = parent.rusedVars;
+        this.upVars = parent.upVars;
+        this.xVars = parent.xVars;
+        this.actVars = parent.actVars;
+        this.enableReticulationConnection = parent.enableReticulationConnection;
+        this.disableComments = parent.disableComments;
+        this.incremental = parent.incremental;
+        this.symmetryBreaking = parent.symmetryBreaking;
+        this.intervals = parent.intervals;
+        this.amoFamilies = parent.amoFamilies;
+        this.xDomains = parent.xDomains;
+        this.taxonUpDomains = parent.taxonUpDomains;
+        this.amoEncodings = parent.amoEncodings;
+        this.sink = sink;
+        this.clausesCount = 0;
     }
 
     public int getClausesCount() {
@@ -59,18 +141,234 @@ public class FormulaBuilder {
     }
 
     public int getVariablesCount() {
-        return this.m.size();
+        return this.vars.size();
+    }
+
+    /**
+     * @return "family_p1_p2" -> DIMACS id view of variables, built on first call
+     */
+    public Map<String, Integer> getVariableMap() {
+        return this.vars.asMap();
+    }
+
+    public VariableRegistry getVariables() {
+        return this.vars;
+    }
+
+    /**
+     * In incremental mode hybridisation number given to constructor is an upper bound K.
+     * Every reticulation node {@code treeNodesCount + i} together with tree node {@code n + i}
+     * is guarded by activation literal act_i, and act_i implies act_{i + 1}, so the formula
+     * for any k <= K is selected by {@link #getAssumptions(int)} without rebuilding.
+     */
+    public void setIncremental(boolean incremental) {
+        if (this.vars != null) {
+            throw new RuntimeException("Formula is already built");
+        }
+        this.incremental = incremental;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    List<PhylogeneticTree> getTrees() {
+        return phTrees;
+    }
+
+    NodeDomains getDomains() {
+        return domains;
+    }
+
+    boolean isReticulationConnectionEnabled() {
+        return enableReticulationConnection;
+    }
+
+    public SymmetryBreaking getSymmetryBreaking() {
+        return symmetryBreaking;
+    }
+
+    /**
+     * Orderings stronger than {@link SymmetryBreaking#NONE} are used only without
+     * reticulation-reticulation edges, otherwise reticulation numbers are not interchangeable.
+     */
+    public void setSymmetryBreaking(SymmetryBreaking symmetryBreaking) {
+        this.symmetryBreaking = symmetryBreaking;
+    }
+
+    /**
+     * Per-tree constraints are generated on a fork-join pool of the given size into separate
+     * clause arenas, which are appended in tree order, so the formula does not depend on it.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return canonical description of everything the formula depends on: equal descriptions
+     * give equal formulas, so the description keys cached formulas
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder("formula " + FORMULA_VERSION);
+        sb.append("\nk ").append(k)
+                .append("\nreticulation edges ").append(enableReticulationConnection)
+                .append("\ncomments ").append(!disableComments)
+                .append("\nincremental ").append(incremental)
+                .append("\nsymmetry ").append(symmetryBreaking);
+        for (String family : AMO_FAMILIES) {
+            sb.append("\namo ").append(family).append(' ').append(getAtMostOneEncoding(family).getName());
+        }
+        for (PhylogeneticTree tree : phTrees) {
+            sb.append("\ntree ").append(tree.size()).append(' ').append(tree.getTaxaSize())
+                    .append(' ').append(tree.hasFictitiousRoot());
+            for (int node = 0; node < tree.size(); node++) {
+                sb.append("\n").append(node).append(' ').append(tree.getParent(node)).append(' ')
+                        .append(tree.getChildren(node));
+                if (tree.isLeaf(node)) {
+                    sb.append(' ').append(tree.getLabel(node));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return literals which switch incremental formula to exactly {@code activeK} reticulation nodes
+     */
+    public int[] getAssumptions(int activeK) {
+        if (!incremental || activeK < 0 || activeK > k) {
+            throw new IllegalArgumentException("Can not select " + activeK + " reticulation nodes out of " + k);
+        }
+        int inactive = k - activeK;
+        List<Integer> ans = new ArrayList<>();
+        if (inactive > 0) {
+            ans.add(-getVar(actVars, inactive - 1));
+        }
+        if (inactive < k) {
+            ans.add(getVar(actVars, inactive));
+        }
+        int[] assumptions = new int[ans.size()];
+        for (int i = 0; i < assumptions.length; i++) {
+            assumptions[i] = ans.get(i);
+        }
+        return assumptions;
+    }
+
+    /**
+     * Activation order makes act_0, ..., act_{K - 1} a unary counter of inactive nodes,
+     * so a single literal bounds the number of active ones.
+     *
+     * @return literals which allow at most {@code maxK} active reticulation nodes of incremental formula
+     */
+    public int[] getBoundAssumptions(int maxK) {
+        if (!incremental || maxK < 0) {
+            throw new IllegalArgumentException("Can not bound " + k + " reticulation nodes by " + maxK);
+        }
+        return maxK >= k ? new int[0] : new int[]{-getVar(actVars, k - maxK - 1)};
+    }
+
+    /**
+     * @param model model[i] is the value of variable i + 1
+     * @return number of active reticulation nodes in a model of incremental formula
+     */
+    public int getActiveCount(boolean[] model) {
+        if (!incremental) {
+            throw new IllegalStateException("Formula is not incremental");
+        }
+        int inactive = 0;
+        while (inactive < k && !model[getVar(actVars, inactive) - 1]) {
+            inactive++;
+        }
+        return k - inactive;
+    }
+
+    /**
+     * Variable map of the network with {@code activeK} reticulation nodes in incremental mode: inactive
+     * nodes are dropped and active ones renumbered as if formula was built for {@code activeK} directly.
+     */
+    public Map<String, Integer> getVariableMap(int activeK) {
+        if (!incremental) {
+            return getVariableMap();
+        }
+        int inactive = k - activeK;
+        Map<String, Integer> ans = new HashMap<>();
+        for (int var = 1; var <= vars.size(); var++) {
+            Family family = vars.getFamily(var);
+            int[] params = vars.getParams(var);
+            int firstNode;
+            if (family == parentVars || family == leftVars || family == rightVars
+                    || family == chVars || family == lpVars || family == rpVars) {
+                firstNode = 0;
+            } else if (family == dirVars || family == usedVars || family == rusedVars || family == upVars) {
+                firstNode = 1;
+            } else if (family == xVars) {
+                firstNode = 2;
+            } else {
+                continue;
+            }
+            boolean active = true;
+            for (int i = firstNode; i < params.length; i++) {
+                params[i] = activeNodeNumber(params[i], inactive);
+                active &= params[i] >= 0;
+            }
+            if (active) {
+                ans.put(VariableRegistry.nameOf(family, params), var);
+            }
+        }
+        return ans;
     }
 
-    public String buildCNF() {
-        if (this.m.size() > 0) {
-            throw new RuntimeException("Given translation map (variable -> int) is not empty");
+    private int activeNodeNumber(int nodeNumber, int inactive) {
+        if (nodeNumber < n) {
+            return nodeNumber;
+        } else if (nodeNumber < n + inactive) {
+            return -1;
+        } else if (nodeNumber < treeNodesCount) {
+            return nodeNumber - inactive;
+        } else if (nodeNumber < treeNodesCount + inactive) {
+            return -1;
+        }
+        return nodeNumber - 2 * inactive;
+    }
+
+    /**
+     * Generates the formula into a compact in-memory clause arena.
+     */
+    public ClauseArena buildCNF() {
+        ClauseArena arena = new ClauseArena();
+        buildCNF(arena);
+        return arena;
+    }
+
+    /**
+     * Generates the formula clause by clause into the given sink. The "p cnf" header is
+     * not emitted, its values are available afterwards through {@link #getVariablesCount()}
+     * and {@link #getClausesCount()}.
+     */
+    public void buildCNF(ClauseSink sink) {
+        if (this.vars != null) {
+            throw new RuntimeException("Formula is already built");
         }
 
-        this.sb = new StringBuilder();
-        this.hb = new StringBuilder();
+        this.vars = new VariableRegistry();
+        declareFamilies();
+        this.sink = sink;
+        this.intervals = new HashMap<>();
+        this.amoFamilies = new HashMap<>();
+        this.xDomains = new int[phTrees.size()][][];
+        this.taxonUpDomains = new int[phTrees.size()][][];
         commentCNF("n = %d; k = %d; trees count = %d", n, k, phTrees.size());
 
+        if (incremental) {
+            addActivationVariables();
+        }
         addParentConstraints();
         addLeftRightConstraints();
         addReticulationChildConstraints();
@@ -79,150 +377,430 @@ public class FormulaBuilder {
         addParentOrderConstraints();
         commentCNF("solve point for iterate solver");
         for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
-            addDirUsedConstraints(treeNumber);
-            if (this.enableReticulationConnection) {
-                addRUsedConstraints(treeNumber);
+            declareTreeVariables(treeNumber);
+        }
+        if (parallelism > 1 && phTrees.size() > 1) {
+            addTreeConstraintsInParallel();
+        } else {
+            for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
+                addTreeConstraints(treeNumber);
             }
-            addUpConstraints(treeNumber);
-            addXConstraints(treeNumber);
-            addDataConstraints(treeNumber);
-            commentCNF("solve point for iterate solver");
         }
 
         addALOdirConstraints();
 
         for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
-            for (int otherTree = 0; otherTree < phTrees.size(); otherTree++) {
-                if (treeNumber != otherTree) {
-                    addConstraintsForPairOfTrees(treeNumber, otherTree);
+            for (int otherTree = treeNumber + 1; otherTree < phTrees.size(); otherTree++) {
+                addConstraintsForPairOfTrees(treeNumber, otherTree);
+            }
+        }
+        if (incremental) {
+            addActivationConstraints();
+        }
+        commentCNF("solve point for iterate solver");
+    }
+
+    private void declareFamilies() {
+        int nodesCount = treeNodesCount + k;
+        int treesCount = phTrees.size();
+        parentVars = vars.family("parent", nodesCount, nodesCount);
+        leftVars = vars.family("left", nodesCount, nodesCount);
+        rightVars = vars.family("right", nodesCount, nodesCount);
+        chVars = vars.family("ch", nodesCount, nodesCount);
+        lpVars = vars.family("lp", nodesCount, nodesCount);
+        rpVars = vars.family("rp", nodesCount, nodesCount);
+        dirVars = vars.family("dir", treesCount, nodesCount);
+        usedVars = vars.family("used", treesCount, nodesCount);
+        rusedVars = vars.family("rused", treesCount, nodesCount);
+        upVars = vars.family("up", treesCount, nodesCount, nodesCount);
+        xVars = vars.family("x", treesCount, 2 * n - 1, treeNodesCount);
+        actVars = vars.family("act", Math.max(k, 1));
+    }
+
+    /**
+     * Variables of all per-tree families are created before any per-tree clause,
+     * in the same order as the sequential generation would create them.
+     */
+    private void declareTreeVariables(int treeNumber) {
+        restrictTreeDomains(treeNumber);
+
+        int intervalStart = vars.size() + 1;
+        for (int nodeNumber : reticulationNodes()) {
+            createVar(dirVars, treeNumber, nodeNumber);
+        }
+        recordInterval("dir_" + treeNumber, intervalStart);
+
+        intervalStart = vars.size() + 1;
+        for (int nodeNumber : treeNodes()) {
+            createVar(usedVars, treeNumber, nodeNumber);
+        }
+        recordInterval("used_" + treeNumber, intervalStart);
+
+        if (enableReticulationConnection) {
+            intervalStart = vars.size() + 1;
+            for (int nodeNumber : reticulationNodes()) {
+                createVar(rusedVars, treeNumber, nodeNumber);
+            }
+            recordInterval("rused_" + treeNumber, intervalStart);
+        }
+
+        intervalStart = vars.size() + 1;
+        for (int nodeNumber : allNodes()) {
+            for (int up : possibleUp(nodeNumber)) {
+                if (nodeNumber < n && !contains(upDomain(treeNumber, nodeNumber), up)) {
+                    vars.exclude(upVars, treeNumber, nodeNumber, up);
+                    continue;
+                }
+                createVar(upVars, treeNumber, nodeNumber, up);
+            }
+        }
+        recordInterval("up_" + treeNumber, intervalStart);
+        declareAtMostOne("up", "up_" + treeNumber, allNodes(), v -> upDomain(treeNumber, v));
+
+        intervalStart = vars.size() + 1;
+        for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
+            for (int nodeNumber : treeNodes()) {
+                if (!contains(xDomain(treeNumber, treeNodeNumber), nodeNumber)) {
+                    vars.exclude(xVars, treeNumber, treeNodeNumber, nodeNumber);
+                    continue;
+                }
+                createVar(xVars, treeNumber, treeNodeNumber, nodeNumber);
+            }
+        }
+        recordInterval("x_" + treeNumber, intervalStart);
+        declareAtMostOne("x", "x_" + treeNumber, NodeDomains.range(n, 2 * n - 1), tv -> xDomain(treeNumber, tv));
+    }
+
+    /**
+     * Heap structure of a tree fixes some x variables to false: a tree node with s non-leaf nodes in
+     * its subtree can't be mapped to the s lowest tree nodes of the network, a tree node of depth d
+     * can't be mapped to the d highest ones, and the root is mapped to the root. Such x variables
+     * and up variables of taxa equivalent to them are excluded, the remaining ones form the domains.
+     */
+    private void restrictTreeDomains(int treeNumber) {
+        PhylogeneticTree phTree = phTrees.get(treeNumber);
+        xDomains[treeNumber] = new int[n - 1][];
+        for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
+            int[] range = mappingRange(treeNumber, treeNodeNumber);
+            xDomains[treeNumber][treeNodeNumber - n] = NodeDomains.range(range[0], range[1]);
+        }
+
+        taxonUpDomains[treeNumber] = new int[n][];
+        for (int taxon = 0; taxon < n; taxon++) {
+            int[] range = mappingRange(treeNumber, phTree.getParent(taxon));
+            List<Integer> domain = new ArrayList<>();
+            for (int up : possibleUp(taxon)) {
+                if (up >= treeNodesCount || (up >= range[0] && up < range[1])) {
+                    domain.add(up);
                 }
             }
+            taxonUpDomains[treeNumber][taxon] = toArray(domain);
+        }
+    }
+
+    /**
+     * @return [from, to) network tree nodes which non-leaf tree node may be mapped to
+     */
+    int[] mappingRange(int treeNumber, int treeNodeNumber) {
+        PhylogeneticTree phTree = phTrees.get(treeNumber);
+        if (phTree.getParent(treeNodeNumber) == -1) {
+            return new int[]{treeNodesCount - 1, treeNodesCount};
+        }
+        int subtreeNonLeafCount = phTree.getSubtreeSize(treeNodeNumber) / 2 - 1;
+        return new int[]{n + subtreeNonLeafCount, Math.max(treeNodesCount - phTree.getDepth(treeNodeNumber),
+                n + subtreeNonLeafCount)};
+    }
+
+    private int[] xDomain(int treeNumber, int treeNodeNumber) {
+        return xDomains[treeNumber][treeNodeNumber - n];
+    }
+
+    private int[] upDomain(int treeNumber, int nodeNumber) {
+        return nodeNumber < n ? taxonUpDomains[treeNumber][nodeNumber] : possibleUp(nodeNumber);
+    }
+
+    private static boolean contains(int[] domain, int value) {
+        return Arrays.binarySearch(domain, value) >= 0;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] ans = new int[list.size()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = list.get(i);
         }
+        return ans;
+    }
+
+    private void addTreeConstraints(int treeNumber) {
+        addDirUsedConstraints(treeNumber);
+        if (this.enableReticulationConnection) {
+            addRUsedConstraints(treeNumber);
+        }
+        addUpConstraints(treeNumber);
+        addXConstraints(treeNumber);
+        addDataConstraints(treeNumber);
         commentCNF("solve point for iterate solver");
-        String CNFProperties = String.format("p cnf %d %d\n", this.m.size(), this.clausesCount);
-        this.sb.insert(0, CNFProperties);
+    }
 
-        return this.sb.toString();
+    private void addTreeConstraintsInParallel() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<ClauseArena>> tasks = new ArrayList<>();
+            for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
+                final int t = treeNumber;
+                tasks.add(pool.submit(() -> {
+                    ClauseArena arena = new ClauseArena();
+                    new FormulaBuilder(this, arena).addTreeConstraints(t);
+                    return arena;
+                }));
+            }
+            for (ForkJoinTask<ClauseArena> task : tasks) {
+                ClauseArena arena = task.join();
+                arena.writeTo(sink);
+                clausesCount += arena.size();
+            }
+        } finally {
+            pool.shutdown();
+        }
     }
 
-    private interface Getter {
-        List<Integer> get(int i);
+    private void recordInterval(String name, int intervalStart) {
+        intervals.put(name, new int[]{intervalStart, vars.size()});
     }
 
-    private void addPairwiseAtMostOne(String varName, List<Integer> varFirst, Getter secondGetter) {
-        commentCNF("At-most-one constraints for " + varName + "_v_u");
-        for (int nodeNumber : varFirst) {
-            for (int firstNumber : secondGetter.get(nodeNumber)) {
-                for (int secondNumber : secondGetter.get(nodeNumber)) {
-                    if (firstNumber < secondNumber) {
-                        addClause(-getVar(varName, nodeNumber, firstNumber),
-                                -getVar(varName, nodeNumber, secondNumber));
-                    }
+    private void addActivationVariables() {
+        int intervalStart = vars.size() + 1;
+        for (int i = 0; i < k; i++) {
+            vars.create(actVars, i);
+        }
+        commentCNF("Variables act_i is in [%d, %d]", intervalStart, vars.size());
+
+        commentCNF("Activation order: act_i => act_{i + 1}");
+        for (int i = 0; i + 1 < k; i++) {
+            addClause(-vars.get(actVars, i), vars.get(actVars, i + 1));
+        }
+    }
+
+    private void addActivationConstraints() {
+        commentCNF("Variables of inactive nodes are false");
+        for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
+            for (int parentNumber : possibleParents(nodeNumber)) {
+                addActivityGuard(getVar(parentVars, nodeNumber, parentNumber), nodeNumber, parentNumber);
+            }
+        }
+        for (int nodeNumber = n; nodeNumber < treeNodesCount; nodeNumber++) {
+            for (int childNumber : possibleChildren(nodeNumber)) {
+                addActivityGuard(getVar(leftVars, nodeNumber, childNumber), nodeNumber, childNumber);
+                addActivityGuard(getVar(rightVars, nodeNumber, childNumber), nodeNumber, childNumber);
+            }
+        }
+        for (int nodeNumber : reticulationNodes()) {
+            for (int childNumber : possibleChildren(nodeNumber)) {
+                addActivityGuard(getVar(chVars, nodeNumber, childNumber), nodeNumber, childNumber);
+            }
+            for (int parentNumber : possibleParents(nodeNumber)) {
+                addActivityGuard(getVar(lpVars, nodeNumber, parentNumber), nodeNumber, parentNumber);
+                addActivityGuard(getVar(rpVars, nodeNumber, parentNumber), nodeNumber, parentNumber);
+            }
+        }
+        for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
+            for (int nodeNumber : reticulationNodes()) {
+                addActivityGuard(getVar(dirVars, treeNumber, nodeNumber), nodeNumber, nodeNumber);
+                if (enableReticulationConnection) {
+                    addActivityGuard(getVar(rusedVars, treeNumber, nodeNumber), nodeNumber, nodeNumber);
+                }
+            }
+            for (int nodeNumber : treeNodes()) {
+                addActivityGuard(getVar(usedVars, treeNumber, nodeNumber), nodeNumber, nodeNumber);
+            }
+            for (int nodeNumber : allNodes()) {
+                for (int up : upDomain(treeNumber, nodeNumber)) {
+                    addActivityGuard(getVar(upVars, treeNumber, nodeNumber, up), nodeNumber, up);
+                }
+            }
+            for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
+                for (int nodeNumber : xDomain(treeNumber, treeNodeNumber)) {
+                    addActivityGuard(getVar(xVars, treeNumber, treeNodeNumber, nodeNumber), nodeNumber, nodeNumber);
                 }
             }
         }
     }
 
-    static int log(int x, int base) {
-        return (int) Math.ceil(Math.log(x) / Math.log(base));
+    /**
+     * @return activation variable of node or 0 if node is always active
+     */
+    private int activity(int nodeNumber) {
+        if (!incremental) {
+            return 0;
+        }
+        if (nodeNumber >= n && nodeNumber < n + k) {
+            return getVar(actVars, nodeNumber - n);
+        }
+        if (nodeNumber >= treeNodesCount) {
+            return getVar(actVars, nodeNumber - treeNodesCount);
+        }
+        return 0;
     }
 
+    private void addActivityGuard(int var, int firstNode, int secondNode) {
+        int firstActivity = activity(firstNode);
+        int secondActivity = activity(secondNode);
+        if (firstActivity != 0) {
+            addClause(firstActivity, -var);
+        }
+        if (secondActivity != 0 && secondActivity != firstActivity) {
+            addClause(secondActivity, -var);
+        }
+    }
 
-    private void addBimanderAtMostOne(String varName, List<Integer> varFirst, Getter secondGetter) {
-        {
-            int intervalStart = m.size() + 1;
-            for (int nodeNumber : varFirst) {
-                int n = secondGetter.get(nodeNumber).size();
-                int k = n / 2 + n % 2;
-                for (int bit = 0; bit < log(k, 2); ++bit) {
-                    createVar("cmd" + varName, nodeNumber, bit);
-                    hb.append("cmd" + varName).append(nodeNumber).append(" ").append(bit).append(" ").append(m.size()).append("\n");
+    /**
+     * At-least-one clause of a node is switched off when the node is inactive.
+     */
+    private List<Integer> relaxIfInactive(List<Integer> clause, int nodeNumber) {
+        int activity = activity(nodeNumber);
+        if (activity != 0) {
+            clause.add(-activity);
+        }
+        return clause;
+    }
+
+    private interface Getter {
+        int[] get(int i);
+    }
+
+    /**
+     * Sets at-most-one encoding for a family: parent, left, right, ch, lp, rp, up or x.
+     * Default is bimander with group size 2.
+     */
+    public void setAtMostOneEncoding(String family, AtMostOneEncoding encoding) {
+        if (!Arrays.asList(AMO_FAMILIES).contains(family)) {
+            throw new IllegalArgumentException("Unknown AMO family: " + family);
+        }
+        amoEncodings.put(family, encoding);
+    }
+
+    /**
+     * Sets encodings from a comma-separated list like "parent=bimander:2,up=sequential",
+     * see {@link #parseAtMostOneEncodings(String)}.
+     */
+    public void setAtMostOneEncodings(String spec) {
+        for (Map.Entry<String, AtMostOneEncoding> entry : parseAtMostOneEncodings(spec).entrySet()) {
+            setAtMostOneEncoding(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Parses "family=encoding" pairs separated by commas; family "*" stands for all families.
+     */
+    public static Map<String, AtMostOneEncoding> parseAtMostOneEncodings(String spec) {
+        Map<String, AtMostOneEncoding> ans = new LinkedHashMap<>();
+        for (String item : spec.split(",")) {
+            if (item.trim().isEmpty()) {
+                continue;
+            }
+            int eq = item.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("AMO encoding must be set as family=encoding: " + item);
+            }
+            String family = item.substring(0, eq).trim();
+            AtMostOneEncoding encoding = AtMostOne.parse(item.substring(eq + 1));
+            if (family.equals("*")) {
+                for (String f : AMO_FAMILIES) {
+                    ans.put(f, encoding);
                 }
+            } else if (Arrays.asList(AMO_FAMILIES).contains(family)) {
+                ans.put(family, encoding);
+            } else {
+                throw new IllegalArgumentException("Unknown AMO family: " + family);
             }
-            commentCNF("Variables " + "cmd" + varName + " are in [%d, %d]", intervalStart, m.size());
         }
+        return ans;
+    }
 
-        commentCNF("At-most-one constraints for " + varName + "_v_u");
+    public AtMostOneEncoding getAtMostOneEncoding(String family) {
+        AtMostOneEncoding encoding = amoEncodings.get(family);
+        return encoding == null ? DEFAULT_AMO : encoding;
+    }
+
+    private void declareAtMostOne(String family, String varName, int[] varFirst, Getter secondGetter) {
+        AtMostOneEncoding encoding = getAtMostOneEncoding(family);
+        int maxAuxiliary = 1;
         for (int nodeNumber : varFirst) {
-            int g = 2;
-            List<List<Integer>> group = new ArrayList<>();
-            int count = 0, grSize = 0;
-            for (int p : secondGetter.get(nodeNumber)) {
-                if (count == 0) {
-                    group.add(new ArrayList<Integer>());
-                    grSize++;
-                }
-                group.get(grSize - 1).add(p);
-                count = (count + 1) % g;
+            maxAuxiliary = Math.max(maxAuxiliary, encoding.auxiliaryCount(secondGetter.get(nodeNumber).length));
+        }
+        Family cmdVars = vars.family("cmd" + varName, treeNodesCount + k, maxAuxiliary);
+        amoFamilies.put(varName, cmdVars);
+
+        int intervalStart = vars.size() + 1;
+        for (int nodeNumber : varFirst) {
+            int auxiliaryCount = encoding.auxiliaryCount(secondGetter.get(nodeNumber).length);
+            for (int bit = 0; bit < auxiliaryCount; ++bit) {
+                createVar(cmdVars, nodeNumber, bit);
             }
+        }
+        recordInterval("cmd" + varName, intervalStart);
+    }
 
-            for (int grNum = 0; grNum < grSize; ++grNum) {
-                for (int varNumber : group.get(grNum)) {
-                    for (int bit = 0; bit < log(grSize, 2); ++bit) {
-                        if ((grNum & (1 << bit)) != 0) {
-                            addClause(-getVar(varName, nodeNumber, varNumber),
-                                    getVar("cmd" + varName, nodeNumber, bit));
-                        } else {
-                            addClause(-getVar(varName, nodeNumber, varNumber),
-                                    -getVar("cmd" + varName, nodeNumber, bit));
-                        }
-                    }
-                    for (int secondVarNumber : group.get(grNum)) {
-                        if (varNumber < secondVarNumber) {
-                            addClause(-getVar(varName, nodeNumber, varNumber),
-                                    -getVar(varName, nodeNumber, secondVarNumber));
-                        }
-                    }
-                }
+    private void addAtMostOne(String family, String varName, int[] varFirst, Getter secondGetter,
+                              IntBinaryOperator var) {
+        if (!amoFamilies.containsKey(varName)) {
+            declareAtMostOne(family, varName, varFirst, secondGetter);
+        }
+        AtMostOneEncoding encoding = getAtMostOneEncoding(family);
+        Family cmdVars = amoFamilies.get(varName);
+        int[] interval = intervals.get("cmd" + varName);
+        commentCNF("Variables " + "cmd" + varName + " are in [%d, %d]", interval[0], interval[1]);
+
+        commentCNF("At-most-one constraints for " + varName + "_v_u");
+        for (int nodeNumber : varFirst) {
+            int[] second = secondGetter.get(nodeNumber);
+            int[] literals = new int[second.length];
+            for (int i = 0; i < second.length; i++) {
+                literals[i] = var.applyAsInt(nodeNumber, second[i]);
+            }
+            int[] auxiliary = new int[encoding.auxiliaryCount(second.length)];
+            for (int bit = 0; bit < auxiliary.length; bit++) {
+                auxiliary[bit] = getVar(cmdVars, nodeNumber, bit);
             }
+            encoding.encode(literals, auxiliary, clauses);
         }
     }
 
     private void addParentConstraints() {
         {
-            int intervalStart = m.size() + 1;
+            int intervalStart = vars.size() + 1;
             for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
                 for (int parentNumber : possibleParents(nodeNumber)) {
-                    createVar("parent", nodeNumber, parentNumber);
-                    hb.append("p ").append(nodeNumber).append(" ").append(parentNumber).append(" ").append(m.size()).append("\n");
+                    createVar(parentVars, nodeNumber, parentNumber);
                 }
             }
-            commentCNF("Variables parent_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables parent_v_u is in [%d, %d]", intervalStart, vars.size());
         }
 
         commentCNF("At-least-one constraints for parent_v_u");
         for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
-            String atLeastOneParent = "";
+            List<Integer> atLeastOneParent = new ArrayList<>();
             for (int parentNumber : possibleParents(nodeNumber)) {
-                atLeastOneParent += getVar("parent", nodeNumber, parentNumber) + " ";
+                atLeastOneParent.add(getVar(parentVars, nodeNumber, parentNumber));
             }
-            addClause(atLeastOneParent);
+            addClause(relaxIfInactive(atLeastOneParent, nodeNumber));
         }
 
-        ArrayList<Integer> first = new ArrayList<>();
-        for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
-            first.add(nodeNumber);
-        }
-//        addPairwiseAtMostOne("parent", first, new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleParents(i);
-//            }
-//        });
-        addBimanderAtMostOne("parent", first, new Getter() {
+        int[] first = NodeDomains.range(0, treeNodesCount - 1);
+        addAtMostOne("parent", "parent", first, new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleParents(i);
             }
-        });
+        }, (v, u) -> getVar(parentVars, v, u));
 
 //        commentCNF("At-most-one constraints for parent_v_u");
 //        for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
 //            for (int parentNumber : possibleParents(nodeNumber)) {
 //                for (int otherParentNumber : possibleParents(nodeNumber)) {
 //                    if (otherParentNumber > parentNumber) {
-//                        addClause(-getVar("parent", nodeNumber, parentNumber),
-//                                -getVar("parent", nodeNumber, otherParentNumber));
+//                        addClause(-getVar(parentVars, nodeNumber, parentNumber),
+//                                -getVar(parentVars, nodeNumber, otherParentNumber));
 //                    }
 //                }
 //            }
@@ -231,65 +809,48 @@ public class FormulaBuilder {
 
     private void addLeftRightConstraints() {
         {
-            int intervalStart = m.size() + 1;
+            int intervalStart = vars.size() + 1;
             for (int nodeNumber = n; nodeNumber < treeNodesCount; nodeNumber++) {
                 for (int childNumber : possibleChildren(nodeNumber)) {
-                    createVar("left", nodeNumber, childNumber);
-                    hb.append("l ").append(nodeNumber).append(" ").append(childNumber).append(" ").append(m.size()).append("\n");
+                    createVar(leftVars, nodeNumber, childNumber);
                 }
             }
-            commentCNF("Variables left_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables left_v_u is in [%d, %d]", intervalStart, vars.size());
 
-            intervalStart = m.size() + 1;
+            intervalStart = vars.size() + 1;
             for (int nodeNumber = n; nodeNumber < treeNodesCount; nodeNumber++) {
                 for (int childNumber : possibleChildren(nodeNumber)) {
-                    createVar("right", nodeNumber, childNumber);
-                    hb.append("r ").append(nodeNumber).append(" ").append(childNumber).append(" ").append(m.size()).append("\n");
+                    createVar(rightVars, nodeNumber, childNumber);
                 }
             }
-            commentCNF("Variables right_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables right_v_u is in [%d, %d]", intervalStart, vars.size());
         }
 
         commentCNF("At-least-one constraints for left_v_u and right_v_u");
         for (int nodeNumber = n; nodeNumber < treeNodesCount; nodeNumber++) {
-            String atLeastOneLeft = "", atLeastOneRight = "";
+            List<Integer> atLeastOneLeft = new ArrayList<>(), atLeastOneRight = new ArrayList<>();
             for (int childNumber : possibleChildren(nodeNumber)) {
-                atLeastOneLeft += getVar("left", nodeNumber, childNumber) + " ";
-                atLeastOneRight += getVar("right", nodeNumber, childNumber) + " ";
+                atLeastOneLeft.add(getVar(leftVars, nodeNumber, childNumber));
+                atLeastOneRight.add(getVar(rightVars, nodeNumber, childNumber));
             }
-            addClause(atLeastOneLeft);
-            addClause(atLeastOneRight);
+            addClause(relaxIfInactive(atLeastOneLeft, nodeNumber));
+            addClause(relaxIfInactive(atLeastOneRight, nodeNumber));
         }
 
-        ArrayList<Integer> first = new ArrayList<>();
-        for (int nodeNumber = n; nodeNumber < treeNodesCount; nodeNumber++) {
-            first.add(nodeNumber);
-        }
-//        addPairwiseAtMostOne("left", first, new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleChildren(i);
-//            }
-//        });
-//        addPairwiseAtMostOne("right", first, new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleChildren(i);
-//            }
-//        });
+        int[] first = NodeDomains.range(n, treeNodesCount);
 
-        addBimanderAtMostOne("left", first, new Getter() {
+        addAtMostOne("left", "left", first, new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleChildren(i);
             }
-        });
-        addBimanderAtMostOne("right", first, new Getter() {
+        }, (v, u) -> getVar(leftVars, v, u));
+        addAtMostOne("right", "right", first, new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleChildren(i);
             }
-        });
+        }, (v, u) -> getVar(rightVars, v, u));
 
 //        commentCNF("At-most-one constraints for left_v_u and right_v_u");
         commentCNF("Also, constraints for left_v_u < right_v_u");
@@ -297,15 +858,15 @@ public class FormulaBuilder {
             for (int childNumber : possibleChildren(nodeNumber)) {
                 for (int otherNumber : possibleChildren(nodeNumber)) {
 //                    if (childNumber < otherNumber) {
-//                        addClause(-getVar("left", nodeNumber, childNumber),
-//                                -getVar("left", nodeNumber, otherNumber));
-//                        addClause(-getVar("right", nodeNumber, childNumber),
-//                                -getVar("right", nodeNumber, otherNumber));
+//                        addClause(-getVar(leftVars, nodeNumber, childNumber),
+//                                -getVar(leftVars, nodeNumber, otherNumber));
+//                        addClause(-getVar(rightVars, nodeNumber, childNumber),
+//                                -getVar(rightVars, nodeNumber, otherNumber));
 //                    }
 
                     if (childNumber <= otherNumber) {
-                        addClause(-getVar("right", nodeNumber, childNumber),
-                                -getVar("left", nodeNumber, otherNumber));
+                        addClause(-getVar(rightVars, nodeNumber, childNumber),
+                                -getVar(leftVars, nodeNumber, otherNumber));
                     }
                 }
             }
@@ -314,44 +875,37 @@ public class FormulaBuilder {
 
     private void addReticulationChildConstraints() {
         {
-            int intervalStart = m.size() + 1;
+            int intervalStart = vars.size() + 1;
             for (int nodeNumber : reticulationNodes()) {
                 for (int childNumber : possibleChildren(nodeNumber)) {
-                    createVar("ch", nodeNumber, childNumber);
-                    hb.append("ch ").append(nodeNumber).append(" ").append(childNumber).append(" ").append(m.size()).append("\n");
+                    createVar(chVars, nodeNumber, childNumber);
                 }
             }
-            commentCNF("Variables ch_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables ch_v_u is in [%d, %d]", intervalStart, vars.size());
         }
 
         commentCNF("At-least-one constraints for ch_v_u");
         for (int nodeNumber : reticulationNodes()) {
-            String atLeastOne = "";
+            List<Integer> atLeastOne = new ArrayList<>();
             for (int childNumber : possibleChildren(nodeNumber)) {
-                atLeastOne += getVar("ch", nodeNumber, childNumber) + " ";
+                atLeastOne.add(getVar(chVars, nodeNumber, childNumber));
             }
-            addClause(atLeastOne);
+            addClause(relaxIfInactive(atLeastOne, nodeNumber));
         }
 
-//        addPairwiseAtMostOne("ch", reticulationNodes(), new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleChildren(i);
-//            }
-//        });
-        addBimanderAtMostOne("ch", reticulationNodes(), new Getter() {
+        addAtMostOne("ch", "ch", reticulationNodes(), new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleChildren(i);
             }
-        });
+        }, (v, u) -> getVar(chVars, v, u));
 
 //        commentCNF("At-most-one constraints for ch_v_u");
 //        for (int nodeNumber : reticulationNodes()) {
 //            for (int childNumber : possibleChildren(nodeNumber)) {
 //                for (int otherNumber : possibleChildren(nodeNumber)) {
 //                    if (childNumber < otherNumber) {
-//                        addClause(-getVar("ch", nodeNumber, childNumber), -getVar("ch", nodeNumber, otherNumber));
+//                        addClause(-getVar(chVars, nodeNumber, childNumber), -getVar(chVars, nodeNumber, otherNumber));
 //                    }
 //                }
 //            }
@@ -360,60 +914,46 @@ public class FormulaBuilder {
 
     private void addReticulationParentConstraints() {
         {
-            int intervalStart = m.size() + 1;
+            int intervalStart = vars.size() + 1;
             for (int nodeNumber : reticulationNodes()) {
                 for (int parentNumber : possibleParents(nodeNumber)) {
-                    createVar("lp", nodeNumber, parentNumber);
-                    hb.append("lp ").append(nodeNumber).append(" ").append(parentNumber).append(" ").append(m.size()).append("\n");
+                    createVar(lpVars, nodeNumber, parentNumber);
                 }
             }
-            commentCNF("Variables lp_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables lp_v_u is in [%d, %d]", intervalStart, vars.size());
 
-            intervalStart = m.size() + 1;
+            intervalStart = vars.size() + 1;
             for (int nodeNumber : reticulationNodes()) {
                 for (int parentNumber : possibleParents(nodeNumber)) {
-                    createVar("rp", nodeNumber, parentNumber);
-                    hb.append("rp ").append(nodeNumber).append(" ").append(parentNumber).append(" ").append(m.size()).append("\n");
+                    createVar(rpVars, nodeNumber, parentNumber);
                 }
             }
-            commentCNF("Variables rp_v_u is in [%d, %d]", intervalStart, m.size());
+            commentCNF("Variables rp_v_u is in [%d, %d]", intervalStart, vars.size());
         }
 
         commentCNF("At-least-one constraints for lp_v_u and rp_v_u");
         for (int nodeNumber : reticulationNodes()) {
-            String atLeastOneLeft = "", atLeastOneRight = "";
+            List<Integer> atLeastOneLeft = new ArrayList<>(), atLeastOneRight = new ArrayList<>();
             for (int parentNumber : possibleParents(nodeNumber)) {
-                atLeastOneLeft += getVar("lp", nodeNumber, parentNumber) + " ";
-                atLeastOneRight += getVar("rp", nodeNumber, parentNumber) + " ";
+                atLeastOneLeft.add(getVar(lpVars, nodeNumber, parentNumber));
+                atLeastOneRight.add(getVar(rpVars, nodeNumber, parentNumber));
             }
-            addClause(atLeastOneLeft);
-            addClause(atLeastOneRight);
+            addClause(relaxIfInactive(atLeastOneLeft, nodeNumber));
+            addClause(relaxIfInactive(atLeastOneRight, nodeNumber));
         }
 
-//        addPairwiseAtMostOne("lp", reticulationNodes(), new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleParents(i);
-//            }
-//        });
-//        addPairwiseAtMostOne("rp", reticulationNodes(), new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleParents(i);
-//            }
-//        });
-        addBimanderAtMostOne("lp", reticulationNodes(), new Getter() {
+        addAtMostOne("lp", "lp", reticulationNodes(), new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleParents(i);
             }
-        });
-        addBimanderAtMostOne("rp", reticulationNodes(), new Getter() {
+        }, (v, u) -> getVar(lpVars, v, u));
+        addAtMostOne("rp", "rp", reticulationNodes(), new Getter() {
             @Override
-            public List<Integer> get(int i) {
+            public int[] get(int i) {
                 return possibleParents(i);
             }
-        });
+        }, (v, u) -> getVar(rpVars, v, u));
 
 
         commentCNF("At-most-one constraints for lp_v_u and rp_v_u");
@@ -421,10 +961,10 @@ public class FormulaBuilder {
         for (int nodeNumber : reticulationNodes()) {
             for (int parent : possibleParents(nodeNumber)) {
                 for (int otherParent : possibleParents(nodeNumber)) {
-//                    int lpVar = getVar("lp", nodeNumber, parent);
-                    int otherLpVar = getVar("lp", nodeNumber, otherParent);
-                    int rpVar = getVar("rp", nodeNumber, parent);
-//                    int otherRpVar = getVar("rp", nodeNumber, otherParent);
+//                    int lpVar = getVar(lpVars, nodeNumber, parent);
+                    int otherLpVar = getVar(lpVars, nodeNumber, otherParent);
+                    int rpVar = getVar(rpVars, nodeNumber, parent);
+//                    int otherRpVar = getVar(rpVars, nodeNumber, otherParent);
 
 //                    if (parent < otherParent) {
 //                        addClause(-lpVar, -otherLpVar);
@@ -443,18 +983,18 @@ public class FormulaBuilder {
         commentCNF("Constraints which connect tree nodes left_v_u, right_v_u with children's parents vars");
         for (int nodeNumber : treeNodes()) {
             for (int childNumber : possibleChildren(nodeNumber)) {
-                int leftVar = getVar("left", nodeNumber, childNumber);
-                int rightVar = getVar("right", nodeNumber, childNumber);
+                int leftVar = getVar(leftVars, nodeNumber, childNumber);
+                int rightVar = getVar(rightVars, nodeNumber, childNumber);
 
                 if (childNumber < treeNodesCount) {
-                    int parentVar = getVar("parent", childNumber, nodeNumber);
+                    int parentVar = getVar(parentVars, childNumber, nodeNumber);
 
                     addClause(-leftVar, parentVar); // if LEFT then PARENT
                     addClause(-rightVar, parentVar); // if RIGHT then PARENT
                     addClause(-parentVar, leftVar, rightVar); // if PARENT then LEFT or RIGHT
                 } else {
-                    int lpVar = getVar("lp", childNumber, nodeNumber);
-                    int rpVar = getVar("rp", childNumber, nodeNumber);
+                    int lpVar = getVar(lpVars, childNumber, nodeNumber);
+                    int rpVar = getVar(rpVars, childNumber, nodeNumber);
 
                     addClause(-leftVar, lpVar, rpVar); // if LEFT then LP or RP
                     addClause(-rightVar, lpVar, rpVar); // if RIGHT then LP or RP
@@ -467,16 +1007,16 @@ public class FormulaBuilder {
         commentCNF("Constraints which connect reticulation nodes ch_v_u with children's parents vars");
         for (int nodeNumber : reticulationNodes()) {
             for (int childNumber : possibleChildren(nodeNumber)) {
-                int chVar = getVar("ch", nodeNumber, childNumber);
+                int chVar = getVar(chVars, nodeNumber, childNumber);
 
                 if (childNumber < treeNodesCount) {
-                    int parentVar = getVar("parent", childNumber, nodeNumber);
+                    int parentVar = getVar(parentVars, childNumber, nodeNumber);
 
                     addClause(-chVar, parentVar); // if CH then PARENT
                     addClause(-parentVar, chVar); // if PARENT then CH
                 } else {
-                    int lpVar = m.get("lp_" + childNumber + "_" + nodeNumber);
-                    int rpVar = m.get("rp_" + childNumber + "_" + nodeNumber);
+                    int lpVar = getVar(lpVars, childNumber, nodeNumber);
+                    int rpVar = getVar(rpVars, childNumber, nodeNumber);
 
                     addClause(-lpVar, chVar); // if LP then CH
                     addClause(-rpVar, chVar); // if RP then CH
@@ -489,11 +1029,11 @@ public class FormulaBuilder {
         for (int nodeNumber : reticulationNodes()) {
             for (int childNumber : possibleChildren(nodeNumber)) {
                 if (childNumber < treeNodesCount) {
-                    int chVar = getVar("ch", nodeNumber, childNumber);
+                    int chVar = getVar(chVars, nodeNumber, childNumber);
 
                     for (int parentNumber = n; parentNumber <= childNumber; parentNumber++) {
-                        int lpVar = getVar("lp", nodeNumber, parentNumber);
-                        int rpVar = getVar("rp", nodeNumber, parentNumber);
+                        int lpVar = getVar(lpVars, nodeNumber, parentNumber);
+                        int rpVar = getVar(rpVars, nodeNumber, parentNumber);
 
                         addClause(-chVar, -lpVar); // CHILD less then LP
                         addClause(-chVar, -rpVar); // CHILD less then RP
@@ -505,30 +1045,22 @@ public class FormulaBuilder {
 
     private void addDirUsedConstraints(int treeNumber) {
         {
-            int intervalStart = m.size() + 1;
-            for (int nodeNumber : reticulationNodes()) {
-                createVar("dir", treeNumber, nodeNumber);
-                hb.append("dir ").append(treeNumber).append(" ").append(nodeNumber).append(" ").append(m.size()).append("\n");
-            }
-            commentCNF("Variables dir_%d_v is in [%d, %d]", treeNumber, intervalStart, m.size());
+            int[] interval = intervals.get("dir_" + treeNumber);
+            commentCNF("Variables dir_%d_v is in [%d, %d]", treeNumber, interval[0], interval[1]);
 
-            intervalStart = m.size() + 1;
-            for (int nodeNumber : treeNodes()) {
-                createVar("used", treeNumber, nodeNumber);
-                hb.append("used ").append(treeNumber).append(" ").append(nodeNumber).append(" ").append(m.size()).append("\n");
-            }
-            commentCNF("Variables used_%d_v is in [%d, %d]", treeNumber, intervalStart, m.size());
+            interval = intervals.get("used_" + treeNumber);
+            commentCNF("Variables used_%d_v is in [%d, %d]", treeNumber, interval[0], interval[1]);
         }
 
         commentCNF("(not dir => not used) constraints");
         for (int nodeNumber : reticulationNodes()) {
             for (int parentNumber : possibleParents(nodeNumber)) {
-                int dirVar = getVar("dir", treeNumber, nodeNumber);
-                int lpVar = getVar("lp", nodeNumber, parentNumber);
-                int rpVar = getVar("rp", nodeNumber, parentNumber);
+                int dirVar = getVar(dirVars, treeNumber, nodeNumber);
+                int lpVar = getVar(lpVars, nodeNumber, parentNumber);
+                int rpVar = getVar(rpVars, nodeNumber, parentNumber);
 
                 if (parentNumber < treeNodesCount) {
-                    int usedVar = getVar("used", treeNumber, parentNumber);
+                    int usedVar = getVar(usedVars, treeNumber, parentNumber);
 
                     addClause(dirVar, -lpVar, -usedVar); // if ~DIR and LP then ~USED
                     addClause(-dirVar, -rpVar, -usedVar); // if DIR and RP then ~USED
@@ -540,34 +1072,41 @@ public class FormulaBuilder {
     private void addALOdirConstraints() {
         commentCNF("ALO for different dirs");
         for (int nodeNumber : reticulationNodes()) {
-            String clauseLeft = "";
-            String clauseRight = "";
+            List<Integer> clauseLeft = new ArrayList<>();
+            List<Integer> clauseRight = new ArrayList<>();
             for (int treeNumber = 0; treeNumber < phTrees.size(); treeNumber++) {
-                clauseLeft += getVar("dir", treeNumber, nodeNumber) + " ";
-                clauseRight += -getVar("dir", treeNumber, nodeNumber) + " ";
+                clauseLeft.add(getVar(dirVars, treeNumber, nodeNumber));
+                clauseRight.add(-getVar(dirVars, treeNumber, nodeNumber));
             }
 
-            addClause(clauseLeft);
-            addClause(clauseRight);
+            addClause(relaxIfInactive(clauseLeft, nodeNumber));
+            addClause(relaxIfInactive(clauseRight, nodeNumber));
         }
     }
 
     private void addParentOrderConstraints() {
         commentCNF("add constraints for order on different parents");
         for (int i : treeNodes()) {
-            if (treeNodes().contains(i + 1)) {
-                addAllParentOrderPairConstraints(i, treeNodes());
-                addAllParentOrderPairConstraints(i, reticulationNodes());
+            if (domains.isTreeNode(i + 1)) {
+                addAllParentOrderPairConstraints(i, false);
+                addAllParentOrderPairConstraints(i, true);
             }
         }
+        if (symmetryBreaking != SymmetryBreaking.NONE && !enableReticulationConnection) {
+            addReticulationOrderConstraints();
+            return;
+        }
         for (int i : reticulationNodes()) {
-            if (reticulationNodes().contains(i + 1)) {
-                for (int j : treeNodes()) {
-                    for (int k : treeNodes()) {
-                        if (possibleChildren(i).contains(j) && possibleChildren(i + 1).contains(k)) {
-                            int p_j_i = -getVar("parent", j, i);
-                            int p_k_i_1 = -getVar("parent", k, i + 1);
-                            addClause(p_j_i + " " + p_k_i_1);
+            if (domains.isReticulation(i + 1)) {
+                for (int j : possibleChildren(i)) {
+                    if (!domains.isTreeNode(j)) {
+                        continue;
+                    }
+                    for (int k : possibleChildren(i + 1)) {
+                        if (domains.isTreeNode(k)) {
+                            int p_j_i = -getVar(parentVars, j, i);
+                            int p_k_i_1 = -getVar(parentVars, k, i + 1);
+                            addClause(p_j_i, p_k_i_1);
                         }
                     }
                 }
@@ -577,15 +1116,48 @@ public class FormulaBuilder {
 
     }
 
-    private void addAllParentOrderPairConstraints(int i, List<Integer> nodes) {
-        for (int j : nodes) {
-            for (int k : nodes) {
-                if (possibleParents(i).contains(j) && possibleParents(i + 1).contains(k)) {
-                    if (k < j) {
-                        int p_i_j = -getVar("parent", i, j);
-                        int p_i_1_k = -getVar("parent", i + 1, k);
-                        addClause(p_i_j + " " + p_i_1_k);
-                    }
+    private void addReticulationOrderConstraints() {
+        commentCNF("Symmetry breaking: children of consecutive reticulation nodes are increasing");
+        for (int i : reticulationNodes()) {
+            if (domains.isReticulation(i + 1)) {
+                addReticulationPairOrderConstraints(i, i + 1);
+            }
+        }
+        if (symmetryBreaking == SymmetryBreaking.FULL) {
+            commentCNF("Symmetry breaking: children of all reticulation nodes are increasing");
+            for (int i : reticulationNodes()) {
+                for (int j = i + 2; domains.isReticulation(j); j++) {
+                    addReticulationPairOrderConstraints(i, j);
+                }
+            }
+        }
+    }
+
+    private void addReticulationPairOrderConstraints(int i, int j) {
+        for (int childNumber : possibleChildren(i)) {
+            int chVar = getVar(chVars, i, childNumber);
+            for (int otherChild : possibleChildren(j)) {
+                if (otherChild > childNumber) {
+                    break;
+                }
+                addClause(-chVar, -getVar(chVars, j, otherChild)); // ch_i < ch_j
+            }
+        }
+    }
+
+    private void addAllParentOrderPairConstraints(int i, boolean reticulationParents) {
+        for (int j : possibleParents(i)) {
+            if (domains.isReticulation(j) != reticulationParents) {
+                continue;
+            }
+            for (int k : possibleParents(i + 1)) {
+                if (k >= j) {
+                    break;
+                }
+                if (domains.isReticulation(k) == reticulationParents) {
+                    int p_i_j = -getVar(parentVars, i, j);
+                    int p_i_1_k = -getVar(parentVars, i + 1, k);
+                    addClause(p_i_j, p_i_1_k);
                 }
             }
         }
@@ -593,28 +1165,24 @@ public class FormulaBuilder {
 
     private void addRUsedConstraints(int treeNumber) {
         {
-            int intervalStart = m.size() + 1;
-            for (int nodeNumber : reticulationNodes()) {
-                createVar("rused", treeNumber, nodeNumber);
-                hb.append("rused ").append(treeNumber).append(" ").append(nodeNumber).append(" ").append(m.size()).append("\n");
-            }
-            commentCNF("Variables rused_%d_v is in [%d, %d]", treeNumber, intervalStart, m.size());
+            int[] interval = intervals.get("rused_" + treeNumber);
+            commentCNF("Variables rused_%d_v is in [%d, %d]", treeNumber, interval[0], interval[1]);
         }
 
         commentCNF("RUsed constraints");
         for (int nodeNumber : reticulationNodes()) {
-            int rusedVar = getVar("rused", treeNumber, nodeNumber);
+            int rusedVar = getVar(rusedVars, treeNumber, nodeNumber);
 
             for (int childNumber : possibleChildren(nodeNumber)) {
-                int chVar = getVar("ch", nodeNumber, childNumber);
+                int chVar = getVar(chVars, nodeNumber, childNumber);
 
                 if (childNumber < treeNodesCount) {
                     addClause(-chVar, rusedVar); // if CH is tree node then RUSED
                 } else {
-                    int childRusedVar = getVar("rused", treeNumber, childNumber);
-                    int childDirVar = getVar("dir", treeNumber, childNumber);
-                    int lpVar = getVar("lp", childNumber, nodeNumber);
-                    int rpVar = getVar("rp", childNumber, nodeNumber);
+                    int childRusedVar = getVar(rusedVars, treeNumber, childNumber);
+                    int childDirVar = getVar(dirVars, treeNumber, childNumber);
+                    int lpVar = getVar(lpVars, childNumber, nodeNumber);
+                    int rpVar = getVar(rpVars, childNumber, nodeNumber);
 
                     addClause(-chVar, childRusedVar, -rusedVar); // if CH not RUSED then ~RUSED
 
@@ -631,14 +1199,14 @@ public class FormulaBuilder {
 
         commentCNF("Connect RUsed with tree nodes Used");
         for (int nodeNumber : reticulationNodes()) {
-            int rusedVar = getVar("rused", treeNumber, nodeNumber);
+            int rusedVar = getVar(rusedVars, treeNumber, nodeNumber);
 
             for (int parentNumber : possibleParents(nodeNumber)) {
-                int lpVar = getVar("lp", nodeNumber, parentNumber);
-                int rpVar = getVar("rp", nodeNumber, parentNumber);
+                int lpVar = getVar(lpVars, nodeNumber, parentNumber);
+                int rpVar = getVar(rpVars, nodeNumber, parentNumber);
 
                 if (parentNumber < treeNodesCount) {
-                    int usedVar = m.get("used_" + treeNumber + "_" + parentNumber);
+                    int usedVar = getVar(usedVars, treeNumber, parentNumber);
 
                     addClause(-lpVar, rusedVar, -usedVar); // LP and ~RUSED then ~USED
                     addClause(-rpVar, rusedVar, -usedVar); // RP and ~RUSED then ~USED
@@ -649,47 +1217,35 @@ public class FormulaBuilder {
 
     private void addUpConstraints(int treeNumber) {
         {
-            int intervalStart = m.size() + 1;
-            for (int nodeNumber : allNodes()) {
-                for (int up : possibleUp(nodeNumber)) {
-                    createVar("up", treeNumber, nodeNumber, up);
-                    hb.append("up ").append(treeNumber).append(" ").append(nodeNumber).append(" ").append(up).append(" ").append(m.size()).append("\n");
-                }
-            }
-            commentCNF("Variables up_%d_v_'u is in [%d, %d]", treeNumber, intervalStart, m.size());
+            int[] interval = intervals.get("up_" + treeNumber);
+            commentCNF("Variables up_%d_v_'u is in [%d, %d]", treeNumber, interval[0], interval[1]);
         }
 
         commentCNF("At-least-one constraints for up_%d_v_u", treeNumber);
         for (int nodeNumber : allNodes()) {
             if (nodeNumber != treeNodesCount - 1) {
-                String atLeastOne = "";
-                for (int up : possibleUp(nodeNumber)) {
-                    atLeastOne += getVar("up", treeNumber, nodeNumber, up) + " ";
+                List<Integer> atLeastOne = new ArrayList<>();
+                for (int up : upDomain(treeNumber, nodeNumber)) {
+                    atLeastOne.add(getVar(upVars, treeNumber, nodeNumber, up));
                 }
-                addClause(atLeastOne);
+                addClause(relaxIfInactive(atLeastOne, nodeNumber));
             }
         }
 
-//        addPairwiseAtMostOne("up_" + treeNumber, allNodes(), new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return possibleUp(i);
-//            }
-//        });
-        addBimanderAtMostOne("up_" + treeNumber, allNodes(), new Getter() {
+        addAtMostOne("up", "up_" + treeNumber, allNodes(), new Getter() {
             @Override
-            public List<Integer> get(int i) {
-                return possibleUp(i);
+            public int[] get(int i) {
+                return upDomain(treeNumber, i);
             }
-        });
+        }, (v, u) -> getVar(upVars, treeNumber, v, u));
 
 //        commentCNF("At-most-one constraints for up_%d_v_u", treeNumber);
 //        for (int nodeNumber : allNodes()) {
 //            for (int up : possibleUp(nodeNumber)) {
 //                for (int otherUp : possibleUp(nodeNumber)) {
 //                    if (up < otherUp) {
-//                        addClause(-getVar("up", treeNumber, nodeNumber, up),
-//                                -getVar("up", treeNumber, nodeNumber, otherUp));
+//                        addClause(-getVar(upVars, treeNumber, nodeNumber, up),
+//                                -getVar(upVars, treeNumber, nodeNumber, otherUp));
 //                    }
 //                }
 //            }
@@ -698,11 +1254,11 @@ public class FormulaBuilder {
         commentCNF("Connect up_%d_v_u with parent_v_u and used_%d_v (tree nodes)", treeNumber, treeNumber);
         for (int nodeNumber = 0; nodeNumber < treeNodesCount; nodeNumber++) {
             for (int parent : possibleParents(nodeNumber)) {
-                int parentVar = getVar("parent", nodeNumber, parent);
+                int parentVar = getVar(parentVars, nodeNumber, parent);
 
                 if (parent < treeNodesCount) {
-                    int upVar = getVar("up", treeNumber, nodeNumber, parent);
-                    int usedVar = getVar("used", treeNumber, parent);
+                    int upVar = getVar(upVars, treeNumber, nodeNumber, parent);
+                    int usedVar = getVar(usedVars, treeNumber, parent);
 
                     // if parent is used
                     {
@@ -712,20 +1268,20 @@ public class FormulaBuilder {
 
                     // if parent is not used
                     for (int parentUp : possibleUp(parent)) {
-                        int nodeUpVar = getVar("up", treeNumber, nodeNumber, parentUp);
-                        int parentUpVar = getVar("up", treeNumber, parent, parentUp);
+                        int nodeUpVar = getVar(upVars, treeNumber, nodeNumber, parentUp);
+                        int parentUpVar = getVar(upVars, treeNumber, parent, parentUp);
 
                         addClause(-parentVar, usedVar, -parentUpVar, nodeUpVar); // if tree PARENT and ~USED
                         addClause(-parentVar, usedVar, -nodeUpVar, parentUpVar); // set PARENT UP
                     }
                 } else {
                     for (int parentUp : possibleUp(parent)) {
-                        int parentUpVar = getVar("up", treeNumber, parent, parentUp);
+                        int parentUpVar = getVar(upVars, treeNumber, parent, parentUp);
 
                         if (parentUp <= nodeNumber) {
                             addClause(-parentVar, -parentUpVar);
                         } else {
-                            int nodeUpVar = getVar("up", treeNumber, nodeNumber, parentUp);
+                            int nodeUpVar = getVar(upVars, treeNumber, nodeNumber, parentUp);
                             addClause(-parentVar, -parentUpVar, nodeUpVar);
                             addClause(-parentVar, -nodeUpVar, parentUpVar);
                         }
@@ -736,15 +1292,15 @@ public class FormulaBuilder {
 
         commentCNF("Connect up_%d_v_u with parent_v_u and used_%d_v (network nodes)", treeNumber, treeNumber);
         for (int nodeNumber : reticulationNodes()) {
-            int dirVar = getVar("dir", treeNumber, nodeNumber);
+            int dirVar = getVar(dirVars, treeNumber, nodeNumber);
 
             for (int parent : possibleParents(nodeNumber)) {
-                int lpVar = getVar("lp", nodeNumber, parent);
-                int rpVar = getVar("rp", nodeNumber, parent);
+                int lpVar = getVar(lpVars, nodeNumber, parent);
+                int rpVar = getVar(rpVars, nodeNumber, parent);
 
                 if (parent < treeNodesCount) {
-                    int parentUsedVar = getVar("used", treeNumber, parent);
-                    int upVar = getVar("up", treeNumber, nodeNumber, parent);
+                    int parentUsedVar = getVar(usedVars, treeNumber, parent);
+                    int upVar = getVar(upVars, treeNumber, nodeNumber, parent);
                     // if parent is used and up
                     {
                         addClause(-lpVar, -dirVar, -parentUsedVar, upVar); // LP and USED then UP
@@ -753,8 +1309,8 @@ public class FormulaBuilder {
 
                     // if parent is not used
                     for (int parentUp : possibleUp(parent)) {
-                        int parentUpVar = getVar("up", treeNumber, parent, parentUp);
-                        int nodeUpVar = getVar("up", treeNumber, nodeNumber, parentUp);
+                        int parentUpVar = getVar(upVars, treeNumber, parent, parentUp);
+                        int nodeUpVar = getVar(upVars, treeNumber, nodeNumber, parentUp);
 
                         // PARENT is LP and ~UP
                         addClause(-lpVar, -dirVar, parentUsedVar, -parentUpVar, nodeUpVar);
@@ -767,8 +1323,8 @@ public class FormulaBuilder {
                 } else {
                     for (int parentUp : possibleUp(parent)) {
                         // parent is reticulation
-                        int parentUpVar = getVar("up", treeNumber, parent, parentUp);
-                        int nodeUpVar = getVar("up", treeNumber, nodeNumber, parentUp);
+                        int parentUpVar = getVar(upVars, treeNumber, parent, parentUp);
+                        int nodeUpVar = getVar(upVars, treeNumber, nodeNumber, parentUp);
 
                         addClause(-lpVar, -dirVar, -parentUpVar, nodeUpVar);
                         addClause(-rpVar, dirVar, -parentUpVar, nodeUpVar);
@@ -780,74 +1336,53 @@ public class FormulaBuilder {
 
     private void addXConstraints(int treeNumber) {
         {
-            int intervalStart = m.size() + 1;
-            for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
-                for (int nodeNumber : treeNodes()) {
-                    createVar("x", treeNumber, treeNodeNumber, nodeNumber);
-                    hb.append("x ").append(treeNumber).append(" ").append(treeNodeNumber).append(" ").
-                            append(nodeNumber).append(" ").append(m.size()).append("\n");
-                }
-            }
-            commentCNF("Variables x_%d_tv_v is in [%d, %d]", treeNumber, intervalStart, m.size());
+            int[] interval = intervals.get("x_" + treeNumber);
+            commentCNF("Variables x_%d_tv_v is in [%d, %d]", treeNumber, interval[0], interval[1]);
         }
 
         commentCNF("At-least-one constraints for x_%d_tv_v", treeNumber);
         for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
-            String atLeastOne = "";
-            for (int nodeNumber : treeNodes()) {
-                atLeastOne += getVar("x", treeNumber, treeNodeNumber, nodeNumber) + " ";
+            List<Integer> atLeastOne = new ArrayList<>();
+            for (int nodeNumber : xDomain(treeNumber, treeNodeNumber)) {
+                atLeastOne.add(getVar(xVars, treeNumber, treeNodeNumber, nodeNumber));
             }
             addClause(atLeastOne);
         }
 
-        ArrayList<Integer> first = new ArrayList<>();
-        for (int nodeNumber = n; nodeNumber < 2 * n - 1; nodeNumber++) {
-            first.add(nodeNumber);
-        }
+        int[] first = NodeDomains.range(n, 2 * n - 1);
 
-//        addPairwiseAtMostOne("x_" + treeNumber, first, new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return treeNodes();
-//            }
-//        });
-        addBimanderAtMostOne("x_" + treeNumber, first, i -> treeNodes());
+        addAtMostOne("x", "x_" + treeNumber, first, tv -> xDomain(treeNumber, tv),
+                (tv, v) -> getVar(xVars, treeNumber, tv, v));
 
 //        commentCNF("At-most-one constraints for x_" + treeNumber + "_tv_v");
 //        for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
 //            for (int nodeNumber : treeNodes()) {
 //                for (int otherNode : treeNodes()) {
 //                    if (nodeNumber < otherNode) {
-//                        addClause(-getVar("x", treeNumber, treeNodeNumber, nodeNumber),
-//                                -getVar("x", treeNumber, treeNodeNumber, otherNode));
+//                        addClause(-getVar(xVars, treeNumber, treeNodeNumber, nodeNumber),
+//                                -getVar(xVars, treeNumber, treeNodeNumber, otherNode));
 //                    }
 //                }
 //            }
 //        }
 
-//        addPairwiseAtMostOne("x_" + treeNumber, first, new Getter() {
-//            @Override
-//            public List<Integer> get(int i) {
-//                return treeNodes();
-//            }
-//        });
 
         commentCNF("At-most-one x_%d_tv_v points to v", treeNumber);
         for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
             for (int otherTreeNode = n; otherTreeNode < treeNodeNumber; otherTreeNode++) {
                 for (int nodeNumber : treeNodes()) {
-                    addClause(-getVar("x", treeNumber, treeNodeNumber, nodeNumber),
-                            -getVar("x", treeNumber, otherTreeNode, nodeNumber));
+                    addClause(-getVar(xVars, treeNumber, treeNodeNumber, nodeNumber),
+                            -getVar(xVars, treeNumber, otherTreeNode, nodeNumber));
                 }
             }
         }
 
         commentCNF("If x_%d_tv_v then used_%d_v", treeNumber, treeNumber);
         for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
-            for (int nodeNumber : treeNodes()) {
+            for (int nodeNumber : xDomain(treeNumber, treeNodeNumber)) {
                 // X means USED
-                addClause(-getVar("x", treeNumber, treeNodeNumber, nodeNumber),
-                        getVar("used", treeNumber, nodeNumber));
+                addClause(-getVar(xVars, treeNumber, treeNodeNumber, nodeNumber),
+                        getVar(usedVars, treeNumber, nodeNumber));
             }
         }
     }
@@ -859,31 +1394,31 @@ public class FormulaBuilder {
         for (int treeNodeNumber = 0; treeNodeNumber < phTree.size(); treeNodeNumber++) {
             int treeParentNumber = phTree.getParent(treeNodeNumber);
             if (treeParentNumber == -1) {
-                addClause(getVar("x", treeNumber, treeNodeNumber, treeNodesCount - 1)); // root to root
+                addClause(getVar(xVars, treeNumber, treeNodeNumber, treeNodesCount - 1)); // root to root
                 continue;
             }
 
             if (treeNodeNumber < n) {
                 for (int parentNodeNumber : treeNodes()) {
-                    int parentXVar = getVar("x", treeNumber, treeParentNumber, parentNodeNumber);
-                    int taxonUpVar = getVar("up", treeNumber, treeNodeNumber, parentNodeNumber);
+                    int parentXVar = getVar(xVars, treeNumber, treeParentNumber, parentNodeNumber);
+                    int taxonUpVar = getVar(upVars, treeNumber, treeNodeNumber, parentNodeNumber);
                     addClause(-parentXVar, taxonUpVar);
                     addClause(-taxonUpVar, parentXVar);
                 }
             } else {
-                for (int nodeNumber : treeNodes()) {
-                    int xVar = getVar("x", treeNumber, treeNodeNumber, nodeNumber);
+                for (int nodeNumber : xDomain(treeNumber, treeNodeNumber)) {
+                    int xVar = getVar(xVars, treeNumber, treeNodeNumber, nodeNumber);
 
                     for (int parentNodeNumber : possibleUp(nodeNumber)) {
-                        int parentXVar = getVar("x", treeNumber, treeParentNumber, parentNodeNumber);
-                        int upVar = getVar("up", treeNumber, nodeNumber, parentNodeNumber);
+                        int parentXVar = getVar(xVars, treeNumber, treeParentNumber, parentNodeNumber);
+                        int upVar = getVar(upVars, treeNumber, nodeNumber, parentNodeNumber);
 
                         addClause(-xVar, -parentXVar, upVar);
                         addClause(-xVar, -upVar, parentXVar);
                     }
 
                     for (int parentNodeNumber : treeNodes()) {
-                        int parentXVar = m.get("x_" + treeNumber + "_" + treeParentNumber + "_" + parentNodeNumber);
+                        int parentXVar = getVar(xVars, treeNumber, treeParentNumber, parentNodeNumber);
                         if (parentNodeNumber <= nodeNumber) {
                             addClause(-xVar, -parentXVar);
                         }
@@ -891,19 +1426,8 @@ public class FormulaBuilder {
                 }
             }
         }
-
-        commentCNF("Constraints connected with tree nodes depth and subtree sizes (heap structure)");
-        for (int treeNodeNumber = n; treeNodeNumber < phTree.size() - 1; treeNodeNumber++) {
-            int subtreeNonLeafCount = phTree.getSubtreeSize(treeNodeNumber) / 2 - 1;
-            for (int nodeNumber = n; nodeNumber < n + subtreeNonLeafCount; nodeNumber++) {
-                addClause(-getVar("x", treeNumber, treeNodeNumber, nodeNumber));
-            }
-            for (int nodeNumber = treeNodesCount - phTree.getDepth(treeNodeNumber);
-                 nodeNumber < treeNodesCount; nodeNumber++) {
-                addClause(-getVar("x", treeNumber, treeNodeNumber, nodeNumber));
-            }
-        }
-
+        // constraints connected with tree nodes depth and subtree sizes (heap structure)
+        // are applied by restrictTreeDomains: forbidden x variables are not created at all
     }
 
     private void addConstraintsForPairOfTrees(int t1, int t2) {
@@ -912,11 +1436,9 @@ public class FormulaBuilder {
 
         int totalDifferent = 0;
         for (int node1 = n; node1 < 2 * n - 2; node1++) {
-            List<Integer> taxa1 = phTree1.getTaxa(node1);
+            BitSet taxa1 = phTree1.getCluster(node1);
             for (int node2 = n; node2 < 2 * n - 2; node2++) {
-                List<Integer> taxa2 = phTree2.getTaxa(node2);
-                boolean allDifferent = Collections.disjoint(taxa1, taxa2);
-                if (allDifferent && t1 < t2) {
+                if (!taxa1.intersects(phTree2.getCluster(node2))) {
                     addDifferentTaxaNodesConstraints(t1, node1, t2, node2);
                     totalDifferent++;
                 }
@@ -934,8 +1456,8 @@ public class FormulaBuilder {
 //
 //
 //        for (int nodeNumber : treeNodes()) {
-//            int x1Var = getVar("x", t1, n1, nodeNumber);
-//            int x2Var = getVar("x", t2, n2, nodeNumber);
+//            int x1Var = getVar(xVars, t1, n1, nodeNumber);
+//            int x2Var = getVar(xVars, t2, n2, nodeNumber);
 //            addClause(-x1Var, x2Var); // x1 then x2
 //        }
 //
@@ -944,8 +1466,8 @@ public class FormulaBuilder {
 //                for (int nonSubtreeNode = n; nonSubtreeNode < 2 * n - 1; nonSubtreeNode++) {
 //                    if (!phTree2.getSubtreeNodes(n2).contains(nonSubtreeNode)) {
 //                        for (int nodeNumber : treeNodes()) {
-//                            int x1Var = getVar("x", t1, subtreeNode, nodeNumber);
-//                            int x2Var = getVar("x", t2, nonSubtreeNode, nodeNumber);
+//                            int x1Var = getVar(xVars, t1, subtreeNode, nodeNumber);
+//                            int x2Var = getVar(xVars, t2, nonSubtreeNode, nodeNumber);
 //                            addClause(-x1Var, -x2Var); // x1 then ~x2
 //                        }
 //                    }
@@ -961,134 +1483,98 @@ public class FormulaBuilder {
         PhylogeneticTree phTree1 = this.phTrees.get(t1);
         PhylogeneticTree phTree2 = this.phTrees.get(t2);
         commentCNF("Node %d in tree %d and node %d in tree %d have disjoint set of taxons (%d and %d)",
-                n1, t1, n2, t2, phTree1.getTaxa(n1).size(), phTree2.getTaxa(n2).size());
+                n1, t1, n2, t2, phTree1.getCluster(n1).cardinality(), phTree2.getCluster(n2).cardinality());
 
         for (int nodeNumber : treeNodes()) {
-            int x1Var = getVar("x", t1, n1, nodeNumber);
-            int x2Var = getVar("x", t2, n2, nodeNumber);
+            int x1Var = getVar(xVars, t1, n1, nodeNumber);
+            int x2Var = getVar(xVars, t2, n2, nodeNumber);
             addClause(-x1Var, -x2Var);
         }
     }
 
-    private List<Integer> possibleChildren(int nodeNumber) {
-        if (nodeNumber < 0 || nodeNumber >= treeNodesCount + k) {
-            throw new RuntimeException("Node number out of bounds");
-        }
-
-        List<Integer> ans = new ArrayList<>();
-        if (nodeNumber < n) {
-            return ans;
-        }
-        for (int childNumber : allNodes()) {
-            if (nodeNumber < treeNodesCount) {
-                if (childNumber < nodeNumber || childNumber >= treeNodesCount) {
-                    ans.add(childNumber);
-                }
-            } else if (childNumber < treeNodesCount - 1 || (enableReticulationConnection && childNumber < nodeNumber)) {
-                ans.add(childNumber);
-            }
-        }
-
-        return ans;
+    private int[] possibleChildren(int nodeNumber) {
+        return domains.children(nodeNumber);
     }
 
-    private List<Integer> possibleParents(int nodeNumber) {
-        if (nodeNumber < 0 || nodeNumber >= treeNodesCount + k) {
-            throw new RuntimeException("Node number out of bounds");
-        }
+    private int[] possibleParents(int nodeNumber) {
+        return domains.parents(nodeNumber);
+    }
 
-        List<Integer> ans = new ArrayList<>();
-        if (nodeNumber == treeNodesCount - 1) {
-            return ans;
-        }
-        for (int parentNumber = n; parentNumber < treeNodesCount + k; parentNumber++) {
-            if (nodeNumber < n) {
-                ans.add(parentNumber);
-            } else if (nodeNumber < treeNodesCount) {
-                if (nodeNumber < parentNumber) {
-                    ans.add(parentNumber);
-                }
-            } else if (parentNumber < treeNodesCount) {
-                ans.add(parentNumber);
-            }
-        }
-        if (enableReticulationConnection && nodeNumber >= treeNodesCount)
-            ans.add(nodeNumber + 1);
+    private int[] possibleUp(int nodeNumber) {
+        return domains.up(nodeNumber);
+    }
 
-        return ans;
+    private int[] allNodes() {
+        return domains.allNodes();
     }
 
-    private List<Integer> possibleUp(int nodeNumber) {
-        List<Integer> ans = new ArrayList<>();
-        for (int up : possibleParents(nodeNumber)) {
-            if (up < treeNodesCount) {
-                ans.add(up);
-            }
-        }
-        return ans;
+    private int[] treeNodes() {
+        return domains.treeNodes();
     }
 
-    private List<Integer> allNodes() {
-        List<Integer> ans = new ArrayList<>();
-        for (int nodeNumber = 0; nodeNumber < this.treeNodesCount + k; nodeNumber++) {
-            ans.add(nodeNumber);
-        }
-        return ans;
+    private int[] reticulationNodes() {
+        return domains.reticulationNodes();
     }
 
-    private List<Integer> treeNodes() {
-        List<Integer> ans = new ArrayList<>();
-        for (int nodeNumber = this.n; nodeNumber < this.treeNodesCount; nodeNumber++) {
-            ans.add(nodeNumber);
-        }
-        return ans;
+    private int createVar(Family family, int a, int b) {
+        return vars.create(family, a, b);
     }
 
-    private List<Integer> reticulationNodes() {
-        List<Integer> ans = new ArrayList<>();
-        for (int nodeNumber = this.treeNodesCount; nodeNumber < this.treeNodesCount + k; nodeNumber++) {
-            ans.add(nodeNumber);
-        }
-        return ans;
+    private int createVar(Family family, int a, int b, int c) {
+        return vars.create(family, a, b, c);
     }
 
-    private String getKey(String type, int... params) {
-        String key = type;
-        for (int p : params) {
-            key += "_" + p;
-        }
-        return key;
+    private int getVar(Family family, int a) {
+        return vars.get(family, a);
     }
 
-    private int createVar(String type, int... params) {
-        m.put(getKey(type, params), m.size() + 1);
-        return m.size();
+    private int getVar(Family family, int a, int b) {
+        return vars.get(family, a, b);
     }
 
-    private int getVar(String type, int... params) {
-        return m.get(getKey(type, params));
+    private int getVar(Family family, int a, int b, int c) {
+        return vars.get(family, a, b, c);
     }
 
     private void commentCNF(String format, Object... args) {
         if (!disableComments) {
-            this.sb.append(String.format("c " + format + "\n", args));
+            this.sink.comment(String.format(format, args));
         }
     }
 
-    private void addClause(String clause) {
-        if (!clause.endsWith(" ")) {
-            clause += " ";
+    private void addClause(List<Integer> literals) {
+        int[] clause = new int[literals.size()];
+        for (int i = 0; i < clause.length; i++) {
+            clause[i] = literals.get(i);
         }
-        clause += "0\n";
-        this.sb.append(clause);
-        clausesCount++;
+        addClause(clause);
     }
 
+    /**
+     * Clauses containing the negation of an excluded variable are satisfied and dropped,
+     * excluded variables themselves are removed from clauses.
+     */
     private void addClause(int... literals) {
-        String clause = "";
+        int excluded = 0;
         for (int literal : literals) {
-            clause += literal + " ";
+            if (literal == -VariableRegistry.FALSE) {
+                return;
+            }
+            if (literal == VariableRegistry.FALSE) {
+                excluded++;
+            }
         }
-        addClause(clause);
+        if (excluded > 0) {
+            int[] clause = new int[literals.length - excluded];
+            int length = 0;
+            for (int literal : literals) {
+                if (literal != VariableRegistry.FALSE) {
+                    clause[length++] = literal;
+                }
+            }
+            literals = clause;
+        }
+        this.sink.addClause(literals);
+        clausesCount++;
     }
 }
@@ -0,0 +1,522 @@
+import cnf.AtMostOneEncoding;
+import cnf.ClauseSink;
+
+import java.util.*;
+
+/**
+ * Exact number of variables, clauses and literals of the formula of a configured {@link FormulaBuilder},
+ * computed from domain sizes without creating variables or clauses.
+ *
+ * Every group of constraints mirrors the loops of the builder, including clauses which are dropped
+ * or shortened because of excluded x and up variables. Comments are not counted.
+ */
+public class FormulaSizeEstimator {
+    private final FormulaBuilder builder;
+
+    private final List<PhylogeneticTree> trees;
+
+    private final NodeDomains domains;
+
+    private final int n;
+
+    private final int k;
+
+    private final int treeNodesCount;
+
+    private final boolean enableReticulationConnection;
+
+    private final boolean incremental;
+
+    private final Map<String, Long> variables = new LinkedHashMap<>();
+
+    private final Map<String, Long> clauses = new LinkedHashMap<>();
+
+    private long literalsCount;
+
+    // encoding name -> size -> {clauses, literals}
+    private final Map<String, Map<Integer, long[]>> amoSizes = new HashMap<>();
+
+    public FormulaSizeEstimator(FormulaBuilder builder) {
+        this.builder = builder;
+        this.trees = builder.getTrees();
+        this.domains = builder.getDomains();
+        this.n = trees.get(0).getTaxaSize();
+        this.k = builder.getK();
+        this.treeNodesCount = 2 * n - 1 + k;
+        this.enableReticulationConnection = builder.isReticulationConnectionEnabled();
+        this.incremental = builder.isIncremental();
+
+        if (incremental) {
+            addVariables("act", k);
+            addClauses("activation order", Math.max(k - 1, 0), 2);
+        }
+        countNetworkConstraints();
+        for (int treeNumber = 0; treeNumber < trees.size(); treeNumber++) {
+            countTreeConstraints(treeNumber);
+        }
+        for (int nodeNumber : domains.reticulationNodes()) {
+            addClauses("dir ALO", 2, trees.size() + relaxation(nodeNumber));
+        }
+        for (int t1 = 0; t1 < trees.size(); t1++) {
+            for (int t2 = t1 + 1; t2 < trees.size(); t2++) {
+                countPairOfTrees(t1, t2);
+            }
+        }
+        if (incremental) {
+            countActivationConstraints();
+        }
+    }
+
+    public long getVariablesCount() {
+        return sum(variables);
+    }
+
+    public long getClausesCount() {
+        return sum(clauses);
+    }
+
+    public long getLiteralsCount() {
+        return literalsCount;
+    }
+
+    /**
+     * @return variables count of every family, per-tree families are summed over trees
+     */
+    public Map<String, Long> getVariablesByFamily() {
+        return variables;
+    }
+
+    /**
+     * @return clauses count of every group of constraints, per-tree groups are summed over trees
+     */
+    public Map<String, Long> getClausesByGroup() {
+        return clauses;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("variables %d, clauses %d, literals %d%n",
+                getVariablesCount(), getClausesCount(), getLiteralsCount()));
+        for (Map.Entry<String, Long> entry : variables.entrySet()) {
+            sb.append(String.format("  var %-22s %d%n", entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, Long> entry : clauses.entrySet()) {
+            sb.append(String.format("  cls %-22s %d%n", entry.getKey(), entry.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private void countNetworkConstraints() {
+        int[] first = NodeDomains.range(0, treeNodesCount - 1);
+        for (int nodeNumber : first) {
+            addVariables("parent", domains.parents(nodeNumber).length);
+            addClauses("parent ALO", 1, domains.parents(nodeNumber).length + relaxation(nodeNumber));
+        }
+        countAtMostOne("parent", first, v -> domains.parents(v).length);
+
+        int[] treeNodes = domains.treeNodes();
+        for (int nodeNumber : treeNodes) {
+            int children = domains.children(nodeNumber).length;
+            addVariables("left", children);
+            addVariables("right", children);
+            addClauses("left/right ALO", 2, children + relaxation(nodeNumber));
+        }
+        countAtMostOne("left", treeNodes, v -> domains.children(v).length);
+        countAtMostOne("right", treeNodes, v -> domains.children(v).length);
+        for (int nodeNumber : treeNodes) {
+            int children = domains.children(nodeNumber).length;
+            addClauses("left < right", (long) children * (children + 1) / 2, 2);
+        }
+
+        int[] reticulations = domains.reticulationNodes();
+        for (int nodeNumber : reticulations) {
+            addVariables("ch", domains.children(nodeNumber).length);
+            addClauses("ch ALO", 1, domains.children(nodeNumber).length + relaxation(nodeNumber));
+        }
+        countAtMostOne("ch", reticulations, v -> domains.children(v).length);
+
+        for (int nodeNumber : reticulations) {
+            int parents = domains.parents(nodeNumber).length;
+            addVariables("lp", parents);
+            addVariables("rp", parents);
+            addClauses("lp/rp ALO", 2, parents + relaxation(nodeNumber));
+        }
+        countAtMostOne("lp", reticulations, v -> domains.parents(v).length);
+        countAtMostOne("rp", reticulations, v -> domains.parents(v).length);
+        for (int nodeNumber : reticulations) {
+            int parents = domains.parents(nodeNumber).length;
+            addClauses("lp < rp", (long) parents * (parents + 1) / 2, 2);
+        }
+
+        for (int nodeNumber : treeNodes) {
+            for (int childNumber : domains.children(nodeNumber)) {
+                if (childNumber < treeNodesCount) {
+                    addClauses("child-parent", 2, 2);
+                    addClauses("child-parent", 1, 3);
+                } else {
+                    addClauses("child-parent", 4, 3);
+                }
+            }
+        }
+        for (int nodeNumber : reticulations) {
+            for (int childNumber : domains.children(nodeNumber)) {
+                if (childNumber < treeNodesCount) {
+                    addClauses("child-parent", 2, 2);
+                    addClauses("child-parent", 2L * Math.max(childNumber - n + 1, 0), 2);
+                } else {
+                    addClauses("child-parent", 2, 2);
+                    addClauses("child-parent", 1, 3);
+                }
+            }
+        }
+
+        for (int i : treeNodes) {
+            if (domains.isTreeNode(i + 1)) {
+                addClauses("parent order", countParentOrderPairs(i, false) + countParentOrderPairs(i, true), 2);
+            }
+        }
+        if (builder.getSymmetryBreaking() != SymmetryBreaking.NONE && !enableReticulationConnection) {
+            for (int i : reticulations) {
+                for (int j = i + 1; domains.isReticulation(j); j++) {
+                    if (j == i + 1 || builder.getSymmetryBreaking() == SymmetryBreaking.FULL) {
+                        addClauses("symmetry breaking", countNotGreater(domains.children(i), domains.children(j)), 2);
+                    }
+                }
+            }
+        } else {
+            for (int i : reticulations) {
+                if (domains.isReticulation(i + 1)) {
+                    addClauses("parent order", (long) countTreeNodes(domains.children(i))
+                            * countTreeNodes(domains.children(i + 1)), 2);
+                }
+            }
+        }
+    }
+
+    private void countTreeConstraints(int treeNumber) {
+        PhylogeneticTree phTree = trees.get(treeNumber);
+        int[] reticulations = domains.reticulationNodes();
+
+        addVariables("dir", k);
+        addVariables("used", treeNodesCount - n);
+        if (enableReticulationConnection) {
+            addVariables("rused", k);
+        }
+
+        // dir and used
+        for (int nodeNumber : reticulations) {
+            addClauses("dir-used", 2L * countTreeNodes(domains.parents(nodeNumber)), 3);
+        }
+
+        if (enableReticulationConnection) {
+            for (int nodeNumber : reticulations) {
+                for (int childNumber : domains.children(nodeNumber)) {
+                    if (childNumber < treeNodesCount) {
+                        addClauses("rused", 1, 2);
+                    } else {
+                        addClauses("rused", 3, 3);
+                        addClauses("rused", 2, 4);
+                    }
+                }
+                addClauses("rused", 2L * countTreeNodes(domains.parents(nodeNumber)), 3);
+            }
+        }
+
+        // up: taxa may only hang below network nodes their tree parent may be mapped to
+        int[][] taxonRanges = new int[n][];
+        for (int taxon = 0; taxon < n; taxon++) {
+            taxonRanges[taxon] = builder.mappingRange(treeNumber, phTree.getParent(taxon));
+        }
+        int[] upSizes = new int[treeNodesCount + k];
+        for (int nodeNumber : domains.allNodes()) {
+            upSizes[nodeNumber] = domains.up(nodeNumber).length;
+            if (nodeNumber < n) {
+                upSizes[nodeNumber] -= countTreeNodes(domains.up(nodeNumber))
+                        - intersection(taxonRanges[nodeNumber], n, treeNodesCount);
+            }
+            addVariables("up", upSizes[nodeNumber]);
+            if (nodeNumber != treeNodesCount - 1) {
+                addClauses("up ALO", 1, upSizes[nodeNumber] + relaxation(nodeNumber));
+            }
+        }
+        countAtMostOne("up", domains.allNodes(), v -> upSizes[v]);
+
+        for (int nodeNumber = 0; nodeNumber < treeNodesCount; nodeNumber++) {
+            for (int parent : domains.parents(nodeNumber)) {
+                // a clause deriving excluded up of a taxon is dropped, the one forbidding it loses a literal
+                int[] range = nodeNumber < n ? taxonRanges[nodeNumber] : null;
+                if (parent < treeNodesCount) {
+                    boolean parentAllowed = range == null || inRange(range, parent);
+                    addClauses("up-parent", parentAllowed ? 2 : 1, parentAllowed ? 3 : 2);
+                    int upCount = domains.up(parent).length;
+                    int allowed = range == null ? upCount : intersection(range, parent + 1, treeNodesCount);
+                    addClauses("up-parent", 2L * allowed, 4);
+                    addClauses("up-parent", upCount - allowed, 3);
+                } else {
+                    int notAbove = 0;
+                    for (int parentUp : domains.up(parent)) {
+                        if (parentUp <= nodeNumber) {
+                            notAbove++;
+                        }
+                    }
+                    int above = domains.up(parent).length - notAbove;
+                    int allowed = range == null ? above : intersection(range, nodeNumber + 1, treeNodesCount);
+                    addClauses("up-parent", notAbove, 2);
+                    addClauses("up-parent", 2L * allowed, 3);
+                    addClauses("up-parent", above - allowed, 2);
+                }
+            }
+        }
+        for (int nodeNumber : reticulations) {
+            for (int parent : domains.parents(nodeNumber)) {
+                if (parent >= treeNodesCount + k) {
+                    continue; // with -e the last reticulation lists a node after it, the builder fails there
+                }
+                int upCount = domains.up(parent).length;
+                if (parent < treeNodesCount) {
+                    addClauses("up-parent", 2, 4);
+                    addClauses("up-parent", 4L * upCount, 5);
+                } else {
+                    addClauses("up-parent", 2L * upCount, 4);
+                }
+            }
+        }
+
+        // x
+        int[][] xRanges = new int[2 * n - 1][];
+        int[] mappedCount = new int[treeNodesCount];
+        int[] xSizes = new int[2 * n - 1];
+        for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
+            xRanges[treeNodeNumber] = builder.mappingRange(treeNumber, treeNodeNumber);
+            xSizes[treeNodeNumber] = xRanges[treeNodeNumber][1] - xRanges[treeNodeNumber][0];
+            for (int nodeNumber = xRanges[treeNodeNumber][0]; nodeNumber < xRanges[treeNodeNumber][1]; nodeNumber++) {
+                mappedCount[nodeNumber]++;
+            }
+            addVariables("x", xSizes[treeNodeNumber]);
+            addClauses("x ALO", 1, xSizes[treeNodeNumber]);
+            addClauses("x => used", xSizes[treeNodeNumber], 2);
+        }
+        countAtMostOne("x", NodeDomains.range(n, 2 * n - 1), tv -> xSizes[tv]);
+        for (int nodeNumber : domains.treeNodes()) {
+            addClauses("x injective", (long) mappedCount[nodeNumber] * (mappedCount[nodeNumber] - 1) / 2, 2);
+        }
+
+        // data
+        for (int treeNodeNumber = 0; treeNodeNumber < phTree.size(); treeNodeNumber++) {
+            int treeParentNumber = phTree.getParent(treeNodeNumber);
+            if (treeParentNumber == -1) {
+                addClauses("data", 1, 1);
+            } else if (treeNodeNumber < n) {
+                addClauses("data", 2L * xSizes[treeParentNumber], 2);
+            } else {
+                int[] parentRange = xRanges[treeParentNumber];
+                int[] range = xRanges[treeNodeNumber];
+                for (int nodeNumber = range[0]; nodeNumber < range[1]; nodeNumber++) {
+                    int allowedUp = intersection(parentRange, nodeNumber + 1, treeNodesCount);
+                    addClauses("data", 2L * allowedUp, 3);
+                    addClauses("data", domains.up(nodeNumber).length - allowedUp, 2);
+                    addClauses("data", intersection(parentRange, n, nodeNumber + 1), 2);
+                }
+            }
+        }
+    }
+
+    private void countPairOfTrees(int t1, int t2) {
+        PhylogeneticTree phTree1 = trees.get(t1);
+        PhylogeneticTree phTree2 = trees.get(t2);
+        for (int node1 = n; node1 < 2 * n - 2; node1++) {
+            BitSet taxa1 = phTree1.getCluster(node1);
+            int[] range1 = builder.mappingRange(t1, node1);
+            for (int node2 = n; node2 < 2 * n - 2; node2++) {
+                if (!taxa1.intersects(phTree2.getCluster(node2))) {
+                    int[] range2 = builder.mappingRange(t2, node2);
+                    addClauses("pairs of trees", intersection(range1, range2[0], range2[1]), 2);
+                }
+            }
+        }
+    }
+
+    private void countActivationConstraints() {
+        for (int nodeNumber = 0; nodeNumber < treeNodesCount - 1; nodeNumber++) {
+            for (int parentNumber : domains.parents(nodeNumber)) {
+                addClauses("activation", guards(nodeNumber, parentNumber), 2);
+            }
+        }
+        for (int nodeNumber : domains.treeNodes()) {
+            for (int childNumber : domains.children(nodeNumber)) {
+                addClauses("activation", 2L * guards(nodeNumber, childNumber), 2);
+            }
+        }
+        for (int nodeNumber : domains.reticulationNodes()) {
+            for (int childNumber : domains.children(nodeNumber)) {
+                addClauses("activation", guards(nodeNumber, childNumber), 2);
+            }
+            for (int parentNumber : domains.parents(nodeNumber)) {
+                addClauses("activation", 2L * guards(nodeNumber, parentNumber), 2);
+            }
+        }
+        for (int treeNumber = 0; treeNumber < trees.size(); treeNumber++) {
+            PhylogeneticTree phTree = trees.get(treeNumber);
+            for (int nodeNumber : domains.reticulationNodes()) {
+                addClauses("activation", guards(nodeNumber, nodeNumber) * (enableReticulationConnection ? 2 : 1), 2);
+            }
+            for (int nodeNumber : domains.treeNodes()) {
+                addClauses("activation", guards(nodeNumber, nodeNumber), 2);
+            }
+            for (int nodeNumber : domains.allNodes()) {
+                int[] range = nodeNumber < n ? builder.mappingRange(treeNumber, phTree.getParent(nodeNumber)) : null;
+                for (int up : domains.up(nodeNumber)) {
+                    if (range == null || inRange(range, up)) {
+                        addClauses("activation", guards(nodeNumber, up), 2);
+                    }
+                }
+            }
+            for (int treeNodeNumber = n; treeNodeNumber < 2 * n - 1; treeNodeNumber++) {
+                int[] range = builder.mappingRange(treeNumber, treeNodeNumber);
+                for (int nodeNumber = range[0]; nodeNumber < range[1]; nodeNumber++) {
+                    addClauses("activation", guards(nodeNumber, nodeNumber), 2);
+                }
+            }
+        }
+    }
+
+    private interface Size {
+        int get(int i);
+    }
+
+    private void countAtMostOne(String family, int[] first, Size size) {
+        AtMostOneEncoding encoding = builder.getAtMostOneEncoding(family);
+        for (int nodeNumber : first) {
+            int literals = size.get(nodeNumber);
+            addVariables("cmd" + family, encoding.auxiliaryCount(literals));
+            long[] counts = amoSize(encoding, literals);
+            clauses.merge(family + " AMO", counts[0], Long::sum);
+            literalsCount += counts[1];
+        }
+    }
+
+    /**
+     * @return clauses and literals of the encoding for the given number of literals, counted once per size
+     */
+    private long[] amoSize(AtMostOneEncoding encoding, int size) {
+        Map<Integer, long[]> sizes = amoSizes.computeIfAbsent(encoding.getName(), name -> new HashMap<>());
+        long[] counts = sizes.get(size);
+        if (counts == null) {
+            long[] ans = new long[2];
+            int[] literals = NodeDomains.range(1, size + 1);
+            int[] auxiliary = NodeDomains.range(size + 1, size + 1 + encoding.auxiliaryCount(size));
+            encoding.encode(literals, auxiliary, new ClauseSink() {
+                @Override
+                public void addClause(int... literals) {
+                    ans[0]++;
+                    ans[1] += literals.length;
+                }
+
+                @Override
+                public void comment(String text) {
+                }
+            });
+            sizes.put(size, ans);
+            counts = ans;
+        }
+        return counts;
+    }
+
+    private long countParentOrderPairs(int i, boolean reticulationParents) {
+        long ans = 0;
+        for (int j : domains.parents(i)) {
+            if (domains.isReticulation(j) != reticulationParents) {
+                continue;
+            }
+            for (int other : domains.parents(i + 1)) {
+                if (other >= j) {
+                    break;
+                }
+                if (domains.isReticulation(other) == reticulationParents) {
+                    ans++;
+                }
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * @return number of pairs (a, b) with b <= a, a from the first sorted domain and b from the second
+     */
+    private static long countNotGreater(int[] first, int[] second) {
+        long ans = 0;
+        int j = 0;
+        for (int a : first) {
+            while (j < second.length && second[j] <= a) {
+                j++;
+            }
+            ans += j;
+        }
+        return ans;
+    }
+
+    private int countTreeNodes(int[] domain) {
+        int ans = 0;
+        for (int v : domain) {
+            if (domains.isTreeNode(v)) {
+                ans++;
+            }
+        }
+        return ans;
+    }
+
+    private static boolean inRange(int[] range, int v) {
+        return v >= range[0] && v < range[1];
+    }
+
+    /**
+     * @return size of intersection of [range[0], range[1]) and [from, to)
+     */
+    private static int intersection(int[] range, int from, int to) {
+        return Math.max(Math.min(range[1], to) - Math.max(range[0], from), 0);
+    }
+
+    /**
+     * Mirrors activity of FormulaBuilder: nodes n + i and treeNodesCount + i share act_i.
+     */
+    private int activity(int nodeNumber) {
+        if (!incremental) {
+            return 0;
+        }
+        if (nodeNumber >= n && nodeNumber < n + k) {
+            return nodeNumber - n + 1;
+        }
+        if (nodeNumber >= treeNodesCount) {
+            return nodeNumber - treeNodesCount + 1;
+        }
+        return 0;
+    }
+
+    private int relaxation(int nodeNumber) {
+        return activity(nodeNumber) != 0 ? 1 : 0;
+    }
+
+    private long guards(int firstNode, int secondNode) {
+        int firstActivity = activity(firstNode);
+        int secondActivity = activity(secondNode);
+        return (firstActivity != 0 ? 1 : 0) + (secondActivity != 0 && secondActivity != firstActivity ? 1 : 0);
+    }
+
+    private void addVariables(String family, long count) {
+        variables.merge(family, count, Long::sum);
+    }
+
+    private void addClauses(String group, long count, int length) {
+        clauses.merge(group, count, Long::sum);
+        literalsCount += count * length;
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        long ans = 0;
+        for (long count : counts.values()) {
+            ans += count;
+        }
+        return ans;
+    }
+}
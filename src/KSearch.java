@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Sequential search for the minimal hybridization number between a lower bound and a network found
+ * without the solver.
+ *
+ * k from the lower bound up are first tried with a short time limit while they are UNSAT, which decides
+ * easy instances at once. The rest is searched with the maximal time limit in the order of a strategy,
+ * chosen per subtask from the answers of the short calls unless it is given. A k which is not decided
+ * within the maximal limit is given up, as in the parallel search.
+ */
+public class KSearch {
+    private final KSearchScheduler.Solver solver;
+
+    private final Logger logger;
+
+    public KSearch(KSearchScheduler.Solver solver, Logger logger) {
+        this.solver = solver;
+        this.logger = logger;
+    }
+
+    /**
+     * @param strategy   null to choose it by the short calls
+     * @param minK       lower bound
+     * @param upper      network found without the solver
+     * @param checkFirst number of k above the lower bound tried with the first time limit
+     * @return answers of the search, its best network has the minimal k found
+     */
+    public KSearchMemo search(KSearchStrategy strategy, int minK, PhylogeneticNetwork upper, int checkFirst,
+                              long firstTimeLimit, long maxTimeLimit) throws IOException {
+        KSearchMemo memo = new KSearchMemo(minK, upper);
+        for (int k = minK; k <= minK + checkFirst && memo.isOpen(k); k++) {
+            SolveResult result = solver.solve(k, firstTimeLimit);
+            memo.record(k, result);
+            if (!result.isUnsat()) {
+                break;
+            }
+        }
+        if (memo.hasOpen()) {
+            if (strategy == null) {
+                strategy = KSearchStrategy.choose(memo);
+            }
+            logger.info("Searching k in [" + memo.lowestOpen() + ", " + memo.highestOpen() + "] " + strategy);
+        }
+        while (memo.hasOpen()) {
+            int k = strategy.next(memo);
+            SolveResult result = solver.solve(k, maxTimeLimit);
+            memo.record(k, result);
+            if (!result.isDefinitive()) {
+                logger.warning("k = " + k + " is not decided in " + maxTimeLimit + " ms");
+                memo.giveUp(k);
+            }
+        }
+        logger.info("k-search: " + memo);
+        if (!memo.isMinimal()) {
+            logger.warning("The network with " + memo.getMinSat() + " reticulation nodes may be not minimal");
+        }
+        return memo;
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Answers known for k of one subtask, shared by the steps of a k-search.
+ *
+ * Satisfiability is monotone in k: SAT for k decides every larger k and UNSAT for k every smaller
+ * one, so the open k lie strictly between the largest UNSAT and the smallest SAT. A k which is not
+ * decided within the maximal time limit is given up, it stays open for the bounds but is not tried
+ * again. Wall-clock time of the calls is summed by their outcome.
+ */
+public class KSearchMemo {
+    private final int minK;
+
+    private final PhylogeneticNetwork upper;
+
+    private final Map<Integer, SolveResult> results = new TreeMap<>();
+
+    private final TreeSet<Integer> givenUp = new TreeSet<>();
+
+    private int maxUnsat;
+
+    private int minSat;
+
+    private PhylogeneticNetwork best;
+
+    private int satCalls, unsatCalls, undecidedCalls;
+
+    private long satTime, unsatTime, undecidedTime;
+
+    /**
+     * @param minK  lower bound, smaller k are UNSAT
+     * @param upper network found without the solver, its k is SAT
+     */
+    public KSearchMemo(int minK, PhylogeneticNetwork upper) {
+        this.minK = minK;
+        this.upper = upper;
+        maxUnsat = minK - 1;
+        minSat = upper.getK();
+        best = upper;
+    }
+
+    public void record(int k, SolveResult result) {
+        results.put(k, result);
+        switch (result.getStatus()) {
+            case SAT:
+                satCalls++;
+                satTime += result.getWallTime();
+                if (k < minSat) {
+                    minSat = k;
+                    best = result.getNetwork();
+                }
+                break;
+            case UNSAT:
+                unsatCalls++;
+                unsatTime += result.getWallTime();
+                maxUnsat = Math.max(maxUnsat, k);
+                break;
+            default:
+                undecidedCalls++;
+                undecidedTime += result.getWallTime();
+        }
+    }
+
+    public void giveUp(int k) {
+        givenUp.add(k);
+    }
+
+    public boolean isOpen(int k) {
+        return maxUnsat < k && k < minSat && !givenUp.contains(k);
+    }
+
+    public boolean hasOpen() {
+        return lowestOpen() != -1;
+    }
+
+    /**
+     * @return number of k which may still be tried
+     */
+    public int openCount() {
+        int count = 0;
+        for (int k = maxUnsat + 1; k < minSat; k++) {
+            if (isOpen(k)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the smallest open k, -1 if there is none
+     */
+    public int lowestOpen() {
+        for (int k = maxUnsat + 1; k < minSat; k++) {
+            if (isOpen(k)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the largest open k, -1 if there is none
+     */
+    public int highestOpen() {
+        for (int k = minSat - 1; k > maxUnsat; k--) {
+            if (isOpen(k)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the open k closest to the target, the smaller one of two, -1 if there is none
+     */
+    public int nearestOpen(int target) {
+        for (int d = 0; target - d > maxUnsat || target + d < minSat; d++) {
+            if (isOpen(target - d)) {
+                return target - d;
+            }
+            if (isOpen(target + d)) {
+                return target + d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return false if a given up k may have a network with fewer reticulation nodes than the best one
+     */
+    public boolean isMinimal() {
+        Integer k = givenUp.lower(minSat);
+        return k == null || k <= maxUnsat;
+    }
+
+    public SolveResult getResult(int k) {
+        return results.get(k);
+    }
+
+    public int getMinK() {
+        return minK;
+    }
+
+    public int getMaxUnsat() {
+        return maxUnsat;
+    }
+
+    public int getMinSat() {
+        return minSat;
+    }
+
+    /**
+     * @return network with the smallest SAT k, the upper one if no smaller k is SAT
+     */
+    public PhylogeneticNetwork getBest() {
+        return best;
+    }
+
+    public boolean isUpperBest() {
+        return best == upper;
+    }
+
+    public int getSatCalls() {
+        return satCalls;
+    }
+
+    public int getUnsatCalls() {
+        return unsatCalls;
+    }
+
+    public int getUndecidedCalls() {
+        return undecidedCalls;
+    }
+
+    public long getSatTime() {
+        return satTime;
+    }
+
+    public long getUnsatTime() {
+        return unsatTime;
+    }
+
+    public long getUndecidedTime() {
+        return undecidedTime;
+    }
+
+    @Override
+    public String toString() {
+        return satCalls + " SAT calls in " + satTime + " ms, " + unsatCalls + " UNSAT calls in " + unsatTime
+                + " ms, " + undecidedCalls + " undecided calls in " + undecidedTime + " ms";
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Searches for the minimal hybridization number solving formulas for several k at once.
+ *
+ * Satisfiability is monotone in k, so a SAT answer for k cancels jobs for larger k and
+ * an UNSAT answer for k cancels jobs for smaller ones. Every k starts with a short time limit,
+ * which is multiplied after each timeout up to the maximal one, and free slots are given
+ * to the k with the smallest limit: easy k are decided first and the wall-clock time
+ * of a hard instance approaches the time of its hardest single call. A solver error is retried
+ * once with the same limit, a larger one would not help; a second error stops the search.
+ */
+public class KSearchScheduler {
+    public interface Solver {
+        /**
+         * @return result with a network with k reticulation nodes if it is SAT
+         */
+        SolveResult solve(int k, long timeLimit) throws IOException;
+    }
+
+    private static final int TIME_LIMIT_FACTOR = 10;
+
+    private static final int MAX_ERRORS = 2;
+
+    private enum Status {
+        UNKNOWN, SAT, UNSAT, GAVE_UP
+    }
+
+    private final Solver solver;
+
+    private final int jobs;
+
+    private final Logger logger;
+
+    private boolean minimal = true;
+
+    public KSearchScheduler(Solver solver, int jobs, Logger logger) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Number of jobs must be positive: " + jobs);
+        }
+        this.solver = solver;
+        this.jobs = jobs;
+        this.logger = logger;
+    }
+
+    /**
+     * k which is not decided within the maximal time limit is skipped, as in the sequential search,
+     * and the answer is then not proved minimal, see {@link #isMinimal()}.
+     *
+     * @return network with the minimal k in [minK, maxK] found, null if none was found
+     */
+    public PhylogeneticNetwork search(int minK, int maxK, long firstTimeLimit, long maxTimeLimit)
+            throws IOException {
+        minimal = true;
+        if (minK > maxK) {
+            return null;
+        }
+        Status[] status = new Status[maxK + 1];
+        long[] timeLimits = new long[maxK + 1];
+        int[] errors = new int[maxK + 1];
+        PhylogeneticNetwork[] networks = new PhylogeneticNetwork[maxK + 1];
+        for (int k = minK; k <= maxK; k++) {
+            status[k] = Status.UNKNOWN;
+            timeLimits[k] = Math.min(firstTimeLimit, maxTimeLimit);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        CompletionService<Job> completion = new ExecutorCompletionService<>(executor);
+        Map<Integer, Future<Job>> running = new HashMap<>();
+        int lo = minK, best = maxK + 1;
+        try {
+            while (true) {
+                while (lo <= maxK && (status[lo] == Status.UNSAT || status[lo] == Status.GAVE_UP)) {
+                    lo++;
+                }
+                if (lo >= best) {
+                    break;
+                }
+                while (running.size() < jobs) {
+                    int next = -1;
+                    for (int k = lo; k < best; k++) {
+                        if (status[k] == Status.UNKNOWN && !running.containsKey(k)
+                                && (next < 0 || timeLimits[k] < timeLimits[next])) {
+                            next = k;
+                        }
+                    }
+                    if (next < 0) {
+                        break;
+                    }
+                    logger.info("Scheduling k = " + next + " with time limit " + timeLimits[next]);
+                    running.put(next, completion.submit(new Job(next, timeLimits[next])));
+                }
+
+                Future<Job> future = completion.take();
+                if (future.isCancelled()) {
+                    continue;
+                }
+                Job job = get(future);
+                running.remove(job.k);
+                switch (job.result.getStatus()) {
+                    case SAT:
+                        status[job.k] = Status.SAT;
+                        networks[job.k] = job.result.getNetwork();
+                        best = Math.min(best, job.k);
+                        logger.info("k = " + job.k + " is SAT, cancelling jobs for larger k");
+                        cancel(running, job.k + 1, maxK);
+                        break;
+                    case UNSAT:
+                        for (int k = minK; k <= job.k; k++) {
+                            status[k] = Status.UNSAT;
+                        }
+                        logger.info("k = " + job.k + " is UNSAT, cancelling jobs for smaller k");
+                        cancel(running, minK, job.k - 1);
+                        break;
+                    case TIMEOUT:
+                        if (timeLimits[job.k] >= maxTimeLimit) {
+                            status[job.k] = Status.GAVE_UP;
+                            logger.info("k = " + job.k + " is not decided in " + maxTimeLimit
+                                    + " ms, giving up on it");
+                        } else {
+                            timeLimits[job.k] = Math.min(TIME_LIMIT_FACTOR * timeLimits[job.k], maxTimeLimit);
+                        }
+                        break;
+                    case ERROR:
+                        if (++errors[job.k] >= MAX_ERRORS) {
+                            throw new IOException("Solver failed " + errors[job.k] + " times with k = " + job.k
+                                    + ": " + job.result.getMessage());
+                        }
+                        logger.warning("Solver failed with k = " + job.k + ", retrying");
+                        break;
+                    default:
+                        // cancelled from outside, the k is scheduled again
+                        break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cancel(running, minK, maxK);
+            executor.shutdownNow();
+            try {
+                // cancelled jobs kill their solvers before they finish
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (int k = minK; k < best && k <= maxK; k++) {
+            if (status[k] == Status.GAVE_UP) {
+                minimal = false;
+            }
+        }
+        if (best <= maxK && lo >= best) {
+            if (!minimal) {
+                logger.warning("The network with " + best + " reticulation nodes may be not minimal");
+            }
+            return networks[best];
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the last search gave up on a k below the network it found, or below maxK + 1
+     * if it found none, so a network with fewer reticulation nodes may exist
+     */
+    public boolean isMinimal() {
+        return minimal;
+    }
+
+    private static void cancel(Map<Integer, Future<Job>> running, int from, int to) {
+        for (int k = from; k <= to; k++) {
+            Future<Job> future = running.remove(k);
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static Job get(Future<Job> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private class Job implements Callable<Job> {
+        private final int k;
+
+        private final long timeLimit;
+
+        private SolveResult result;
+
+        Job(int k, long timeLimit) {
+            this.k = k;
+            this.timeLimit = timeLimit;
+        }
+
+        @Override
+        public Job call() throws IOException {
+            result = solver.solve(k, timeLimit);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Order in which a sequential k-search tries open k between the lower bound and the heuristic network.
+ *
+ * Every k below the answer that is tried costs an UNSAT proof, and those close to the answer are
+ * the most expensive calls of the search, while SAT calls above it are usually cheap.
+ */
+public enum KSearchStrategy {
+    /**
+     * One step up from the lower bound, every k tried but the answer is UNSAT.
+     */
+    ASCENDING {
+        @Override
+        int next(KSearchMemo memo) {
+            return memo.lowestOpen();
+        }
+    },
+    /**
+     * One step down from the upper bound, only the k just below the answer is UNSAT.
+     */
+    DESCENDING {
+        @Override
+        int next(KSearchMemo memo) {
+            return memo.highestOpen();
+        }
+    },
+    /**
+     * Down from the upper bound with steps 1, 2, 4, ... while the answers are SAT,
+     * then bisection between the first UNSAT and the last SAT.
+     */
+    GALLOPING {
+        @Override
+        int next(KSearchMemo memo) {
+            int target = memo.getMinSat() - (1 << Math.min(memo.getSatCalls(), 30));
+            return target > memo.getMaxUnsat() ? memo.nearestOpen(target) : BISECTION.next(memo);
+        }
+    },
+    /**
+     * The middle of the open k, the fewest calls when the answer may be anywhere between the bounds.
+     */
+    BISECTION {
+        @Override
+        int next(KSearchMemo memo) {
+            return memo.nearestOpen((memo.getMaxUnsat() + memo.getMinSat()) / 2);
+        }
+    };
+
+    /**
+     * Heuristic networks are rarely more than two reticulation nodes off, so a few open k are
+     * searched downwards. For more of them galloping keeps to the SAT side when the first calls
+     * already timed out, and bisection needs the fewest calls when UNSAT proofs were cheap.
+     *
+     * @param memo answers of the first short calls
+     */
+    public static KSearchStrategy choose(KSearchMemo memo) {
+        if (memo.openCount() <= 3) {
+            return DESCENDING;
+        }
+        return memo.getUndecidedCalls() > 0 ? GALLOPING : BISECTION;
+    }
+
+    /**
+     * @param memo has an open k
+     * @return open k to solve next
+     */
+    abstract int next(KSearchMemo memo);
+}
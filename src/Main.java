@@ -1,3 +1,9 @@
+import cnf.ClauseArena;
+import cnf.DimacsFileSink;
+import cnf.FormulaCache;
+import cnf.IncrementalDimacsFile;
+import cnf.Simplifier;
+import cnf.VariableMapFile;
 import jebl.evolution.io.ImportException;
 import jebl.evolution.io.NewickImporter;
 import jebl.evolution.taxa.Taxon;
@@ -9,8 +15,13 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.spi.BooleanOptionHandler;
+import sat.CdclSolver;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
@@ -30,13 +41,32 @@ public class Main {
             "-r"}, usage = "write result network in GV format to this file", metaVar = "<GV file>")
     private String resultFilePath = null;
 
-    @Option(name = "--cnf", usage = "write CNF formula to this file", metaVar = "<file>")
-    private String cnfFilePath = "cnf";
+    @Option(name = "--cnf", usage = "write CNF formula to this file instead of the workspace", metaVar = "<file>")
+    private String cnfFilePath = null;
+
+    @Option(name = "--workDir", usage = "create the workspace for intermediate files in this directory, "
+            + "the system temporary directory by default", metaVar = "<dir>")
+    private String workDirPath = null;
+
+    @Option(name = "--cleanup", usage = "when to delete the workspace: ALWAYS, ON_SUCCESS or NEVER", metaVar = "<policy>")
+    private Workspace.Cleanup cleanup = Workspace.Cleanup.ON_SUCCESS;
+
+    @Option(name = "--inMemory", handler = BooleanOptionHandler.class, usage = "keep intermediate artifacts "
+            + "which the solver does not read, e.g. decoded solutions, in memory")
+    private boolean inMemory = false;
+
+    private Workspace workspace = null;
 
     @Option(name = "--solverOptions", aliases = {
             "-s"}, usage = "launch with this solver and solver options", metaVar = "<string>")
     private String solverOptions = "cryptominisat --threads=4";
 
+    @Option(name = "--portfolio", usage = "run these solver commands with options, separated by semicolons, "
+            + "concurrently and take the first answer; used instead of --solverOptions", metaVar = "<string>")
+    private String portfolio = null;
+
+    private SolverPortfolio solver = null;
+
     @Option(name = "--hybridizationNumber", aliases = {
             "-h"}, usage = "hybridization number, available in -ds mode", metaVar = "<int>")
     private int hn = -1;
@@ -53,6 +83,92 @@ public class Main {
             "-ds"}, handler = BooleanOptionHandler.class, usage = "disables splits, so it is possible to set hybridization number")
     private boolean disableSplits = false;
 
+    @Option(name = "--incremental", aliases = {
+            "-inc"}, handler = BooleanOptionHandler.class, usage = "build one formula for several hybridization numbers and select k by unit clauses")
+    private boolean incremental = false;
+
+    @Option(name = "--incrementalWindow", usage = "how many hybridization numbers above k one incremental formula covers", metaVar = "<int>")
+    private int incrementalWindow = 4;
+
+    @Option(name = "--optimize", handler = BooleanOptionHandler.class, usage = "search the minimal k in one "
+            + "incremental formula below the heuristic network, bounding the number of active reticulation nodes "
+            + "under the last SAT answer until it is UNSAT")
+    private boolean optimize = false;
+
+    @Option(name = "--journal", usage = "append proven UNSAT k, found networks and solved subtasks to this file",
+            metaVar = "<file>")
+    private String journalPath = null;
+
+    @Option(name = "--resume", handler = BooleanOptionHandler.class, usage = "continue the search from facts "
+            + "of the journal instead of starting it anew, solved subtasks are not searched again")
+    private boolean resume = false;
+
+    @Option(name = "--buildThreads", usage = "number of threads generating per-tree constraints", metaVar = "<int>")
+    private int buildThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--amo", usage = "at-most-one encodings per family, e.g. parent=bimander:2,up=sequential,x=product "
+            + "(families: parent, left, right, ch, lp, rp, up, x or * for all)", metaVar = "<string>")
+    private String amoEncodings = null;
+
+    @Option(name = "--symmetry", usage = "symmetry breaking between reticulation nodes: NONE, RETICULATION or FULL",
+            metaVar = "<level>")
+    private SymmetryBreaking symmetryBreaking = SymmetryBreaking.NONE;
+
+    @Option(name = "--simplify", handler = BooleanOptionHandler.class, usage = "propagate units and renumber variables before writing CNF")
+    private boolean simplify = false;
+
+    @Option(name = "--varMap", usage = "write binary map of formula variables to this file, "
+            + "ids are the ones before --simplify; decode it with VariableMapReader", metaVar = "<file>")
+    private String varMapFilePath = null;
+
+    @Option(name = "--estimate", handler = BooleanOptionHandler.class, usage = "print exact formula sizes of every "
+            + "subtask for -h k (k = 0..3 otherwise) without building or solving anything")
+    private boolean estimate = false;
+
+    @Option(name = "--cacheDir", usage = "reuse formulas generated earlier and stored in this directory, "
+            + "the solver gets gzipped DIMACS then; not used in incremental mode", metaVar = "<dir>")
+    private String cacheDirPath = null;
+
+    @Option(name = "--cacheSize", usage = "size limit of --cacheDir in megabytes, least recently used formulas "
+            + "are evicted", metaVar = "<int>")
+    private long cacheSize = 1024;
+
+    private FormulaCache formulaCache = null;
+
+    private SearchJournal journal = null;
+
+    private SubtaskSearch subtaskSearch = null;
+
+    @Option(name = "--pipe", handler = BooleanOptionHandler.class, usage = "feed CNF to standard input of the solver "
+            + "while it is generated (after it is built for --portfolio) instead of writing --cnf file; "
+            + "the solver has to read DIMACS from stdin")
+    private boolean pipe = false;
+
+    @Option(name = "--kJobs", usage = "number of hybridization numbers solved concurrently when it is not set by -h, "
+            + "each with its own solver; CNF and variable map files get k as a suffix", metaVar = "<int>")
+    private int kJobs = 1;
+
+    @Option(name = "--embedded", handler = BooleanOptionHandler.class, usage = "solve with the built-in CDCL solver "
+            + "in process instead of the external one, no CNF file is written; with --incremental it keeps "
+            + "learnt clauses between k")
+    private boolean embedded = false;
+
+    @Option(name = "--lowerBoundSteps", usage = "branching steps for the agreement forest lower bound of the "
+            + "hybridization number, the k-search starts from it; 0 disables it", metaVar = "<int>")
+    private int lowerBoundSteps = 1_000_000;
+
+    @Option(name = "--kSearch", usage = "order of k tried by the sequential search: ASCENDING, DESCENDING, GALLOPING "
+            + "or BISECTION; chosen per subtask if not set", metaVar = "<strategy>")
+    private KSearchStrategy kSearchStrategy = null;
+
+    private List<PhylogeneticTree> incrementalTrees = null;
+
+    private FormulaBuilder incrementalBuilder = null;
+
+    private IncrementalDimacsFile incrementalFile = null;
+
+    private CdclSolver incrementalSolver = null;
+
     private FileHandler loggerHandler = null;
 
     Logger logger = Logger.getLogger("Logger");
@@ -93,6 +209,49 @@ public class Main {
             return -1;
         }
 
+        try {
+            solver = portfolio != null ? SolverPortfolio.parse(portfolio, logger)
+                    : new SolverPortfolio(Collections.singletonList(solverOptions), logger);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return -1;
+        }
+
+        if (amoEncodings != null) {
+            try {
+                FormulaBuilder.parseAtMostOneEncodings(amoEncodings);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return -1;
+            }
+        }
+
+        if (cacheDirPath != null) {
+            try {
+                formulaCache = new FormulaCache(new File(cacheDirPath), cacheSize << 20);
+            } catch (IOException e) {
+                System.err.println("Can't use cache directory " + cacheDirPath + ": " + e.getMessage());
+                return -1;
+            }
+        }
+
+        if (resume && journalPath == null) {
+            System.out.println("Search can be resumed only with --journal");
+            return -1;
+        }
+
+        if (journalPath != null) {
+            try {
+                journal = new SearchJournal(new File(journalPath), resume);
+            } catch (IOException e) {
+                System.err.println("Can't use journal " + journalPath + ": " + e.getMessage());
+                return -1;
+            }
+        }
+
+        subtaskSearch = new SubtaskSearch(logger, lowerBoundSteps, kSearchStrategy, journal, enableReticulationEdges);
+        subtaskSearch.setJobs(kJobs > 1 && !incremental ? kJobs : 1);
+
         if (logFilePath != null) {
             try {
                 this.loggerHandler = addLoggerHandler(logFilePath);
@@ -102,6 +261,8 @@ public class Main {
             }
         }
 
+        workspace = new Workspace(workDirPath != null ? new File(workDirPath) : null, "phylosat", inMemory, cleanup);
+
         List<SimpleRootedTree> trees = new ArrayList<>();
         for (String filePath : treesPaths) {
             try {
@@ -139,8 +300,13 @@ public class Main {
             }
         }
         logger.info(loggerString);
+        if (resume) {
+            logger.info("Journal " + journalPath + " has facts of " + journal.size() + " subtasks, "
+                    + journal.getSkippedLines() + " lines skipped");
+        }
 
         int finalK = 0;
+        int subtasks = 0;
         List<PhylogeneticNetwork> res = new ArrayList<>();
         for (List<PhylogeneticTree> subtaskTrees : preprocessing(inputTrees)) {
             String loggerStr = "Subtask trees:";
@@ -168,11 +334,17 @@ public class Main {
             }
             logger.info(loggerStr);
             
+            if (estimate) {
+                printEstimates(subtaskTrees);
+                continue;
+            }
+
+            Workspace subtaskWorkspace = workspace.child("subtask" + subtasks++);
             PhylogeneticNetwork cur;
             if (hn >= 0) {
-                cur = solveSubtask(subtaskTrees, hn, 1_000_000, new long[1]);
+                cur = solveSubtask(subtaskTrees, hn, 1_000_000, subtaskWorkspace).getNetwork();
             } else {
-                cur = solveSubtaskWithoutUNSAT(subtaskTrees);
+                cur = solveSubtaskWithoutUNSAT(subtaskTrees, subtaskWorkspace);
             }
 
             if (cur == null) {
@@ -184,6 +356,10 @@ public class Main {
             }
         }
 
+        if (estimate) {
+            return 0;
+        }
+
         while (res.size() > 1) {
             outer:
             for (int i = 0; i < res.size(); ++i) {
@@ -230,70 +406,12 @@ public class Main {
         return finalK;
     }
 
-    private PhylogeneticNetwork solveSubtaskWithoutUNSAT(List<PhylogeneticTree> trees) throws IOException {
-        int CHECK_FIRST = 3;
-        long FIRST_TIME_LIMIT = 1000; // timelimit is 1 second due to paper
-        long MAX_TL = 1000_000; // 1000 seconds? Too small? FIXME
-        // long TL_COEF = 50;
-
-        int mink = 0;
-        while (mink <= CHECK_FIRST) {
-            long[] time = new long[1];
-            PhylogeneticNetwork res = solveSubtask(trees, mink, FIRST_TIME_LIMIT, time);
-            if (time[0] == -1) {
-                break;
-            }
-            if (res != null) {
-                return res;
-            }
-            mink++;
-        }
-
-        int k = calcUpperBound(trees);
-        long[] time = new long[1]; // WAT FIXME
-        PhylogeneticNetwork cur = null;
-
-        // PhylogeneticNetwork res = solveSubtask(trees, k, MAX_TL, time);
-        // if (time[0] == -1) {
-        // logger.info("There is no solution found in MAX_TL time");
-        // return res;
-        // }
-        // if (res == null) {
-        // logger.info("There is no solution with max bound k = " + k);
-        // return res;
-        // }
-
-        // why ascending? descending is faster
-        int l = mink, r = k + 1;
-        while (l < r) {
-            cur = solveSubtask(trees, l, MAX_TL, time);
-            if (cur == null) {
-                l = l + 1;
-            } else {
-                break;
-            }
-        }
-        return cur;
-
-        // TODO
-        // Heuristics: descending from upper bound with step 2 (or sqrt(k - 3))
-        // When found UNSAT case, roll back to the last known SAT - 1 and continue
-        // with step 1 (or max(last_step / 2, 1))
-
-//        while (k >= mink) {
-//            PhylogeneticNetwork temp = solveSubtask(trees, k, MAX_TL, time);
-//            if (temp == null) {
-//                return cur;
-//            }
-//            cur = temp;
-//            k--;
-//        }
-//        assert false; // should never happen I think FIXME
-//        return null;
-    }
-
-    private int calcUpperBound(List<PhylogeneticTree> trees) {
-        return trees.get(0).getTaxaSize();
+    private PhylogeneticNetwork solveSubtaskWithoutUNSAT(List<PhylogeneticTree> trees, Workspace workspace)
+            throws IOException {
+        SubtaskSearch.Optimizer optimizer = (lowerBound, heuristic, timeLimit, key) ->
+                solveOptimizing(trees, lowerBound, heuristic, timeLimit, workspace, key);
+        return subtaskSearch.solve(trees, (k, timeLimit) -> solveSubtask(trees, k, timeLimit, workspace),
+                optimize ? optimizer : null);
     }
 
     // private int solveSubtask(List<PhylogeneticTree> trees, int mink, int
@@ -307,56 +425,289 @@ public class Main {
     // return -1;
     // }
 
-    private PhylogeneticNetwork solveSubtask(List<PhylogeneticTree> trees, int k, long timeLimit, long[] time)
+    /**
+     * @param workspace workspace of the subtask, files for this k are written to its child
+     * @return result with the network if it is SAT
+     */
+    private SolveResult solveSubtask(List<PhylogeneticTree> trees, int k, long timeLimit, Workspace workspace)
             throws IOException {
-        Map<String, Integer> m = new HashMap<>();
         logger.info("Trying to solve problem of size " + trees.get(0).size() + " with " + k + " reticulation nodes");
-        FormulaBuilder builder = new FormulaBuilder(trees, k, m, enableReticulationEdges, disableComments);
-        String cnf = builder.buildCNF();
-        String help = builder.getHelpMap();
-//        System.out.println("help: " + help);
-        logger.info("CNF formula has " + builder.getVariablesCount() + " variables, " + builder.getClausesCount()
-                + " clauses and its length is " + cnf.length() + " characters");
-        try {
-            PrintWriter cnfPrintWriter = new PrintWriter(new File(cnfFilePath));
-            cnfPrintWriter.print(cnf);
-            cnfPrintWriter.close();
-            logger.info("CNF file written to " + cnfFilePath);
-        } catch (FileNotFoundException e) {
-            logger.warning("File " + cnfFilePath + " not found: " + e.getMessage());
+        if (incremental) {
+            return solveIncrementalSubtask(trees, k, timeLimit, workspace);
+        }
+        Workspace job = workspace.child("k" + k);
+        FormulaBuilder builder = createBuilder(trees, k);
+        String cacheKey = null;
+        FormulaCache.Entry cached = null;
+        if (formulaCache != null && !embedded) {
+            cacheKey = FormulaCache.key(builder.describe() + "\nsimplify " + simplify);
+            cached = formulaCache.get(cacheKey);
+        }
+        File cnfFile = null;
+        Simplifier simplifier = null;
+        SolveResult result;
+        if (embedded) {
+            CdclSolver cdcl = new CdclSolver();
+            builder.buildCNF(cdcl);
+            cdcl.ensureVariables(builder.getVariablesCount());
+            logger.info("CNF formula has " + builder.getVariablesCount() + " variables and "
+                    + builder.getClausesCount() + " clauses, it is solved in process");
+            writeVariableMap(builder);
+            result = solveEmbedded(cdcl, new int[0], timeLimit);
+        } else if (cached != null) {
+            cnfFile = cached.getFormulaFile();
+            logger.info("Cached CNF formula " + cnfFile + " is used");
+            if (varMapFilePath != null) {
+                Files.copy(cached.getVariableMapFile().toPath(), new File(perK(varMapFilePath, k)).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                logger.info("Variable map written to " + perK(varMapFilePath, k));
+            }
+            result = solver.solve(cnfFile, timeLimit);
+        } else if (pipe && !simplify && formulaCache == null && solver.size() == 1) {
+            FormulaSizeEstimator estimator = new FormulaSizeEstimator(builder);
+            logger.info("CNF formula has " + estimator.getVariablesCount() + " variables and "
+                    + estimator.getClausesCount() + " clauses, it is piped to the solver while generated");
+            result = solver.solve(builder::buildCNF, Math.toIntExact(estimator.getVariablesCount()),
+                    Math.toIntExact(estimator.getClausesCount()), timeLimit);
+            writeVariableMap(builder);
+        } else {
+            ClauseArena formula = builder.buildCNF();
+            int variablesCount = builder.getVariablesCount();
+            if (simplify) {
+                simplifier = new Simplifier(formula, variablesCount);
+                logger.info("Simplifier fixed " + simplifier.getFixedCount() + " variables and removed "
+                        + simplifier.getRemovedClausesCount() + " of " + formula.size() + " clauses");
+                if (simplifier.isUnsatisfiable()) {
+                    logger.info("NO SOLUTION with k = " + k + " (refuted by unit propagation)");
+                    return SolveResult.of(SolveResult.Status.UNSAT, 0);
+                }
+                formula = simplifier.getFormula();
+                variablesCount = simplifier.getVariablesCount();
+            }
+            if (formulaCache != null) {
+                cached = formulaCache.put(cacheKey, formula, variablesCount, builder.getVariables(), simplifier);
+                cnfFile = cached.getFormulaFile();
+            } else if (!pipe) {
+                cnfFile = cnfFilePath != null ? new File(perK(cnfFilePath, k)) : job.file("cnf");
+                DimacsFileSink cnfSink = new DimacsFileSink(cnfFile);
+                try {
+                    formula.writeTo(cnfSink);
+                    cnfSink.finish(variablesCount);
+                } finally {
+                    cnfSink.close();
+                }
+            }
+            writeVariableMap(builder);
+
+            if (cnfFile != null) {
+                logger.info("CNF formula has " + variablesCount + " variables, " + formula.size()
+                        + " clauses and its length is " + cnfFile.length() + " bytes");
+                logger.info("CNF file written to " + cnfFile);
+                result = solver.solve(cnfFile, timeLimit);
+            } else {
+                logger.info("CNF formula has " + variablesCount + " variables and " + formula.size()
+                        + " clauses, it is piped to the solver");
+                ClauseArena piped = formula;
+                result = solver.solve(piped::writeTo, variablesCount, piped.size(), timeLimit);
+            }
         }
 
-        try {
-            PrintWriter cnfPrintWriter = new PrintWriter(new File("help"));
-            cnfPrintWriter.print(help);
-            cnfPrintWriter.close();
-            logger.info("help file written to " + cnfFilePath);
-        } catch (FileNotFoundException e) {
-            logger.warning("File " + cnfFilePath + " not found: " + e.getMessage());
+        if (!logResult(result, k, timeLimit)) {
+            return result;
         }
+        boolean[] solution = result.getModel();
+        if (cached != null) {
+            solution = cached.lift(solution);
+        } else if (simplifier != null) {
+            solution = simplifier.lift(solution);
+        }
+        StringBuilder hlpbld = new StringBuilder();
+        for (int i = 0; i < solution.length; ++i)
+            if (solution[i])
+                hlpbld.append(i + 1).append(" ");
+        logger.info(hlpbld.toString());
 
-        boolean[] solution = CryptominisatPort.solve(cnf, null, null, timeLimit, time, solverOptions);
+        logger.info("SOLUTION FOUND with k = " + k);
 
-        if (time[0] == -1) {
-            logger.info("TIME LIMIT EXCEEDED (" + timeLimit + ")");
-            return null;
+        Map<String, Integer> variableMap = cached != null ? cached.getVariableMap() : builder.getVariableMap();
+        return result.withModel(solution).withNetwork(NetworkBuilder.gvNetwork(variableMap, solution, trees, k, job));
+    }
+
+    /**
+     * @return true if the result is SAT and its network has to be decoded
+     */
+    private boolean logResult(SolveResult result, int k, long timeLimit) {
+        logger.info("Solver result with k = " + k + ": " + result);
+        switch (result.getStatus()) {
+            case CANCELLED:
+                logger.info("Solving with k = " + k + " is cancelled");
+                return false;
+            case TIMEOUT:
+                logger.info("TIME LIMIT EXCEEDED (" + timeLimit + ")");
+                return false;
+            case ERROR:
+                logger.warning("SOLVER ERROR with k = " + k + ": " + result.getMessage());
+                return false;
+            default:
+                logger.info("Execution time : " + result.getWallTime() + " / " + timeLimit);
         }
-        logger.info("Execution time : " + time[0] + " / " + timeLimit);
-        if (solution == null) {
+        if (result.isUnsat()) {
             logger.info("NO SOLUTION with k = " + k);
-        } else {
-            StringBuilder hlpbld = new StringBuilder();
-            for (int i = 0; i < solution.length; ++i)
-                if (solution[i])
-                    hlpbld.append(i + 1).append(" ");
-            logger.info(hlpbld.toString());
+            return false;
+        }
+        return true;
+    }
+
+    private FormulaBuilder createBuilder(List<PhylogeneticTree> trees, int k) {
+        FormulaBuilder builder = new FormulaBuilder(trees, k, enableReticulationEdges, disableComments);
+        builder.setParallelism(buildThreads);
+        builder.setSymmetryBreaking(symmetryBreaking);
+        if (amoEncodings != null) {
+            builder.setAtMostOneEncodings(amoEncodings);
+        }
+        return builder;
+    }
 
+    private void printEstimates(List<PhylogeneticTree> trees) {
+        int fromK = hn >= 0 ? hn : 0;
+        int toK = hn >= 0 ? hn : 3;
+        for (int k = fromK; k <= toK; k++) {
+            FormulaBuilder builder = createBuilder(trees, incremental ? k + Math.max(incrementalWindow, 0) : k);
+            builder.setIncremental(incremental);
+            FormulaSizeEstimator estimator = new FormulaSizeEstimator(builder);
+            System.out.print("Subtask with " + trees.get(0).getTaxaSize() + " taxa, k = " + builder.getK()
+                    + (incremental ? " (incremental)" : "") + ": " + estimator);
+            logger.info("Formula size for k = " + builder.getK() + ": " + estimator.getVariablesCount()
+                    + " variables, " + estimator.getClausesCount() + " clauses");
+        }
+    }
+
+    private void writeVariableMap(FormulaBuilder builder) throws IOException {
+        if (varMapFilePath != null) {
+            String path = perK(varMapFilePath, builder.getK());
+            VariableMapFile.write(builder.getVariables(), new File(path));
+            logger.info("Variable map written to " + path);
+        }
+    }
+
+    /**
+     * Formulas for several k are solved concurrently with --kJobs, so their files get k as a suffix.
+     */
+    private String perK(String path, int k) {
+        return kJobs > 1 && !incremental && hn < 0 ? path + "." + k : path;
+    }
+
+    private SolveResult solveIncrementalSubtask(List<PhylogeneticTree> trees, int k, long timeLimit,
+                                                Workspace workspace) throws IOException {
+        if (incrementalTrees != trees || incrementalBuilder.getK() < k) {
+            buildIncrementalFormula(trees, k + Math.max(incrementalWindow, 0), workspace);
+        }
+        SolveResult result = solveIncremental(incrementalBuilder.getAssumptions(k), timeLimit);
+
+        if (!logResult(result, k, timeLimit)) {
+            return result;
+        }
+        logger.info("SOLUTION FOUND with k = " + k);
+        return result.withNetwork(NetworkBuilder.gvNetwork(incrementalBuilder.getVariableMap(k), result.getModel(),
+                trees, k, workspace.child("k" + k)));
+    }
+
+    /**
+     * Linear SAT-UNSAT search: the incremental formula is built once for k below the heuristic network,
+     * every SAT answer bounds the number of active reticulation nodes under its own number of them,
+     * so the solver keeps its learnt clauses and only the last call is UNSAT.
+     *
+     * @param key key of the subtask in the journal, null without it
+     */
+    private PhylogeneticNetwork solveOptimizing(List<PhylogeneticTree> trees, int lowerBound,
+                                                PhylogeneticNetwork heuristic, long timeLimit, Workspace workspace,
+                                                String key) throws IOException {
+        buildIncrementalFormula(trees, heuristic.getK() - 1, workspace);
+        PhylogeneticNetwork best = heuristic;
+        while (best.getK() > lowerBound) {
+            int bound = best.getK() - 1;
+            logger.info("Trying to solve problem of size " + trees.get(0).size() + " with at most " + bound
+                    + " reticulation nodes");
+            SolveResult result = subtaskSearch.retryingErrors((maxK, limit) -> solveIncremental(
+                    incrementalBuilder.getBoundAssumptions(maxK), limit), bound, timeLimit);
+            if (!logResult(result, bound, timeLimit)) {
+                if (result.isUnsat() && journal != null) {
+                    journal.recordUnsat(key, bound, result.getWallTime());
+                } else if (!result.isUnsat()) {
+                    logger.warning("k <= " + bound + " is not decided in " + timeLimit
+                            + " ms, the network may be not minimal");
+                }
+                break;
+            }
+            int k = incrementalBuilder.getActiveCount(result.getModel());
             logger.info("SOLUTION FOUND with k = " + k);
+            best = NetworkBuilder.gvNetwork(incrementalBuilder.getVariableMap(k), result.getModel(), trees, k,
+                    workspace.child("k" + k));
+            if (journal != null) {
+                journal.recordSat(key, best, result.getWallTime());
+            }
+        }
+        if (best == heuristic) {
+            logger.info("Using the heuristic network with " + heuristic.getK() + " reticulation nodes");
+        }
+        return best;
+    }
 
-            return NetworkBuilder.gvNetwork(m, solution, trees, k);
+    private void buildIncrementalFormula(List<PhylogeneticTree> trees, int maxK, Workspace workspace)
+            throws IOException {
+        incrementalBuilder = createBuilder(trees, maxK);
+        incrementalBuilder.setIncremental(true);
+        if (embedded) {
+            incrementalSolver = new CdclSolver();
+            incrementalBuilder.buildCNF(incrementalSolver);
+            incrementalSolver.ensureVariables(incrementalBuilder.getVariablesCount());
+        } else {
+            ClauseArena formula = incrementalBuilder.buildCNF();
+            incrementalFile = new IncrementalDimacsFile(
+                    cnfFilePath != null ? new File(cnfFilePath) : workspace.file("incremental.cnf"), formula,
+                    incrementalBuilder.getVariablesCount());
         }
+        incrementalTrees = trees;
+        writeVariableMap(incrementalBuilder);
+        logger.info("Incremental CNF formula for k <= " + maxK + " has " + incrementalBuilder.getVariablesCount()
+                + " variables and " + incrementalBuilder.getClausesCount() + " clauses");
+    }
 
-        return null;
+    private SolveResult solveIncremental(int[] assumptions, long timeLimit) throws IOException {
+        if (embedded) {
+            return solveEmbedded(incrementalSolver, assumptions, timeLimit);
+        }
+        incrementalFile.select(assumptions);
+        logger.info("CNF file written to " + incrementalFile.getFile());
+        return solver.solve(incrementalFile.getFile(), timeLimit);
+    }
+
+    /**
+     * Statistics of the result are of this call only, the solver may have solved other assumptions before.
+     */
+    private SolveResult solveEmbedded(CdclSolver cdcl, int[] assumptions, long timeLimit) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+        long conflicts = cdcl.getConflicts();
+        long decisions = cdcl.getDecisions();
+        long propagations = cdcl.getPropagations();
+        long start = System.currentTimeMillis();
+        cdcl.setTimeLimit(timeLimit);
+        CdclSolver.Status status = cdcl.solve(assumptions);
+        long time = System.currentTimeMillis() - start;
+        long cpuTime = cpuStart >= 0 ? (threads.getCurrentThreadCpuTime() - cpuStart) / 1_000_000 : -1;
+
+        SolveResult.Status resultStatus;
+        if (status == CdclSolver.Status.SATISFIABLE) {
+            resultStatus = SolveResult.Status.SAT;
+        } else if (status == CdclSolver.Status.UNSATISFIABLE) {
+            resultStatus = SolveResult.Status.UNSAT;
+        } else {
+            resultStatus = Thread.currentThread().isInterrupted()
+                    ? SolveResult.Status.CANCELLED : SolveResult.Status.TIMEOUT;
+        }
+        return new SolveResult(resultStatus, cdcl.getModel(), time, cpuTime, cdcl.getConflicts() - conflicts,
+                cdcl.getDecisions() - decisions, cdcl.getPropagations() - propagations, null);
     }
 
     private List<PhylogeneticTree> normalize(List<PhylogeneticTree> inputTrees) {
@@ -553,11 +904,22 @@ public class Main {
 
     public int run(String[] args) {
         try {
-            return launcher(args);
+            int result = launcher(args);
+            if (workspace != null) {
+                workspace.setSucceeded(result >= 0);
+            }
+            return result;
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         } finally {
+            if (workspace != null) {
+                try {
+                    workspace.close();
+                } catch (IOException e) {
+                    System.err.println("Can't clean up workspace " + workspace + ": " + e.getMessage());
+                }
+            }
             if (this.loggerHandler != null) {
                 this.logger.removeHandler(loggerHandler);
                 loggerHandler.close();
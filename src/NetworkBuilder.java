@@ -1,4 +1,4 @@
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -62,9 +62,13 @@ public class NetworkBuilder {
                 .collect(Collectors.joining()) + " = " + value;
     }
 
-    public static PhylogeneticNetwork gvNetwork(Map<String, Integer> m, boolean[] solution, List<PhylogeneticTree> trees, int k) {
+    /**
+     * @param workspace gets decoded values of the solution as "sat.solution"
+     */
+    public static PhylogeneticNetwork gvNetwork(Map<String, Integer> m, boolean[] solution, List<PhylogeneticTree> trees,
+                                                int k, Workspace workspace) {
         try {
-            PrintWriter pw = new PrintWriter("sat.solution");
+            PrintWriter pw = new PrintWriter(workspace.output("sat.solution"));
             m.forEach((s, i) -> {
                 if (s.startsWith("left_")) {
                     boolean value = solution[i - 1];
@@ -118,7 +122,7 @@ public class NetworkBuilder {
                 }
             });
             pw.close();
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
 
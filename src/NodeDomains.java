@@ -0,0 +1,199 @@
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Possible children, parents and up-nodes of every network node, computed once per formula.
+ *
+ * Nodes are numbered as in {@link FormulaBuilder}: leaves are [0, leavesCount), tree nodes are
+ * [leavesCount, treeNodesCount) with the root at treeNodesCount - 1, and reticulation nodes are
+ * [treeNodesCount, treeNodesCount + k). All arrays are sorted ascending and shared, callers must
+ * not modify them.
+ */
+class NodeDomains {
+    private final int leavesCount;
+
+    private final int treeNodesCount;
+
+    private final int k;
+
+    private final int[] allNodes;
+
+    private final int[] treeNodes;
+
+    private final int[] reticulationNodes;
+
+    private final int[][] children;
+
+    private final int[][] parents;
+
+    private final int[][] up;
+
+    private final BitSet[] childrenSets;
+
+    private final BitSet[] parentsSets;
+
+    NodeDomains(int leavesCount, int treeNodesCount, int k, boolean enableReticulationConnection) {
+        this.leavesCount = leavesCount;
+        this.treeNodesCount = treeNodesCount;
+        this.k = k;
+        int nodesCount = treeNodesCount + k;
+
+        allNodes = range(0, nodesCount);
+        treeNodes = range(leavesCount, treeNodesCount);
+        reticulationNodes = range(treeNodesCount, nodesCount);
+
+        children = new int[nodesCount][];
+        parents = new int[nodesCount][];
+        up = new int[nodesCount][];
+        childrenSets = new BitSet[nodesCount];
+        parentsSets = new BitSet[nodesCount];
+        int[] buffer = new int[nodesCount + 1];
+        for (int v = 0; v < nodesCount; v++) {
+            int size = 0;
+            if (v >= leavesCount) {
+                for (int u = 0; u < nodesCount; u++) {
+                    if (v < treeNodesCount) {
+                        if (u < v || u >= treeNodesCount) {
+                            buffer[size++] = u;
+                        }
+                    } else if (u < treeNodesCount - 1 || (enableReticulationConnection && u < v)) {
+                        buffer[size++] = u;
+                    }
+                }
+            }
+            children[v] = copy(buffer, size);
+            childrenSets[v] = toBitSet(children[v]);
+
+            size = 0;
+            if (v != treeNodesCount - 1) {
+                for (int u = leavesCount; u < nodesCount; u++) {
+                    if (v < leavesCount) {
+                        buffer[size++] = u;
+                    } else if (v < treeNodesCount) {
+                        if (v < u) {
+                            buffer[size++] = u;
+                        }
+                    } else if (u < treeNodesCount) {
+                        buffer[size++] = u;
+                    }
+                }
+                if (enableReticulationConnection && v >= treeNodesCount) {
+                    buffer[size++] = v + 1;
+                }
+            }
+            parents[v] = copy(buffer, size);
+            parentsSets[v] = toBitSet(parents[v]);
+
+            size = 0;
+            for (int u : parents[v]) {
+                if (u < treeNodesCount) {
+                    buffer[size++] = u;
+                }
+            }
+            up[v] = copy(buffer, size);
+        }
+    }
+
+    int[] allNodes() {
+        return allNodes;
+    }
+
+    int[] treeNodes() {
+        return treeNodes;
+    }
+
+    int[] reticulationNodes() {
+        return reticulationNodes;
+    }
+
+    boolean isTreeNode(int v) {
+        return v >= leavesCount && v < treeNodesCount;
+    }
+
+    boolean isReticulation(int v) {
+        return v >= treeNodesCount && v < treeNodesCount + k;
+    }
+
+    int[] children(int v) {
+        check(v);
+        return children[v];
+    }
+
+    int[] parents(int v) {
+        check(v);
+        return parents[v];
+    }
+
+    /**
+     * @return possible parents of v which are tree nodes
+     */
+    int[] up(int v) {
+        check(v);
+        return up[v];
+    }
+
+    boolean isChild(int v, int u) {
+        check(v);
+        return u >= 0 && childrenSets[v].get(u);
+    }
+
+    boolean isParent(int v, int u) {
+        check(v);
+        return u >= 0 && parentsSets[v].get(u);
+    }
+
+    /**
+     * @return read-only list view of a domain, for code which works with collections
+     */
+    static List<Integer> asList(int[] domain) {
+        return new IntArrayList(domain);
+    }
+
+    private void check(int v) {
+        if (v < 0 || v >= treeNodesCount + k) {
+            throw new RuntimeException("Node number out of bounds: " + v);
+        }
+    }
+
+    static int[] range(int from, int to) {
+        int[] ans = new int[Math.max(to - from, 0)];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = from + i;
+        }
+        return ans;
+    }
+
+    private static int[] copy(int[] buffer, int size) {
+        int[] ans = new int[size];
+        System.arraycopy(buffer, 0, ans, 0, size);
+        return ans;
+    }
+
+    private static BitSet toBitSet(int[] domain) {
+        BitSet set = new BitSet();
+        for (int u : domain) {
+            set.set(u);
+        }
+        return set;
+    }
+
+    private static class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+        private final int[] values;
+
+        IntArrayList(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
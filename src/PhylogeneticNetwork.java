@@ -1,3 +1,6 @@
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.*;
 
 
@@ -81,6 +84,127 @@ public class PhylogeneticNetwork {
         return false;
     }
 
+    /**
+     * Tries all 2^k ways to keep one incoming edge of every reticulation node, so it is meant for small k.
+     *
+     * @return whether the network displays the tree, its fictitious root is ignored
+     */
+    public boolean displays(PhylogeneticTree tree) {
+        Set<Set<String>> clusters = new HashSet<>();
+        for (int v = 0; v < tree.size(); v++) {
+            Set<String> cluster = new HashSet<>();
+            for (int leaf : tree.getTaxa(v)) {
+                if (!tree.getLabel(leaf).isEmpty()) {
+                    cluster.add(tree.getLabel(leaf));
+                }
+            }
+            if (!cluster.isEmpty()) {
+                clusters.add(cluster);
+            }
+        }
+        List<List<Integer>> parents = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            parents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int child : nodes.get(i).children) {
+                parents.get(child).add(i);
+            }
+        }
+        List<Integer> reticulations = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (parents.get(i).size() > 1) {
+                reticulations.add(i);
+            }
+        }
+        int[] removedParent = new int[nodes.size()];
+        Arrays.fill(removedParent, -1);
+        for (long mask = 0; mask < 1L << reticulations.size(); mask++) {
+            for (int i = 0; i < reticulations.size(); i++) {
+                int reticulation = reticulations.get(i);
+                removedParent[reticulation] = parents.get(reticulation).get((int) (mask >> i & 1));
+            }
+            Set<Set<String>> displayed = new HashSet<>();
+            collectClusters(root, removedParent, displayed);
+            if (displayed.equals(clusters)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> collectClusters(int nodeNum, int[] removedParent, Set<Set<String>> clusters) {
+        Set<String> cluster = new HashSet<>();
+        PhylogeneticNode node = nodes.get(nodeNum);
+        if (node.label != null) {
+            cluster.add(node.label);
+        }
+        for (int child : node.children) {
+            if (removedParent[child] != nodeNum) {
+                cluster.addAll(collectClusters(child, removedParent, clusters));
+            }
+        }
+        if (!cluster.isEmpty()) {
+            clusters.add(cluster);
+        }
+        return cluster;
+    }
+
+    /**
+     * Only a network which is not merged with other subtasks can be written, its root is
+     * the node before reticulation ones.
+     *
+     * @return one line without spaces which {@link #parse(String)} turns back into the network
+     */
+    public String serialize() {
+        if (root != nodes.size() - k - 1) {
+            throw new IllegalStateException("Network merged with subtasks can not be serialized");
+        }
+        StringBuilder sb = new StringBuilder().append(k);
+        for (PhylogeneticNode node : nodes) {
+            sb.append(';').append(node.label == null ? "!" : encodeLabel(node.label));
+            for (int child : node.children) {
+                sb.append(',').append(child);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static PhylogeneticNetwork parse(String line) {
+        String[] parts = line.split(";", -1);
+        List<List<Integer>> graph = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] items = parts[i].split(",", -1);
+            labels.add(items[0].equals("!") ? null : decodeLabel(items[0]));
+            List<Integer> children = new ArrayList<>();
+            for (int j = 1; j < items.length; j++) {
+                children.add(Integer.parseInt(items[j]));
+            }
+            graph.add(children);
+        }
+        return new PhylogeneticNetwork(graph, labels, Integer.parseInt(parts[0]));
+    }
+
+    /**
+     * @return label without spaces, commas and semicolons
+     */
+    static String encodeLabel(String label) {
+        try {
+            return URLEncoder.encode(label, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String decodeLabel(String encoded) {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public String toGVString() {
         String ans = "graph G {\n";
         ans += "  node [shape=circle width=0.3 fixedsize=true height=0.3];\n";
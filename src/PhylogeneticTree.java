@@ -34,6 +34,9 @@ public class PhylogeneticTree {
 
     private boolean fictitiousRoot;
 
+    // node -> taxa of its subtree, built on demand and dropped when the tree is changed
+    private BitSet[] clusters;
+
     private PhylogeneticTree() {
         this.nodes = new ArrayList<>();
         fictitiousRoot = false;
@@ -71,26 +74,46 @@ public class PhylogeneticTree {
             nodes.add(newNode);
         }
 
+        // internal nodes are numbered by height, nodes of one height by their smallest taxon, so numbers
+        // depend neither on the order of children in Newick nor on the hash order of jebl nodes
+        Map<Node, Integer> minTaxon = new HashMap<>();
+        for (Map.Entry<Node, Integer> entry : m.entrySet()) {
+            minTaxon.put(entry.getKey(), entry.getValue());
+        }
         while (nodes.size() < treeSize) {
+            List<Node> ready = new ArrayList<>();
             for (Node node : tree.getNodes()) {
                 if (m.containsKey(node)) {
                     continue;
                 }
-                PhylogeneticNode newNode = new PhylogeneticNode(-1, new ArrayList<Integer>(), null);
-
-                boolean canAddToNodes = true;
+                int min = Integer.MAX_VALUE;
                 for (Node child : tree.getChildren(node)) {
                     if (!m.containsKey(child)) {
-                        canAddToNodes = false;
+                        min = -1;
                         break;
                     }
-                    newNode.children.add(m.get(child));
+                    min = Math.min(min, minTaxon.get(child));
+                }
+                if (min != -1) {
+                    minTaxon.put(node, min);
+                    ready.add(node);
                 }
+            }
+            Collections.sort(ready, new Comparator<Node>() {
+                @Override
+                public int compare(Node o1, Node o2) {
+                    return Integer.compare(minTaxon.get(o1), minTaxon.get(o2));
+                }
+            });
 
-                if (canAddToNodes) {
-                    m.put(node, nodes.size());
-                    nodes.add(newNode);
+            for (Node node : ready) {
+                PhylogeneticNode newNode = new PhylogeneticNode(-1, new ArrayList<Integer>(), null);
+                for (Node child : tree.getChildren(node)) {
+                    newNode.children.add(m.get(child));
                 }
+                Collections.sort(newNode.children);
+                m.put(node, nodes.size());
+                nodes.add(newNode);
             }
         }
 
@@ -108,6 +131,7 @@ public class PhylogeneticTree {
         }
 
         fictitiousRoot = true;
+        clusters = null;
 
         int taxaSize = getTaxaSize();
         for (PhylogeneticNode node : nodes) {
@@ -138,6 +162,7 @@ public class PhylogeneticTree {
         }
 
         fictitiousRoot = false;
+        clusters = null;
 
         int fictitiousTaxaNum = getTaxaSize() - 1;
         nodes.remove(fictitiousTaxaNum);
@@ -267,6 +292,26 @@ public class PhylogeneticTree {
         return ans;
     }
 
+    /**
+     * @return the same taxa as {@link #getTaxa(int)} as a bit set, it is cached and must not be modified
+     */
+    public BitSet getCluster(int nodeNum) {
+        if (clusters == null) {
+            clusters = new BitSet[size()];
+        }
+        if (clusters[nodeNum] == null) {
+            BitSet cluster = new BitSet(getTaxaSize());
+            if (isLeaf(nodeNum)) {
+                cluster.set(nodeNum);
+            }
+            for (int childNum : getChildren(nodeNum)) {
+                cluster.or(getCluster(childNum));
+            }
+            clusters[nodeNum] = cluster;
+        }
+        return clusters[nodeNum];
+    }
+
     public int getTaxaSize() {
         return this.size() / 2 + 1;
     }
@@ -276,16 +321,7 @@ public class PhylogeneticTree {
     }
 
     public static boolean isTaxaEquals(PhylogeneticTree t1, int n1, PhylogeneticTree t2, int n2) {
-        List<Integer> taxa1 = t1.getTaxa(n1), taxa2 = t2.getTaxa(n2);
-        if (taxa1.size() != taxa2.size()) {
-            return false;
-        }
-        for (int taxon1 : taxa1) {
-            if (!taxa2.contains(taxon1)) {
-                return false;
-            }
-        }
-        return true;
+        return t1.getCluster(n1).equals(t2.getCluster(n2));
     }
 
     public static boolean isSubtreesEquals(PhylogeneticTree t1, int n1, PhylogeneticTree t2, int n2) {
@@ -0,0 +1,218 @@
+import cnf.FormulaCache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Append-only text journal of k-searches, so a search interrupted by a crash or preemption is resumed
+ * without proving known answers again.
+ *
+ * A subtask is keyed by a hash of its normalized trees. Every line is one fact about it, written and
+ * flushed as soon as it is known:
+ * <pre>
+ * unsat &lt;key&gt; &lt;k&gt; &lt;ms&gt;          there is no network with k reticulation nodes, nor with fewer
+ * sat &lt;key&gt; &lt;k&gt; &lt;ms&gt; &lt;network&gt;  network found by the solver
+ * solved &lt;key&gt; &lt;k&gt; &lt;network&gt;     final network of the subtask
+ * </pre>
+ * Networks are written by {@link PhylogeneticNetwork#serialize()}. A line which does not parse,
+ * e.g. the last one cut by a crash, is skipped.
+ */
+public class SearchJournal {
+    private static final String HEADER = "# PhyloSAT search journal 1";
+
+    public static class Entry {
+        private int maxUnsat = -1;
+
+        private long unsatTime = 0;
+
+        private String best = null;
+
+        private int bestK = Integer.MAX_VALUE;
+
+        private String solved = null;
+
+        /**
+         * @return the largest k without a network, -1 if none is known
+         */
+        public int getMaxUnsat() {
+            return maxUnsat;
+        }
+
+        /**
+         * @return summed time of the UNSAT calls, milliseconds
+         */
+        public long getUnsatTime() {
+            return unsatTime;
+        }
+
+        /**
+         * @return new copy of the network with the fewest reticulation nodes found, null if none
+         */
+        public PhylogeneticNetwork getBest() {
+            return best != null ? PhylogeneticNetwork.parse(best) : null;
+        }
+
+        /**
+         * @return new copy of the final network, null if the subtask is not solved
+         */
+        public PhylogeneticNetwork getSolved() {
+            return solved != null ? PhylogeneticNetwork.parse(solved) : null;
+        }
+    }
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private int skippedLines = 0;
+
+    /**
+     * @param resume whether facts of the existing file are read and appended to, otherwise it is started anew
+     */
+    public SearchJournal(File file, boolean resume) throws IOException {
+        this.file = file;
+        if (resume && file.exists()) {
+            String[] lines = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("\n", -1);
+            for (int i = 0; i < lines.length - 1; i++) {
+                if (!lines[i].isEmpty() && !lines[i].startsWith("#") && !apply(lines[i])) {
+                    skippedLines++;
+                }
+            }
+            // the last line is not finished, the next fact starts on a new one
+            if (!lines[lines.length - 1].isEmpty()) {
+                skippedLines++;
+                write("\n");
+            }
+        } else {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(HEADER + "\n");
+            }
+        }
+    }
+
+    /**
+     * Trees are described by their sorted canonical Newick strings, so the key does not depend on the
+     * order of trees. Only reticulation-reticulation edges change the answer, other options change
+     * the formula only.
+     */
+    public static String key(List<PhylogeneticTree> trees, boolean reticulationEdges) {
+        List<String> canonical = new ArrayList<>();
+        for (PhylogeneticTree tree : trees) {
+            int root = 0;
+            while (tree.getParent(root) != -1) {
+                root = tree.getParent(root);
+            }
+            canonical.add(canonical(tree, root));
+        }
+        Collections.sort(canonical);
+        return FormulaCache.key("journal\nreticulation edges " + reticulationEdges + "\n"
+                + String.join("\n", canonical));
+    }
+
+    private static String canonical(PhylogeneticTree tree, int node) {
+        if (tree.isLeaf(node)) {
+            return PhylogeneticNetwork.encodeLabel(tree.getLabel(node));
+        }
+        List<String> children = new ArrayList<>();
+        for (int child : tree.getChildren(node)) {
+            children.add(canonical(tree, child));
+        }
+        Collections.sort(children);
+        return "(" + String.join(",", children) + ")";
+    }
+
+    /**
+     * @return facts of the subtask, null if there are none
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    public synchronized void recordUnsat(String key, int k, long time) throws IOException {
+        append("unsat " + key + " " + k + " " + time);
+    }
+
+    public synchronized void recordSat(String key, PhylogeneticNetwork network, long time) throws IOException {
+        append("sat " + key + " " + network.getK() + " " + time + " " + network.serialize());
+    }
+
+    public synchronized void recordSolved(String key, PhylogeneticNetwork network) throws IOException {
+        append("solved " + key + " " + network.getK() + " " + network.serialize());
+    }
+
+    /**
+     * @return solver which records its SAT and UNSAT answers for the subtask
+     */
+    public KSearchScheduler.Solver recording(String key, KSearchScheduler.Solver solver) {
+        return (k, timeLimit) -> {
+            SolveResult result = solver.solve(k, timeLimit);
+            if (result.isUnsat()) {
+                recordUnsat(key, k, result.getWallTime());
+            } else if (result.isSat()) {
+                recordSat(key, result.getNetwork(), result.getWallTime());
+            }
+            return result;
+        };
+    }
+
+    private void append(String line) throws IOException {
+        write(line + "\n");
+        apply(line);
+    }
+
+    private void write(String text) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+    }
+
+    /**
+     * @return false if the line is not a fact
+     */
+    private boolean apply(String line) {
+        String[] parts = line.split(" ");
+        try {
+            int k = Integer.parseInt(parts[2]);
+            switch (parts[0]) {
+                case "unsat": {
+                    long time = Long.parseLong(parts[3]);
+                    Entry entry = entry(parts[1]);
+                    entry.maxUnsat = Math.max(entry.maxUnsat, k);
+                    entry.unsatTime += time;
+                    return true;
+                }
+                case "sat": {
+                    PhylogeneticNetwork.parse(parts[4]);
+                    Entry entry = entry(parts[1]);
+                    if (k < entry.bestK) {
+                        entry.best = parts[4];
+                        entry.bestK = k;
+                    }
+                    return true;
+                }
+                case "solved":
+                    PhylogeneticNetwork.parse(parts[3]);
+                    entry(parts[1]).solved = parts[3];
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private Entry entry(String key) {
+        return entries.computeIfAbsent(key, k -> new Entry());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Outcome of one solver call: status, model, times and the solver's own statistics.
+ *
+ * Only SAT and UNSAT are answers about the formula. TIMEOUT may turn into one with a larger
+ * time limit, ERROR means the solver failed and retrying the same call is unlikely to help,
+ * CANCELLED means the answer is not needed anymore. Statistics unknown for the solver are -1.
+ */
+public class SolveResult {
+    public enum Status {
+        SAT, UNSAT, TIMEOUT, ERROR, CANCELLED
+    }
+
+    private final Status status;
+
+    private final boolean[] model;
+
+    private final long wallTime;
+
+    private final long cpuTime;
+
+    private final long conflicts;
+
+    private final long decisions;
+
+    private final long propagations;
+
+    private final String message;
+
+    private final PhylogeneticNetwork network;
+
+    /**
+     * @param model    values of variables, given for SAT only
+     * @param wallTime milliseconds
+     * @param cpuTime  milliseconds of the solver process, -1 if unknown
+     * @param message  solver output explaining an ERROR, may be null
+     */
+    public SolveResult(Status status, boolean[] model, long wallTime, long cpuTime,
+                       long conflicts, long decisions, long propagations, String message) {
+        this(status, model, wallTime, cpuTime, conflicts, decisions, propagations, message, null);
+    }
+
+    private SolveResult(Status status, boolean[] model, long wallTime, long cpuTime,
+                        long conflicts, long decisions, long propagations, String message,
+                        PhylogeneticNetwork network) {
+        if (status == Status.SAT && model == null) {
+            throw new IllegalArgumentException("SAT result needs a model");
+        }
+        this.status = status;
+        this.model = status == Status.SAT ? model : null;
+        this.wallTime = wallTime;
+        this.cpuTime = cpuTime;
+        this.conflicts = conflicts;
+        this.decisions = decisions;
+        this.propagations = propagations;
+        this.message = message;
+        this.network = network;
+    }
+
+    public static SolveResult of(Status status, long wallTime) {
+        return new SolveResult(status, null, wallTime, -1, -1, -1, -1, null);
+    }
+
+    /**
+     * @return the same result with the model replaced, e.g. lifted back to variables of the original formula
+     */
+    public SolveResult withModel(boolean[] model) {
+        return new SolveResult(status, model, wallTime, cpuTime, conflicts, decisions, propagations, message,
+                network);
+    }
+
+    /**
+     * @return the same result with the network decoded from its model
+     */
+    public SolveResult withNetwork(PhylogeneticNetwork network) {
+        return new SolveResult(status, model, wallTime, cpuTime, conflicts, decisions, propagations, message,
+                network);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSat() {
+        return status == Status.SAT;
+    }
+
+    public boolean isUnsat() {
+        return status == Status.UNSAT;
+    }
+
+    /**
+     * @return true for SAT and UNSAT
+     */
+    public boolean isDefinitive() {
+        return status == Status.SAT || status == Status.UNSAT;
+    }
+
+    public boolean[] getModel() {
+        return model;
+    }
+
+    public PhylogeneticNetwork getNetwork() {
+        return network;
+    }
+
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    public long getPropagations() {
+        return propagations;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(status + " in " + wallTime + " ms");
+        if (cpuTime >= 0) {
+            sb.append(", cpu ").append(cpuTime).append(" ms");
+        }
+        if (conflicts >= 0) {
+            sb.append(", ").append(conflicts).append(" conflicts");
+        }
+        if (decisions >= 0) {
+            sb.append(", ").append(decisions).append(" decisions");
+        }
+        if (propagations >= 0) {
+            sb.append(", ").append(propagations).append(" propagations");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,160 @@
+import cnf.ClauseSink;
+import org.apache.commons.exec.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Runs several solver configurations concurrently on the same formula, e.g. different solvers,
+ * seeds or thread counts. The first definitive SAT or UNSAT answer wins and the other solvers are killed.
+ *
+ * Wins of every configuration are counted and logged after each race, so configurations
+ * which never win can be dropped from the portfolio. A portfolio of one configuration runs
+ * it exactly as {@link CryptominisatPort} does. Races may run concurrently, e.g. for several k.
+ */
+public class SolverPortfolio {
+    private final List<String> configurations;
+
+    private final Logger logger;
+
+    private final int[] wins;
+
+    private final long[] winTimes;
+
+    private int races = 0;
+
+    public SolverPortfolio(List<String> configurations, Logger logger) {
+        if (configurations.isEmpty()) {
+            throw new IllegalArgumentException("Portfolio has no solver configurations");
+        }
+        this.configurations = new ArrayList<>(configurations);
+        this.logger = logger;
+        this.wins = new int[configurations.size()];
+        this.winTimes = new long[configurations.size()];
+    }
+
+    /**
+     * @param spec solver commands with options separated by semicolons,
+     *             e.g. "cryptominisat --threads=4;cryptominisat --random=7;kissat"
+     */
+    public static SolverPortfolio parse(String spec, Logger logger) {
+        List<String> configurations = new ArrayList<>();
+        for (String configuration : spec.split(";")) {
+            if (!configuration.trim().isEmpty()) {
+                configurations.add(configuration.trim());
+            }
+        }
+        return new SolverPortfolio(configurations, logger);
+    }
+
+    public int size() {
+        return configurations.size();
+    }
+
+    public SolveResult solve(File CNFFile, long timeLimit) throws IOException {
+        if (size() == 1) {
+            return CryptominisatPort.solve(CNFFile, null, timeLimit, configurations.get(0));
+        }
+        return race(configuration -> CryptominisatPort.fileCommandLine(configuration, CNFFile), null, timeLimit);
+    }
+
+    /**
+     * Feeds the formula to standard input of every solver, see
+     * {@link CryptominisatPort#solve(Consumer, int, int, java.io.PrintWriter, long, String)}.
+     *
+     * @param formula generates clauses into the given sink, it is called once for every configuration
+     */
+    public SolveResult solve(Consumer<ClauseSink> formula, int variablesCount, int clausesCount, long timeLimit)
+            throws IOException {
+        if (size() == 1) {
+            return CryptominisatPort.solve(formula, variablesCount, clausesCount, null, timeLimit,
+                    configurations.get(0));
+        }
+        return race(CommandLine::parse, CryptominisatPort.dimacsInput(formula, variablesCount, clausesCount),
+                timeLimit);
+    }
+
+    /**
+     * @return wins and total solving time of winning runs for every configuration
+     */
+    public synchronized String getStatistics() {
+        StringBuilder sb = new StringBuilder("portfolio wins in " + races + " races:");
+        for (int i = 0; i < size(); i++) {
+            sb.append(String.format("%n  %d wins, %d ms: %s", wins[i], winTimes[i], configurations.get(i)));
+        }
+        return sb.toString();
+    }
+
+    private SolveResult race(Function<String, CommandLine> commandLines, CryptominisatPort.Input input,
+                             long timeLimit) throws IOException {
+        BlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+        CryptominisatPort.Run[] runs = new CryptominisatPort.Run[size()];
+        boolean[] started = new boolean[size()];
+        int winner = -1;
+        try {
+            for (int i = 0; i < size(); i++) {
+                int run = i;
+                runs[i] = new CryptominisatPort.Run(commandLines.apply(configurations.get(i)), input, null,
+                        timeLimit, () -> finished.add(run));
+                runs[i].start();
+                started[i] = true;
+            }
+            for (int done = 0; done < size() && winner < 0; done++) {
+                int run = finished.take();
+                SolveResult result = runs[run].waitFor();
+                if (result.isDefinitive()) {
+                    winner = run;
+                } else if (result.getStatus() == SolveResult.Status.ERROR) {
+                    logger.warning("Solver " + configurations.get(run) + " failed: " + result.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < size(); i++) {
+                if (started[i] && i != winner && !runs[i].isDone()) {
+                    runs[i].cancel();
+                }
+            }
+            for (int i = 0; i < size(); i++) {
+                if (started[i] && i != winner) {
+                    runs[i].waitFor();
+                }
+            }
+        }
+
+        return finish(runs, started, winner);
+    }
+
+    /**
+     * Without a winner the result is the most hopeful of the others: a timeout, which may be decided
+     * with a larger limit, then cancellation and an error only if every solver failed.
+     */
+    private synchronized SolveResult finish(CryptominisatPort.Run[] runs, boolean[] started, int winner) {
+        races++;
+        if (winner < 0) {
+            logger.info("No definitive answer from the portfolio, " + getStatistics());
+            for (SolveResult.Status status : new SolveResult.Status[]{
+                    SolveResult.Status.TIMEOUT, SolveResult.Status.CANCELLED, SolveResult.Status.ERROR}) {
+                for (int i = 0; i < runs.length; i++) {
+                    if (started[i] && runs[i].waitFor().getStatus() == status) {
+                        return runs[i].waitFor();
+                    }
+                }
+            }
+            return SolveResult.of(SolveResult.Status.CANCELLED, 0);
+        }
+        SolveResult result = runs[winner].waitFor();
+        wins[winner]++;
+        winTimes[winner] += result.getWallTime();
+        logger.info("Solver " + configurations.get(winner) + " won: " + result + ", " + getStatistics());
+        return result;
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Search for a network with the minimal hybridization number of one subtask, shared by the entry points
+ * which differ only in how a formula for k is built and solved.
+ *
+ * Networks with fewer reticulation nodes than the heuristic one are searched for above the agreement
+ * forest lower bound. With a journal a solved subtask is restored from it, proven UNSAT k raise the lower
+ * bound and the best network found replaces the heuristic one; answers of the solver are recorded.
+ * The k-search is sequential, see {@link KSearch}, or runs several k at once, see {@link KSearchScheduler}.
+ */
+public class SubtaskSearch {
+    private static final int CHECK_FIRST = 3;
+
+    private static final long FIRST_TIME_LIMIT = 1000; // timelimit is 1 second due to paper
+
+    public static final long MAX_TIME_LIMIT = 1000_000; // 1000 seconds? Too small? FIXME
+
+    /**
+     * Search between the bounds used instead of the k-search, e.g. in one incremental formula.
+     */
+    public interface Optimizer {
+        /**
+         * @param key key of the subtask in the journal, null without it
+         * @return network with the minimal k found, the heuristic one if none is better
+         */
+        PhylogeneticNetwork search(int lowerBound, PhylogeneticNetwork heuristic, long timeLimit, String key)
+                throws IOException;
+    }
+
+    private final Logger logger;
+
+    private final int lowerBoundSteps;
+
+    private final KSearchStrategy strategy;
+
+    private final SearchJournal journal;
+
+    private final boolean reticulationEdges;
+
+    private int jobs = 1;
+
+    /**
+     * @param lowerBoundSteps   branching steps of {@link AgreementForestBound}, 0 disables the lower bound
+     * @param strategy          strategy of the sequential search, null to choose it per subtask
+     * @param journal           journal of the search, null without it
+     * @param reticulationEdges whether reticulation-reticulation edges are allowed, it is a part of the journal key
+     */
+    public SubtaskSearch(Logger logger, int lowerBoundSteps, KSearchStrategy strategy, SearchJournal journal,
+                         boolean reticulationEdges) {
+        this.logger = logger;
+        this.lowerBoundSteps = lowerBoundSteps;
+        this.strategy = strategy;
+        this.journal = journal;
+        this.reticulationEdges = reticulationEdges;
+    }
+
+    /**
+     * @param jobs number of k solved concurrently, the solver must allow it if it is more than one
+     */
+    public void setJobs(int jobs) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Number of jobs must be positive: " + jobs);
+        }
+        this.jobs = jobs;
+    }
+
+    public PhylogeneticNetwork solve(List<PhylogeneticTree> trees, KSearchScheduler.Solver solver)
+            throws IOException {
+        return solve(trees, solver, null);
+    }
+
+    /**
+     * @param solver    solver of the formula for k, its errors are retried here
+     * @param optimizer search used instead of the k-search, null for the k-search
+     * @return network with the minimal k found
+     */
+    public PhylogeneticNetwork solve(List<PhylogeneticTree> trees, KSearchScheduler.Solver solver,
+                                     Optimizer optimizer) throws IOException {
+        if (journal == null) {
+            return search(trees, solver, optimizer, null, null);
+        }
+        String key = SearchJournal.key(trees, reticulationEdges);
+        SearchJournal.Entry entry = journal.get(key);
+        if (entry != null && entry.getSolved() != null) {
+            PhylogeneticNetwork network = entry.getSolved();
+            logger.info("Subtask is restored from the journal with " + network.getK() + " reticulation nodes");
+            return network;
+        }
+        PhylogeneticNetwork network = search(trees, solver, optimizer, key, entry);
+        journal.recordSolved(key, network);
+        return network;
+    }
+
+    /**
+     * @param key   key of the subtask in the journal, null without it
+     * @param entry facts of the subtask from the journal, null if there are none
+     */
+    private PhylogeneticNetwork search(List<PhylogeneticTree> trees, KSearchScheduler.Solver solver,
+                                       Optimizer optimizer, String key, SearchJournal.Entry entry)
+            throws IOException {
+        int lowerBound = calcLowerBound(trees);
+        PhylogeneticNetwork heuristic = buildHeuristicNetwork(trees);
+        if (entry != null) {
+            if (entry.getMaxUnsat() >= lowerBound) {
+                lowerBound = entry.getMaxUnsat() + 1;
+                logger.info("Journal proves k < " + lowerBound + " UNSAT in " + entry.getUnsatTime() + " ms");
+            }
+            PhylogeneticNetwork best = entry.getBest();
+            if (best != null && best.getK() < heuristic.getK()) {
+                logger.info("Network with " + best.getK() + " reticulation nodes is restored from the journal, "
+                        + "it replaces the heuristic one");
+                heuristic = best;
+            }
+        }
+        if (heuristic.getK() <= lowerBound) {
+            logger.info("Heuristic network meets the lower bound");
+            return heuristic;
+        }
+
+        if (optimizer != null) {
+            return optimizer.search(lowerBound, heuristic, MAX_TIME_LIMIT, key);
+        }
+
+        if (jobs > 1) {
+            KSearchScheduler scheduler = new KSearchScheduler(recording(key, solver), jobs, logger);
+            PhylogeneticNetwork network = scheduler.search(lowerBound, heuristic.getK() - 1, FIRST_TIME_LIMIT,
+                    MAX_TIME_LIMIT);
+            if (network == null && !scheduler.isMinimal()) {
+                logger.warning("The network with " + heuristic.getK() + " reticulation nodes may be not minimal");
+            }
+            return network != null ? network : heuristic;
+        }
+
+        KSearchMemo memo = new KSearch(recording(key, (k, timeLimit) -> retryingErrors(solver, k, timeLimit)), logger)
+                .search(strategy, lowerBound, heuristic, CHECK_FIRST, FIRST_TIME_LIMIT, MAX_TIME_LIMIT);
+        if (memo.isUpperBest()) {
+            logger.info("Using the heuristic network with " + heuristic.getK() + " reticulation nodes");
+        }
+        return memo.getBest();
+    }
+
+    /**
+     * A solver error is retried once, a second one fails the subtask instead of being taken for UNSAT.
+     */
+    public SolveResult retryingErrors(KSearchScheduler.Solver solver, int k, long timeLimit) throws IOException {
+        SolveResult result = solver.solve(k, timeLimit);
+        if (result.getStatus() == SolveResult.Status.ERROR) {
+            logger.warning("Solver failed with k = " + k + ", retrying");
+            result = solver.solve(k, timeLimit);
+            if (result.getStatus() == SolveResult.Status.ERROR) {
+                throw new IOException("Solver failed twice with k = " + k + ": " + result.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private KSearchScheduler.Solver recording(String key, KSearchScheduler.Solver solver) {
+        return journal != null ? journal.recording(key, solver) : solver;
+    }
+
+    private int calcLowerBound(List<PhylogeneticTree> trees) {
+        if (lowerBoundSteps <= 0) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int bound = new AgreementForestBound(lowerBoundSteps).lowerBound(trees);
+        logger.info("Lower bound of the hybridization number is " + bound + ", found in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return bound;
+    }
+
+    private PhylogeneticNetwork buildHeuristicNetwork(List<PhylogeneticTree> trees) {
+        long start = System.currentTimeMillis();
+        PhylogeneticNetwork network = new CherryPickingHeuristic(trees).build();
+        logger.info("Heuristic network has " + network.getK() + " reticulation nodes, found in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return network;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Strength of symmetry breaking between interchangeable reticulation nodes.
+ *
+ * Without reticulation-reticulation edges reticulation numbers are not bound by topological
+ * order, so any permutation of them gives the same network.
+ */
+public enum SymmetryBreaking {
+    /**
+     * Original constraints: two consecutive reticulations do not both have tree node children.
+     */
+    NONE,
+    /**
+     * Children of consecutive reticulations are strictly increasing.
+     */
+    RETICULATION,
+    /**
+     * As RETICULATION plus redundant ordering of every pair of reticulations, which propagates
+     * without going through the intermediate nodes.
+     */
+    FULL
+}
@@ -0,0 +1,30 @@
+import cnf.VariableMapFile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decodes a variable map written with "--varMap": prints "id name" for every variable,
+ * or only for the given literals, e.g. a model printed by the solver.
+ */
+public class VariableMapReader {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: VariableMapReader <map file> [literal ...]");
+            return;
+        }
+        VariableMapFile map = VariableMapFile.open(new File(args[0]));
+        if (args.length == 1) {
+            for (int var = 1; var <= map.getVariablesCount(); var++) {
+                System.out.println(var + " " + map.nameOf(var));
+            }
+            return;
+        }
+        for (int i = 1; i < args.length; i++) {
+            int literal = Integer.parseInt(args[i]);
+            if (literal != 0) {
+                System.out.println(literal + " " + (literal < 0 ? "-" : "") + map.nameOf(Math.abs(literal)));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Directory for intermediate files of one job, e.g. CNF formulas, solver outputs and BEE sources,
+ * so several jobs may run in one working directory or one JVM.
+ *
+ * The directory is unique and created on first use. Subtasks and concurrent k get child workspaces
+ * in its subdirectories. Artifacts which no external tool reads may be kept in memory instead.
+ * Closing the root workspace deletes the whole tree according to the cleanup policy.
+ */
+public class Workspace implements Closeable {
+    public enum Cleanup {
+        /** delete files when the job is over */
+        ALWAYS,
+        /** keep files of failed jobs for inspection */
+        ON_SUCCESS,
+        /** never delete files */
+        NEVER
+    }
+
+    private final File parent;
+
+    private final Workspace owner;
+
+    private final String name;
+
+    private final boolean inMemory;
+
+    private final Cleanup cleanup;
+
+    private final Map<String, ByteArrayOutputStream> artifacts = new ConcurrentHashMap<>();
+
+    private File directory = null;
+
+    private volatile boolean succeeded = false;
+
+    /**
+     * @param parent   directory to create the workspace in, the system temporary directory if null
+     * @param prefix   prefix of the unique directory name
+     * @param inMemory whether {@link #output(String)} keeps artifacts in memory
+     */
+    public Workspace(File parent, String prefix, boolean inMemory, Cleanup cleanup) {
+        this.parent = parent;
+        this.owner = null;
+        this.name = prefix;
+        this.inMemory = inMemory;
+        this.cleanup = cleanup;
+    }
+
+    private Workspace(Workspace owner, String name) {
+        this.parent = null;
+        this.owner = owner;
+        this.name = name;
+        this.inMemory = owner.inMemory;
+        this.cleanup = Cleanup.NEVER;
+    }
+
+    /**
+     * @return workspace in the subdirectory with this name, it is cleaned up with this one
+     */
+    public Workspace child(String name) {
+        return new Workspace(this, name);
+    }
+
+    /**
+     * Creates the directory if it does not exist yet.
+     */
+    public synchronized File getDirectory() throws IOException {
+        if (directory == null) {
+            directory = createDirectory();
+        }
+        return directory;
+    }
+
+    private File createDirectory() throws IOException {
+        if (owner != null) {
+            return Files.createDirectories(new File(owner.getDirectory(), name).toPath()).toFile();
+        }
+        if (parent == null) {
+            return Files.createTempDirectory(name).toFile();
+        }
+        Files.createDirectories(parent.toPath());
+        return Files.createTempDirectory(parent.toPath(), name).toFile();
+    }
+
+    /**
+     * @return file with this name for tools which need a path, it is not created
+     */
+    public File file(String name) throws IOException {
+        return new File(getDirectory(), name);
+    }
+
+    /**
+     * Opens an artifact for writing, in memory for in-memory workspaces and as a file otherwise.
+     */
+    public OutputStream output(String name) throws IOException {
+        if (inMemory) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            artifacts.put(name, out);
+            return out;
+        }
+        return new FileOutputStream(file(name));
+    }
+
+    /**
+     * Opens an artifact written by {@link #output(String)} or by an external tool into {@link #file(String)}.
+     */
+    public InputStream input(String name) throws IOException {
+        ByteArrayOutputStream artifact = artifacts.get(name);
+        if (artifact != null) {
+            return new ByteArrayInputStream(artifact.toByteArray());
+        }
+        return new FileInputStream(file(name));
+    }
+
+    public void setSucceeded(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    /**
+     * Drops in-memory artifacts and deletes the directory if the cleanup policy says so.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        artifacts.clear();
+        if (directory == null || cleanup == Cleanup.NEVER || cleanup == Cleanup.ON_SUCCESS && !succeeded) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+        directory = null;
+    }
+
+    @Override
+    public String toString() {
+        return directory != null ? directory.getPath() : "<" + name + ">";
+    }
+}
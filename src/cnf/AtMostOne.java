@@ -0,0 +1,304 @@
+package cnf;
+
+/**
+ * Standard at-most-one encodings.
+ *
+ * An encoding is specified as "name" or "name:groupSize", for example "pairwise",
+ * "sequential", "commander:3", "product", "binary" or "bimander:2".
+ */
+public final class AtMostOne {
+    private AtMostOne() {
+    }
+
+    public static final String[] NAMES = {"pairwise", "sequential", "commander", "product", "binary", "bimander"};
+
+    public static AtMostOneEncoding parse(String spec) {
+        String name = spec.trim();
+        int groupSize = -1;
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            try {
+                groupSize = Integer.parseInt(name.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad group size in AMO encoding: " + spec);
+            }
+            name = name.substring(0, colon).trim();
+            if (groupSize < 1) {
+                throw new IllegalArgumentException("Group size must be positive: " + spec);
+            }
+        }
+        switch (name) {
+            case "pairwise":
+                return pairwise();
+            case "sequential":
+                return sequential();
+            case "commander":
+                return commander(groupSize < 0 ? 3 : groupSize);
+            case "product":
+                return product();
+            case "binary":
+                return binary();
+            case "bimander":
+                return bimander(groupSize < 0 ? 2 : groupSize);
+            default:
+                throw new IllegalArgumentException("Unknown AMO encoding: " + spec);
+        }
+    }
+
+    public static AtMostOneEncoding pairwise() {
+        return new Pairwise();
+    }
+
+    public static AtMostOneEncoding sequential() {
+        return new Sequential();
+    }
+
+    public static AtMostOneEncoding commander(int groupSize) {
+        if (groupSize < 2) {
+            throw new IllegalArgumentException("Commander group size must be at least 2");
+        }
+        return new Commander(groupSize);
+    }
+
+    public static AtMostOneEncoding product() {
+        return new Product();
+    }
+
+    public static AtMostOneEncoding binary() {
+        return new Binary();
+    }
+
+    public static AtMostOneEncoding bimander(int groupSize) {
+        return new Bimander(groupSize);
+    }
+
+    /**
+     * @return ceil(log2(x)), 0 for x <= 1
+     */
+    static int bits(int x) {
+        return x <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    private static void addPairwise(int[] literals, int from, int to, ClauseSink sink) {
+        for (int i = from; i < to; i++) {
+            for (int j = i + 1; j < to; j++) {
+                sink.addClause(-literals[i], -literals[j]);
+            }
+        }
+    }
+
+    private static int[] slice(int[] array, int from, int to) {
+        int[] ans = new int[to - from];
+        System.arraycopy(array, from, ans, 0, ans.length);
+        return ans;
+    }
+
+    private static class Pairwise implements AtMostOneEncoding {
+        @Override
+        public int auxiliaryCount(int size) {
+            return 0;
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            addPairwise(literals, 0, literals.length, sink);
+        }
+
+        @Override
+        public String getName() {
+            return "pairwise";
+        }
+    }
+
+    /**
+     * Sinz's sequential counter: s_i means "one of x_1..x_i is true".
+     */
+    private static class Sequential implements AtMostOneEncoding {
+        @Override
+        public int auxiliaryCount(int size) {
+            return Math.max(size - 1, 0);
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            int n = literals.length;
+            if (n < 2) {
+                return;
+            }
+            sink.addClause(-literals[0], auxiliary[0]);
+            for (int i = 1; i < n - 1; i++) {
+                sink.addClause(-literals[i], auxiliary[i]);
+                sink.addClause(-auxiliary[i - 1], auxiliary[i]);
+                sink.addClause(-literals[i], -auxiliary[i - 1]);
+            }
+            sink.addClause(-literals[n - 1], -auxiliary[n - 2]);
+        }
+
+        @Override
+        public String getName() {
+            return "sequential";
+        }
+    }
+
+    /**
+     * Klieber and Kwon commander encoding: literals are split into groups with pairwise AMO inside,
+     * every literal implies the commander of its group, and AMO over commanders is encoded recursively.
+     */
+    private static class Commander implements AtMostOneEncoding {
+        private final int groupSize;
+
+        Commander(int groupSize) {
+            this.groupSize = groupSize;
+        }
+
+        @Override
+        public int auxiliaryCount(int size) {
+            if (size <= groupSize) {
+                return 0;
+            }
+            int groups = (size + groupSize - 1) / groupSize;
+            return groups + auxiliaryCount(groups);
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            int n = literals.length;
+            if (n <= groupSize) {
+                addPairwise(literals, 0, n, sink);
+                return;
+            }
+            int groups = (n + groupSize - 1) / groupSize;
+            int[] commanders = slice(auxiliary, 0, groups);
+            for (int group = 0; group < groups; group++) {
+                int from = group * groupSize;
+                int to = Math.min(from + groupSize, n);
+                addPairwise(literals, from, to, sink);
+                for (int i = from; i < to; i++) {
+                    sink.addClause(-literals[i], commanders[group]);
+                }
+            }
+            encode(commanders, slice(auxiliary, groups, auxiliary.length), sink);
+        }
+
+        @Override
+        public String getName() {
+            return "commander:" + groupSize;
+        }
+    }
+
+    /**
+     * Chen's 2-product encoding: literals are placed in a p x q grid, a true literal implies
+     * its row and column variables, and AMO over rows and columns is encoded recursively.
+     */
+    private static class Product implements AtMostOneEncoding {
+        private static final int PAIRWISE_LIMIT = 4;
+
+        @Override
+        public int auxiliaryCount(int size) {
+            if (size <= PAIRWISE_LIMIT) {
+                return 0;
+            }
+            int p = rows(size);
+            int q = (size + p - 1) / p;
+            return p + q + auxiliaryCount(p) + auxiliaryCount(q);
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            int n = literals.length;
+            if (n <= PAIRWISE_LIMIT) {
+                addPairwise(literals, 0, n, sink);
+                return;
+            }
+            int p = rows(n);
+            int q = (n + p - 1) / p;
+            int[] rows = slice(auxiliary, 0, p);
+            int[] columns = slice(auxiliary, p, p + q);
+            for (int i = 0; i < n; i++) {
+                sink.addClause(-literals[i], rows[i / q]);
+                sink.addClause(-literals[i], columns[i % q]);
+            }
+            int offset = p + q;
+            encode(rows, slice(auxiliary, offset, offset + auxiliaryCount(p)), sink);
+            offset += auxiliaryCount(p);
+            encode(columns, slice(auxiliary, offset, offset + auxiliaryCount(q)), sink);
+        }
+
+        private static int rows(int size) {
+            return (int) Math.ceil(Math.sqrt(size));
+        }
+
+        @Override
+        public String getName() {
+            return "product";
+        }
+    }
+
+    /**
+     * Frisch's binary encoding: every literal implies its own index in binary.
+     */
+    private static class Binary implements AtMostOneEncoding {
+        @Override
+        public int auxiliaryCount(int size) {
+            return bits(size);
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            int bits = bits(literals.length);
+            for (int i = 0; i < literals.length; i++) {
+                for (int bit = 0; bit < bits; bit++) {
+                    sink.addClause(-literals[i], (i & (1 << bit)) != 0 ? auxiliary[bit] : -auxiliary[bit]);
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "binary";
+        }
+    }
+
+    /**
+     * Hölldobler and Nguyen's bimander encoding: pairwise AMO inside groups of {@code groupSize}
+     * literals and binary encoding of the group number.
+     */
+    private static class Bimander implements AtMostOneEncoding {
+        private final int groupSize;
+
+        Bimander(int groupSize) {
+            if (groupSize < 1) {
+                throw new IllegalArgumentException("Bimander group size must be positive");
+            }
+            this.groupSize = groupSize;
+        }
+
+        @Override
+        public int auxiliaryCount(int size) {
+            return bits((size + groupSize - 1) / groupSize);
+        }
+
+        @Override
+        public void encode(int[] literals, int[] auxiliary, ClauseSink sink) {
+            int groups = (literals.length + groupSize - 1) / groupSize;
+            int bits = bits(groups);
+            for (int group = 0; group < groups; group++) {
+                int from = group * groupSize;
+                int to = Math.min(from + groupSize, literals.length);
+                for (int i = from; i < to; i++) {
+                    for (int bit = 0; bit < bits; bit++) {
+                        sink.addClause(-literals[i], (group & (1 << bit)) != 0 ? auxiliary[bit] : -auxiliary[bit]);
+                    }
+                    for (int j = i + 1; j < to; j++) {
+                        sink.addClause(-literals[i], -literals[j]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "bimander:" + groupSize;
+        }
+    }
+}
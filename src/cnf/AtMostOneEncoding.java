@@ -0,0 +1,21 @@
+package cnf;
+
+/**
+ * CNF encoding of the constraint "at most one of the given literals is true".
+ *
+ * Encodings which need auxiliary variables report how many of them are needed for
+ * a given number of literals; the caller allocates them and passes them to {@link #encode}.
+ */
+public interface AtMostOneEncoding {
+    /**
+     * @return number of auxiliary variables used to encode AMO over {@code size} literals
+     */
+    int auxiliaryCount(int size);
+
+    void encode(int[] literals, int[] auxiliary, ClauseSink sink);
+
+    /**
+     * @return specification of the encoding, accepted back by {@link AtMostOne#parse(String)}
+     */
+    String getName();
+}
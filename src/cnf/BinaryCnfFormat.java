@@ -0,0 +1,101 @@
+package cnf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary back end for {@link ClauseArena}: a fixed header followed by the raw offsets
+ * and literals arrays in little-endian order, so the file can be memory-mapped back.
+ *
+ * Layout: magic, version, variables, clauses, literals, offsets[clauses + 1], literals[literals].
+ */
+public class BinaryCnfFormat {
+    private static final int MAGIC = 0x46435350; // "PSCF"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 5;
+
+    public static void write(ClauseArena arena, int variablesCount, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putInt(variablesCount).putInt(arena.size()).putInt(arena.getLiteralsCount());
+            for (int clause = 0; clause <= arena.size(); clause++) {
+                put(channel, buffer, clause < arena.size() ? arena.clauseStart(clause)
+                        : arena.getLiteralsCount());
+            }
+            int[] literals = arena.getLiterals();
+            for (int i = 0; i < arena.getLiteralsCount(); i++) {
+                put(channel, buffer, literals[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return arena with all clauses of the file; variables count is available through
+     * {@link ClauseArena#getMaxVariable()} or {@link #readVariablesCount(File)}
+     */
+    public static ClauseArena read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            checkHeader(ints, file);
+            int clausesCount = ints.get(3);
+            int literalsCount = ints.get(4);
+            ClauseArena arena = new ClauseArena(literalsCount, clausesCount);
+            int[] clause = new int[16];
+            for (int i = 0; i < clausesCount; i++) {
+                int start = ints.get(HEADER_INTS + i);
+                int end = ints.get(HEADER_INTS + i + 1);
+                if (clause.length < end - start) {
+                    clause = new int[end - start];
+                }
+                for (int j = start; j < end; j++) {
+                    clause[j - start] = ints.get(HEADER_INTS + clausesCount + 1 + j);
+                }
+                arena.addClause(clause, 0, end - start);
+            }
+            return arena;
+        }
+    }
+
+    public static int readVariablesCount(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4 * HEADER_INTS).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            IntBuffer ints = header.asIntBuffer();
+            checkHeader(ints, file);
+            return ints.get(2);
+        }
+    }
+
+    private static void checkHeader(IntBuffer ints, File file) throws IOException {
+        if (ints.limit() < HEADER_INTS || ints.get(0) != MAGIC || ints.get(1) != VERSION) {
+            throw new IOException("File " + file + " is not a binary CNF");
+        }
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < 4) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        buffer.putInt(value);
+    }
+}
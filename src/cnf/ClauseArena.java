@@ -0,0 +1,147 @@
+package cnf;
+
+import java.util.Arrays;
+
+/**
+ * Compact in-memory formula: literals of all clauses live in one growable {@code int[]},
+ * clause boundaries are kept in a second offsets array.
+ *
+ * The arena is itself a {@link ClauseSink}, so a formula builder can target it directly,
+ * and it can be replayed into any other sink (DIMACS text, binary, solver).
+ */
+public class ClauseArena implements ClauseSink {
+    private int[] literals;
+
+    private int literalsCount = 0;
+
+    // starts[i] is the offset of the first literal of clause i, starts[clausesCount] == literalsCount
+    private int[] starts;
+
+    private int clausesCount = 0;
+
+    private int maxVariable = 0;
+
+    private String[] comments = new String[16];
+
+    // index of the clause which follows the comment
+    private int[] commentPositions = new int[16];
+
+    private int commentsCount = 0;
+
+    public ClauseArena() {
+        this(1 << 12, 1 << 10);
+    }
+
+    public ClauseArena(int literalsCapacity, int clausesCapacity) {
+        this.literals = new int[Math.max(literalsCapacity, 1)];
+        this.starts = new int[Math.max(clausesCapacity, 1) + 1];
+    }
+
+    @Override
+    public void addClause(int... clause) {
+        addClause(clause, 0, clause.length);
+    }
+
+    @Override
+    public void addClause(int[] clause, int from, int to) {
+        int length = to - from;
+        if (literalsCount + length > literals.length) {
+            literals = Arrays.copyOf(literals, Math.max(literalsCount + length, 2 * literals.length));
+        }
+        if (clausesCount + 2 > starts.length) {
+            starts = Arrays.copyOf(starts, 2 * starts.length);
+        }
+        for (int i = from; i < to; i++) {
+            int literal = clause[i];
+            if (literal == 0) {
+                throw new IllegalArgumentException("Zero literal in clause");
+            }
+            literals[literalsCount++] = literal;
+            maxVariable = Math.max(maxVariable, Math.abs(literal));
+        }
+        starts[++clausesCount] = literalsCount;
+    }
+
+    @Override
+    public void comment(String text) {
+        if (commentsCount == comments.length) {
+            comments = Arrays.copyOf(comments, 2 * commentsCount);
+            commentPositions = Arrays.copyOf(commentPositions, 2 * commentsCount);
+        }
+        comments[commentsCount] = text;
+        commentPositions[commentsCount] = clausesCount;
+        commentsCount++;
+    }
+
+    public int size() {
+        return clausesCount;
+    }
+
+    public int getLiteralsCount() {
+        return literalsCount;
+    }
+
+    public int getMaxVariable() {
+        return maxVariable;
+    }
+
+    public int clauseStart(int clause) {
+        return starts[clause];
+    }
+
+    public int clauseEnd(int clause) {
+        return starts[clause + 1];
+    }
+
+    public int clauseLength(int clause) {
+        return starts[clause + 1] - starts[clause];
+    }
+
+    public int literal(int clause, int i) {
+        return literals[starts[clause] + i];
+    }
+
+    /**
+     * @return backing literals array, valid in {@code [clauseStart(i), clauseEnd(i))} for every clause;
+     * must not be modified
+     */
+    public int[] getLiterals() {
+        return literals;
+    }
+
+    public int[] getClause(int clause) {
+        return Arrays.copyOfRange(literals, starts[clause], starts[clause + 1]);
+    }
+
+    /**
+     * Appends all clauses and comments of other arena to this one.
+     */
+    public void addAll(ClauseArena other) {
+        int commentIndex = 0;
+        for (int clause = 0; clause < other.clausesCount; clause++) {
+            while (commentIndex < other.commentsCount && other.commentPositions[commentIndex] == clause) {
+                comment(other.comments[commentIndex++]);
+            }
+            addClause(other.literals, other.starts[clause], other.starts[clause + 1]);
+        }
+        while (commentIndex < other.commentsCount) {
+            comment(other.comments[commentIndex++]);
+        }
+    }
+
+    /**
+     * Replays clauses and comments in their original order.
+     */
+    public void writeTo(ClauseSink sink) {
+        int commentIndex = 0;
+        for (int clause = 0; clause < clausesCount; clause++) {
+            while (commentIndex < commentsCount && commentPositions[commentIndex] == clause) {
+                sink.comment(comments[commentIndex++]);
+            }
+            sink.addClause(literals, starts[clause], starts[clause + 1]);
+        }
+        while (commentIndex < commentsCount) {
+            sink.comment(comments[commentIndex++]);
+        }
+    }
+}
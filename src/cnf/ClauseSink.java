@@ -0,0 +1,22 @@
+package cnf;
+
+import java.util.Arrays;
+
+/**
+ * Receiver of clauses produced by a formula builder.
+ */
+public interface ClauseSink {
+    void addClause(int... literals);
+
+    /**
+     * Adds clause made of {@code literals[from..to)}, implementations may avoid copying.
+     */
+    default void addClause(int[] literals, int from, int to) {
+        addClause(Arrays.copyOfRange(literals, from, to));
+    }
+
+    /**
+     * @param text comment without the leading "c " and trailing new line
+     */
+    void comment(String text);
+}
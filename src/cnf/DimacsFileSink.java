@@ -0,0 +1,147 @@
+package cnf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes clauses in DIMACS format straight to a file channel.
+ *
+ * Variables and clauses counts are not known until the whole formula is generated,
+ * so a fixed-width "p cnf" header is reserved at the beginning of the file and
+ * patched in place by {@link #finish(int)}.
+ */
+public class DimacsFileSink implements ClauseSink, Closeable {
+    private static final int HEADER_WIDTH = 32;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final byte[] digits = new byte[12];
+
+    private int clausesCount = 0;
+
+    public DimacsFileSink(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        for (int i = 0; i < HEADER_WIDTH - 1; i++) {
+            buffer.put((byte) ' ');
+        }
+        buffer.put((byte) '\n');
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getClausesCount() {
+        return clausesCount;
+    }
+
+    @Override
+    public void addClause(int... literals) {
+        addClause(literals, 0, literals.length);
+    }
+
+    @Override
+    public void addClause(int[] literals, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ensureRemaining(digits.length + 1);
+            putInt(literals[i]);
+            buffer.put((byte) ' ');
+        }
+        ensureRemaining(2);
+        buffer.put((byte) '0');
+        buffer.put((byte) '\n');
+        clausesCount++;
+    }
+
+    @Override
+    public void comment(String text) {
+        byte[] bytes = ("c " + text + "\n").getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureRemaining(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Flushes all clauses, writes the header and closes the file.
+     */
+    public void finish(int variablesCount) throws IOException {
+        flush();
+        channel.write(header(variablesCount, clausesCount), 0);
+        close();
+    }
+
+    /**
+     * @return "p cnf" line padded with spaces to the reserved header width
+     */
+    static ByteBuffer header(int variablesCount, int clausesCount) throws IOException {
+        String header = String.format("p cnf %d %d", variablesCount, clausesCount);
+        if (header.length() >= HEADER_WIDTH) {
+            throw new IOException("CNF header does not fit into reserved space: " + header);
+        }
+        StringBuilder padded = new StringBuilder(header);
+        while (padded.length() < HEADER_WIDTH - 1) {
+            padded.append(' ');
+        }
+        padded.append('\n');
+        return ByteBuffer.wrap(padded.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            flush();
+            channel.close();
+        }
+    }
+
+    private void putInt(int value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
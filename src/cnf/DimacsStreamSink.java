@@ -0,0 +1,125 @@
+package cnf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes clauses in DIMACS format to a stream which can't be rewound, e.g. a compressed file
+ * or standard input of a solver. Counts are known in advance, so the "p cnf" header is exact
+ * and written first; {@link #finish()} checks that the promised number of clauses was written.
+ */
+public class DimacsStreamSink implements ClauseSink, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final byte[] digits = new byte[12];
+
+    private final int expectedClausesCount;
+
+    private int position = 0;
+
+    private int clausesCount = 0;
+
+    private boolean closed = false;
+
+    public DimacsStreamSink(OutputStream out, int variablesCount, int clausesCount) {
+        this.out = out;
+        this.expectedClausesCount = clausesCount;
+        put(String.format("p cnf %d %d\n", variablesCount, clausesCount));
+    }
+
+    public int getClausesCount() {
+        return clausesCount;
+    }
+
+    @Override
+    public void addClause(int... literals) {
+        addClause(literals, 0, literals.length);
+    }
+
+    @Override
+    public void addClause(int[] literals, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ensureRemaining(digits.length + 1);
+            putInt(literals[i]);
+            buffer[position++] = ' ';
+        }
+        ensureRemaining(2);
+        buffer[position++] = '0';
+        buffer[position++] = '\n';
+        clausesCount++;
+    }
+
+    @Override
+    public void comment(String text) {
+        put("c " + text + "\n");
+    }
+
+    /**
+     * Flushes all clauses and closes the stream.
+     */
+    public void finish() throws IOException {
+        close();
+        if (clausesCount != expectedClausesCount) {
+            throw new IOException("Header promised " + expectedClausesCount + " clauses, but "
+                    + clausesCount + " were written");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            flush();
+            out.close();
+        }
+    }
+
+    private void put(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureRemaining(1);
+            int length = Math.min(buffer.length - position, bytes.length - offset);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+            offset += length;
+        }
+    }
+
+    private void putInt(int value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            buffer[position++] = digits[--length];
+        }
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.length - position < bytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
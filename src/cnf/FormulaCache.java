@@ -0,0 +1,224 @@
+package cnf;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed on-disk cache of generated formulas.
+ *
+ * An entry is keyed by a hash of a canonical description of everything the formula depends on
+ * and consists of the gzipped DIMACS file, which is handed to a solver as is, the
+ * {@link VariableMapFile} of the original variables and, for simplified formulas,
+ * the table lifting models back to them (see {@link Simplifier#getLiftTable()}).
+ *
+ * Files of an entry are written under temporary names and renamed, the formula file last,
+ * so an entry is visible only when complete. Reading an entry touches it, and after every store
+ * least recently used entries are evicted until the directory fits into the size limit.
+ */
+public class FormulaCache {
+    private static final String FORMULA_SUFFIX = ".cnf.gz";
+
+    private static final String MAP_SUFFIX = ".map";
+
+    private static final String LIFT_SUFFIX = ".lift";
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    public FormulaCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * @return SHA-256 of the description in hex, used as the name of entry files
+     */
+    public static String key(String description) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(description.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return complete entry with the key, null if there is none
+     */
+    public Entry get(String key) {
+        Entry entry = new Entry(key);
+        if (!entry.getFormulaFile().isFile() || !entry.getVariableMapFile().isFile()) {
+            return null;
+        }
+        entry.getFormulaFile().setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Stores a formula and evicts old entries.
+     *
+     * @param vars       variables of the original formula
+     * @param simplifier simplifier which produced the formula from the original one, null if it was not simplified
+     */
+    public Entry put(String key, ClauseArena formula, int variablesCount, VariableRegistry vars,
+                     Simplifier simplifier) throws IOException {
+        Entry entry = new Entry(key);
+        File formulaFile = temporary(entry.getFormulaFile());
+        File mapFile = temporary(entry.getVariableMapFile());
+        File liftFile = temporary(entry.getLiftFile());
+        try {
+            VariableMapFile.write(vars, mapFile);
+            if (simplifier != null) {
+                writeInts(simplifier.getLiftTable(), liftFile);
+            }
+            try (DimacsStreamSink sink = new DimacsStreamSink(
+                    new GZIPOutputStream(new FileOutputStream(formulaFile), 1 << 16), variablesCount, formula.size())) {
+                formula.writeTo(sink);
+                sink.finish();
+            }
+            move(mapFile, entry.getVariableMapFile());
+            if (simplifier != null) {
+                move(liftFile, entry.getLiftFile());
+            } else {
+                entry.getLiftFile().delete();
+            }
+            move(formulaFile, entry.getFormulaFile());
+        } finally {
+            formulaFile.delete();
+            mapFile.delete();
+            liftFile.delete();
+        }
+        evict(key);
+        return entry;
+    }
+
+    /**
+     * @return total size of complete entries in bytes
+     */
+    public long size() {
+        long size = 0;
+        for (Entry entry : entries()) {
+            size += entry.size();
+        }
+        return size;
+    }
+
+    private void evict(String keep) {
+        List<Entry> entries = entries();
+        entries.sort(Comparator.comparingLong(entry -> entry.getFormulaFile().lastModified()));
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.size();
+        }
+        for (Entry entry : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            if (!entry.key.equals(keep)) {
+                size -= entry.size();
+                entry.delete();
+            }
+        }
+    }
+
+    private List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FORMULA_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                entries.add(new Entry(name.substring(0, name.length() - FORMULA_SUFFIX.length())));
+            }
+        }
+        return entries;
+    }
+
+    private static File temporary(File file) throws IOException {
+        return File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    }
+
+    private static void move(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeInts(int[] values, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static int[] readInts(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readInt();
+            }
+            return values;
+        }
+    }
+
+    public class Entry {
+        private final String key;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return gzipped DIMACS file of the formula
+         */
+        public File getFormulaFile() {
+            return new File(directory, key + FORMULA_SUFFIX);
+        }
+
+        public File getVariableMapFile() {
+            return new File(directory, key + MAP_SUFFIX);
+        }
+
+        /**
+         * @return "family_p1_p2" -> DIMACS id view of original variables
+         */
+        public Map<String, Integer> getVariableMap() throws IOException {
+            return VariableMapFile.open(getVariableMapFile()).asMap();
+        }
+
+        /**
+         * @return model of the original formula, the model itself if the formula was not simplified
+         */
+        public boolean[] lift(boolean[] model) throws IOException {
+            return getLiftFile().isFile() ? Simplifier.lift(readInts(getLiftFile()), model) : model;
+        }
+
+        private File getLiftFile() {
+            return new File(directory, key + LIFT_SUFFIX);
+        }
+
+        private long size() {
+            return getFormulaFile().length() + getVariableMapFile().length() + getLiftFile().length();
+        }
+
+        private void delete() {
+            getFormulaFile().delete();
+            getVariableMapFile().delete();
+            getLiftFile().delete();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cnf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DIMACS file of an incremental formula for external solvers, which know nothing about assumptions.
+ *
+ * The base formula is written once, every {@link #select(int...)} cuts the file back to the base
+ * clauses, appends assumptions as unit clauses and patches the header.
+ */
+public class IncrementalDimacsFile {
+    private final File file;
+
+    private final int variablesCount;
+
+    private final int baseClausesCount;
+
+    private final long baseLength;
+
+    public IncrementalDimacsFile(File file, ClauseArena base, int variablesCount) throws IOException {
+        this.file = file;
+        this.variablesCount = variablesCount;
+        DimacsFileSink sink = new DimacsFileSink(file);
+        try {
+            base.writeTo(sink);
+            sink.finish(variablesCount);
+        } finally {
+            sink.close();
+        }
+        this.baseClausesCount = sink.getClausesCount();
+        this.baseLength = file.length();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getBaseClausesCount() {
+        return baseClausesCount;
+    }
+
+    public void select(int... assumptions) throws IOException {
+        StringBuilder units = new StringBuilder();
+        for (int literal : assumptions) {
+            units.append(literal).append(" 0\n");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(baseLength);
+            ByteBuffer tail = ByteBuffer.wrap(units.toString().getBytes(StandardCharsets.US_ASCII));
+            long position = baseLength;
+            while (tail.hasRemaining()) {
+                position += channel.write(tail, position);
+            }
+            channel.write(DimacsFileSink.header(variablesCount, baseClausesCount + assumptions.length), 0);
+        }
+    }
+}
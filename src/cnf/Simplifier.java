@@ -0,0 +1,306 @@
+package cnf;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies a formula before it is written out for a solver:
+ * propagates unit clauses, drops satisfied clauses and false literals, removes duplicate binary
+ * clauses and clauses subsumed by binary ones, and renumbers the remaining variables densely.
+ *
+ * A model of the simplified formula is turned back into a model of the original one by
+ * {@link #lift(boolean[])}, so variable maps of the original formula stay valid.
+ */
+public class Simplifier {
+    private final int originalVariablesCount;
+
+    private final int originalClausesCount;
+
+    // value of every original variable: 1 true, -1 false, 0 not fixed
+    private final byte[] values;
+
+    // original variable -> new variable, 0 if the variable is not in the simplified formula
+    private final int[] newIds;
+
+    private final ClauseArena formula = new ClauseArena();
+
+    private int variablesCount;
+
+    private int fixedCount;
+
+    private boolean unsatisfiable;
+
+    public Simplifier(ClauseArena original, int variablesCount) {
+        this.originalVariablesCount = Math.max(variablesCount, original.getMaxVariable());
+        this.originalClausesCount = original.size();
+        this.values = new byte[originalVariablesCount + 1];
+        this.newIds = new int[originalVariablesCount + 1];
+        propagate(original);
+        if (!unsatisfiable) {
+            rebuild(original);
+        }
+    }
+
+    /**
+     * @return true if unit propagation alone refutes the formula, the simplified formula is empty then
+     */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
+    }
+
+    public ClauseArena getFormula() {
+        return formula;
+    }
+
+    public int getVariablesCount() {
+        return variablesCount;
+    }
+
+    public int getFixedCount() {
+        return fixedCount;
+    }
+
+    public int getRemovedClausesCount() {
+        return originalClausesCount - formula.size();
+    }
+
+    /**
+     * @return new number of original variable, 0 if it was fixed or does not occur any more
+     */
+    public int newVariable(int variable) {
+        return newIds[variable];
+    }
+
+    /**
+     * @return 1 or -1 if original variable was fixed by propagation, 0 otherwise
+     */
+    public int fixedValue(int variable) {
+        return values[variable];
+    }
+
+    /**
+     * @param model values of simplified variables, model[i] is the value of variable i + 1
+     * @return values of original variables in the same format
+     */
+    public boolean[] lift(boolean[] model) {
+        return lift(getLiftTable(), model);
+    }
+
+    /**
+     * @return for every original variable i + 1: its new number if it is in the simplified formula,
+     * -1 if it was fixed true and 0 if it is false in every lifted model
+     */
+    public int[] getLiftTable() {
+        int[] table = new int[originalVariablesCount];
+        for (int var = 1; var <= originalVariablesCount; var++) {
+            table[var - 1] = values[var] != 0 ? (values[var] > 0 ? -1 : 0) : newIds[var];
+        }
+        return table;
+    }
+
+    /**
+     * Lifts a model by a table of {@link #getLiftTable()}, so models are lifted without the simplifier.
+     */
+    public static boolean[] lift(int[] table, boolean[] model) {
+        boolean[] ans = new boolean[table.length];
+        for (int i = 0; i < table.length; i++) {
+            ans[i] = table[i] < 0 || table[i] > 0 && table[i] <= model.length && model[table[i] - 1];
+        }
+        return ans;
+    }
+
+    private static int index(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    private int value(int literal) {
+        return literal > 0 ? values[literal] : -values[-literal];
+    }
+
+    private void propagate(ClauseArena original) {
+        int clausesCount = original.size();
+        int[] literals = original.getLiterals();
+
+        // occurrence lists of literals in CSR layout
+        int[] occurrenceStarts = new int[2 * originalVariablesCount + 3];
+        for (int i = 0; i < original.getLiteralsCount(); i++) {
+            occurrenceStarts[index(literals[i]) + 1]++;
+        }
+        for (int i = 1; i < occurrenceStarts.length; i++) {
+            occurrenceStarts[i] += occurrenceStarts[i - 1];
+        }
+        int[] occurrences = new int[original.getLiteralsCount()];
+        int[] fill = Arrays.copyOf(occurrenceStarts, occurrenceStarts.length);
+        for (int c = 0; c < clausesCount; c++) {
+            for (int i = original.clauseStart(c); i < original.clauseEnd(c); i++) {
+                occurrences[fill[index(literals[i])]++] = c;
+            }
+        }
+
+        int[] notFalse = new int[clausesCount];
+        int[] queue = new int[originalVariablesCount + 1];
+        int head = 0, tail = 0;
+        for (int c = 0; c < clausesCount && !unsatisfiable; c++) {
+            notFalse[c] = original.clauseLength(c);
+            if (notFalse[c] == 0) {
+                unsatisfiable = true;
+            } else if (notFalse[c] == 1) {
+                tail = assign(literals[original.clauseStart(c)], queue, tail);
+            }
+        }
+
+        while (head < tail && !unsatisfiable) {
+            int falseIndex = index(-queue[head++]);
+            for (int j = occurrenceStarts[falseIndex]; j < occurrenceStarts[falseIndex + 1]; j++) {
+                int c = occurrences[j];
+                if (--notFalse[c] > 1) {
+                    continue;
+                }
+                int unassigned = 0;
+                boolean satisfied = false;
+                for (int i = original.clauseStart(c); i < original.clauseEnd(c); i++) {
+                    int v = value(literals[i]);
+                    if (v > 0) {
+                        satisfied = true;
+                        break;
+                    } else if (v == 0) {
+                        unassigned = literals[i];
+                    }
+                }
+                if (satisfied) {
+                    continue;
+                }
+                if (unassigned == 0) {
+                    unsatisfiable = true;
+                    break;
+                }
+                tail = assign(unassigned, queue, tail);
+            }
+        }
+        fixedCount = tail;
+    }
+
+    private int assign(int literal, int[] queue, int tail) {
+        int v = value(literal);
+        if (v < 0) {
+            unsatisfiable = true;
+        } else if (v == 0) {
+            values[Math.abs(literal)] = (byte) (literal > 0 ? 1 : -1);
+            queue[tail++] = literal;
+        }
+        return tail;
+    }
+
+    private void rebuild(ClauseArena original) {
+        // clauses without fixed literals, in original order
+        ClauseArena reduced = new ClauseArena(original.getLiteralsCount() + 1, original.size() + 1);
+        int[] marks = new int[2 * originalVariablesCount + 2];
+        int stamp = 0;
+        int[] clause = new int[16];
+        for (int c = 0; c < original.size(); c++) {
+            stamp++;
+            int length = 0;
+            boolean drop = false;
+            for (int i = original.clauseStart(c); i < original.clauseEnd(c) && !drop; i++) {
+                int literal = original.getLiterals()[i];
+                int v = value(literal);
+                if (v > 0 || marks[index(-literal)] == stamp) {
+                    drop = true; // satisfied or tautology
+                } else if (v == 0 && marks[index(literal)] != stamp) {
+                    marks[index(literal)] = stamp;
+                    if (length == clause.length) {
+                        clause = Arrays.copyOf(clause, 2 * length);
+                    }
+                    clause[length++] = literal;
+                }
+            }
+            if (!drop) {
+                reduced.addClause(clause, 0, length);
+            }
+        }
+
+        // unique binary clauses: partners of the literal with smaller index, sorted
+        int[] partnerStarts = new int[2 * originalVariablesCount + 3];
+        for (int c = 0; c < reduced.size(); c++) {
+            if (reduced.clauseLength(c) == 2) {
+                partnerStarts[Math.min(index(reduced.literal(c, 0)), index(reduced.literal(c, 1))) + 1]++;
+            }
+        }
+        for (int i = 1; i < partnerStarts.length; i++) {
+            partnerStarts[i] += partnerStarts[i - 1];
+        }
+        int[] partners = new int[partnerStarts[partnerStarts.length - 1]];
+        int[] fill = Arrays.copyOf(partnerStarts, partnerStarts.length);
+        for (int c = 0; c < reduced.size(); c++) {
+            if (reduced.clauseLength(c) == 2) {
+                int a = index(reduced.literal(c, 0));
+                int b = index(reduced.literal(c, 1));
+                partners[fill[Math.min(a, b)]++] = Math.max(a, b);
+            }
+        }
+        for (int i = 0; i + 1 < partnerStarts.length; i++) {
+            Arrays.sort(partners, partnerStarts[i], partnerStarts[i + 1]);
+        }
+        boolean[] emitted = new boolean[partners.length];
+
+        boolean[] kept = new boolean[reduced.size()];
+        boolean[] used = new boolean[originalVariablesCount + 1];
+        for (int c = 0; c < reduced.size(); c++) {
+            int length = reduced.clauseLength(c);
+            if (length == 2) {
+                int a = index(reduced.literal(c, 0));
+                int b = index(reduced.literal(c, 1));
+                int position = Arrays.binarySearch(partners, partnerStarts[Math.min(a, b)],
+                        partnerStarts[Math.min(a, b) + 1], Math.max(a, b));
+                // binary search may hit any of equal partners, the first one is the representative
+                while (position > partnerStarts[Math.min(a, b)] && partners[position - 1] == partners[position]) {
+                    position--;
+                }
+                if (emitted[position]) {
+                    continue;
+                }
+                emitted[position] = true;
+            } else if (length > 2 && subsumedByBinary(reduced, c, marks, ++stamp, partnerStarts, partners)) {
+                continue;
+            }
+            kept[c] = true;
+            for (int i = 0; i < length; i++) {
+                used[Math.abs(reduced.literal(c, i))] = true;
+            }
+        }
+
+        for (int var = 1; var <= originalVariablesCount; var++) {
+            if (used[var]) {
+                newIds[var] = ++variablesCount;
+            }
+        }
+        formula.comment(String.format("simplified from %d variables and %d clauses, %d variables fixed",
+                originalVariablesCount, originalClausesCount, fixedCount));
+        for (int c = 0; c < reduced.size(); c++) {
+            if (!kept[c]) {
+                continue;
+            }
+            int length = reduced.clauseLength(c);
+            for (int i = 0; i < length; i++) {
+                int literal = reduced.literal(c, i);
+                clause[i] = literal > 0 ? newIds[literal] : -newIds[-literal];
+            }
+            formula.addClause(clause, 0, length);
+        }
+    }
+
+    private static boolean subsumedByBinary(ClauseArena reduced, int c, int[] marks, int stamp,
+                                            int[] partnerStarts, int[] partners) {
+        for (int i = 0; i < reduced.clauseLength(c); i++) {
+            marks[index(reduced.literal(c, i))] = stamp;
+        }
+        for (int i = 0; i < reduced.clauseLength(c); i++) {
+            int a = index(reduced.literal(c, i));
+            for (int j = partnerStarts[a]; j < partnerStarts[a + 1]; j++) {
+                if (marks[partners[j]] == stamp) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,180 @@
+package cnf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary dump of a {@link VariableRegistry}: the family table and the slot of every
+ * variable, little-endian, so the file is memory-mapped and names are decoded only on demand.
+ *
+ * Layout: magic, version, families, variables, names length,
+ * families * [name offset, name length, arity, dim0, dim1, dim2, slot offset],
+ * slots[variables], UTF-8 names padded to 4 bytes.
+ */
+public class VariableMapFile {
+    private static final int MAGIC = 0x4d565350; // "PSVM"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 5;
+
+    private static final int FAMILY_INTS = 7;
+
+    private final IntBuffer ints;
+
+    private final ByteBuffer bytes;
+
+    private final int familiesCount;
+
+    private final int variablesCount;
+
+    private final String[] familyNames;
+
+    private VariableMapFile(ByteBuffer bytes, File file) throws IOException {
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+        this.ints = this.bytes.asIntBuffer();
+        if (ints.limit() < HEADER_INTS || ints.get(0) != MAGIC || ints.get(1) != VERSION) {
+            throw new IOException("File " + file + " is not a variable map");
+        }
+        this.familiesCount = ints.get(2);
+        this.variablesCount = ints.get(3);
+        this.familyNames = new String[familiesCount];
+    }
+
+    public static void write(VariableRegistry vars, File file) throws IOException {
+        List<VariableRegistry.Family> families = vars.getFamilies();
+        byte[][] names = new byte[families.size()][];
+        int namesLength = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = families.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            namesLength += names[i].length;
+        }
+        int paddedNamesLength = (namesLength + 3) / 4 * 4;
+        int ints = HEADER_INTS + FAMILY_INTS * families.size() + vars.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * ints + paddedNamesLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(families.size()).putInt(vars.size()).putInt(namesLength);
+        int nameOffset = 0;
+        for (int i = 0; i < names.length; i++) {
+            VariableRegistry.Family family = families.get(i);
+            buffer.putInt(nameOffset).putInt(names[i].length).putInt(family.getArity());
+            for (int d = 0; d < 3; d++) {
+                buffer.putInt(d < family.getArity() ? family.getDim(d) : 1);
+            }
+            buffer.putInt(family.getOffset());
+            nameOffset += names[i].length;
+        }
+        for (int var = 1; var <= vars.size(); var++) {
+            buffer.putInt(vars.slotOf(var));
+        }
+        for (byte[] name : names) {
+            buffer.put(name);
+        }
+        buffer.position(buffer.capacity());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static VariableMapFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new VariableMapFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+
+    public int getVariablesCount() {
+        return variablesCount;
+    }
+
+    public int getFamiliesCount() {
+        return familiesCount;
+    }
+
+    public String getFamilyName(int family) {
+        if (familyNames[family] == null) {
+            int base = HEADER_INTS + FAMILY_INTS * familiesCount + variablesCount;
+            byte[] name = new byte[familyInt(family, 1)];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = bytes.get(4 * base + familyInt(family, 0) + i);
+            }
+            familyNames[family] = new String(name, StandardCharsets.UTF_8);
+        }
+        return familyNames[family];
+    }
+
+    /**
+     * @return index of family of variable in the family table
+     */
+    public int familyOf(int var) {
+        int slot = slot(var);
+        // the last family starting at or before the slot, empty families share offsets with the next one
+        int lo = 0, hi = familiesCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) / 2;
+            if (familyInt(mid, 6) <= slot) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    public int[] getParams(int var) {
+        int family = familyOf(var);
+        int rest = slot(var) - familyInt(family, 6);
+        int[] params = new int[familyInt(family, 2)];
+        for (int i = params.length - 1; i >= 0; i--) {
+            int dim = familyInt(family, 3 + i);
+            params[i] = rest % dim;
+            rest /= dim;
+        }
+        return params;
+    }
+
+    /**
+     * @return name of variable in the "family_p1_p2" form of {@link VariableRegistry#nameOf(int)}
+     */
+    public String nameOf(int var) {
+        StringBuilder sb = new StringBuilder(getFamilyName(familyOf(var)));
+        for (int param : getParams(var)) {
+            sb.append('_').append(param);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return "family_p1_p2" -> DIMACS id view of all variables, as {@link VariableRegistry#asMap()}
+     */
+    public Map<String, Integer> asMap() {
+        Map<String, Integer> map = new HashMap<>(2 * variablesCount);
+        for (int var = 1; var <= variablesCount; var++) {
+            map.put(nameOf(var), var);
+        }
+        return map;
+    }
+
+    private int familyInt(int family, int i) {
+        return ints.get(HEADER_INTS + FAMILY_INTS * family + i);
+    }
+
+    private int slot(int var) {
+        if (var < 1 || var > variablesCount) {
+            throw new RuntimeException("Variable id out of bounds: " + var);
+        }
+        return ints.get(HEADER_INTS + FAMILY_INTS * familiesCount + var - 1);
+    }
+}
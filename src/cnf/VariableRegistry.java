@@ -0,0 +1,261 @@
+package cnf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps typed variables (family + integer params) to DIMACS ids.
+ *
+ * Every family owns a dense block of slots of size {@code dims[0] * dims[1] * ...},
+ * so a lookup is pure index arithmetic over the per-family offset table.
+ * Ids are handed out sequentially in creation order, exactly like the
+ * old {@code Map<String, Integer>} did, so the CNF layout is unchanged.
+ *
+ * A variable known to be false in advance is {@link #exclude excluded} instead of created:
+ * it gets no id, and lookups return the {@link #FALSE} literal, which clause builders drop.
+ */
+public class VariableRegistry {
+    /**
+     * Literal of an excluded variable. It is never a valid id, and {@code -FALSE} is the true literal.
+     */
+    public static final int FALSE = Integer.MAX_VALUE;
+
+    public static final class Family {
+        private final String name;
+
+        private final int[] dims;
+
+        private final int offset;
+
+        private Family(String name, int[] dims, int offset) {
+            this.name = name;
+            this.dims = dims;
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return dims.length;
+        }
+
+        public int getDim(int i) {
+            return dims[i];
+        }
+
+        int getOffset() {
+            return offset;
+        }
+
+        private int size() {
+            int size = 1;
+            for (int dim : dims) {
+                size *= dim;
+            }
+            return size;
+        }
+
+        private int slot(int a) {
+            check(0, a);
+            return offset + a;
+        }
+
+        private int slot(int a, int b) {
+            check(0, a);
+            check(1, b);
+            return offset + a * dims[1] + b;
+        }
+
+        private int slot(int a, int b, int c) {
+            check(0, a);
+            check(1, b);
+            check(2, c);
+            return offset + (a * dims[1] + b) * dims[2] + c;
+        }
+
+        private void check(int i, int param) {
+            if (param < 0 || param >= dims[i]) {
+                throw new RuntimeException("Parameter " + i + " of " + name + " out of bounds: " + param);
+            }
+        }
+    }
+
+    private final List<Family> families = new ArrayList<>();
+
+    // slot -> variable id, 0 if not created
+    private int[] ids = new int[0];
+
+    // variable id - 1 -> slot
+    private int[] slots = new int[16];
+
+    // variable id - 1 -> family
+    private Family[] owners = new Family[16];
+
+    private int count = 0;
+
+    private int slotsCount = 0;
+
+    private Map<String, Integer> view;
+
+    public Family family(String name, int... dims) {
+        if (dims.length < 1 || dims.length > 3) {
+            throw new IllegalArgumentException("Family " + name + " must have from 1 to 3 params");
+        }
+        Family family = new Family(name, dims.clone(), slotsCount);
+        families.add(family);
+        slotsCount += family.size();
+        if (slotsCount > ids.length) {
+            int[] newIds = new int[Math.max(slotsCount, 2 * ids.length)];
+            System.arraycopy(ids, 0, newIds, 0, ids.length);
+            ids = newIds;
+        }
+        return family;
+    }
+
+    public List<Family> getFamilies() {
+        return families;
+    }
+
+    public int create(Family f, int a) {
+        return register(f, f.slot(a));
+    }
+
+    public int create(Family f, int a, int b) {
+        return register(f, f.slot(a, b));
+    }
+
+    public int create(Family f, int a, int b, int c) {
+        return register(f, f.slot(a, b, c));
+    }
+
+    public void exclude(Family f, int a) {
+        fix(f, f.slot(a));
+    }
+
+    public void exclude(Family f, int a, int b) {
+        fix(f, f.slot(a, b));
+    }
+
+    public void exclude(Family f, int a, int b, int c) {
+        fix(f, f.slot(a, b, c));
+    }
+
+    public int get(Family f, int a) {
+        return lookup(f, f.slot(a));
+    }
+
+    public int get(Family f, int a, int b) {
+        return lookup(f, f.slot(a, b));
+    }
+
+    public int get(Family f, int a, int b, int c) {
+        return lookup(f, f.slot(a, b, c));
+    }
+
+    /**
+     * @return number of created variables, which is also the maximal id
+     */
+    public int size() {
+        return count;
+    }
+
+    public Family getFamily(int var) {
+        checkVar(var);
+        return owners[var - 1];
+    }
+
+    /**
+     * @return global slot of variable, the slot of family params is its offset plus their row-major index
+     */
+    int slotOf(int var) {
+        checkVar(var);
+        return slots[var - 1];
+    }
+
+    public int[] getParams(int var) {
+        checkVar(var);
+        Family f = owners[var - 1];
+        int rest = slots[var - 1] - f.offset;
+        int[] params = new int[f.dims.length];
+        for (int i = params.length - 1; i >= 0; i--) {
+            params[i] = rest % f.dims[i];
+            rest /= f.dims[i];
+        }
+        return params;
+    }
+
+    /**
+     * @return textual name of variable in the old "family_p1_p2" form
+     */
+    public String nameOf(int var) {
+        return nameOf(getFamily(var), getParams(var));
+    }
+
+    public static String nameOf(Family family, int... params) {
+        StringBuilder sb = new StringBuilder(family.name);
+        for (int param : params) {
+            sb.append('_').append(param);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lazily built "family_p1_p2" -> id view. Only meant for network decoding and debugging,
+     * building the formula never touches it.
+     */
+    public Map<String, Integer> asMap() {
+        if (view == null || view.size() != count) {
+            view = new HashMap<>(2 * count);
+            for (int var = 1; var <= count; var++) {
+                view.put(nameOf(var), var);
+            }
+        }
+        return view;
+    }
+
+    private void checkVar(int var) {
+        if (var < 1 || var > count) {
+            throw new RuntimeException("Variable id out of bounds: " + var);
+        }
+    }
+
+    private void fix(Family f, int slot) {
+        if (ids[slot] != 0) {
+            throw new RuntimeException("Variable of family " + f.name + " is already defined");
+        }
+        ids[slot] = FALSE;
+    }
+
+    private int register(Family f, int slot) {
+        if (ids[slot] == FALSE) {
+            throw new RuntimeException("Variable of family " + f.name + " is excluded");
+        }
+        if (ids[slot] != 0) {
+            throw new RuntimeException("Variable " + nameOf(ids[slot]) + " is already defined");
+        }
+        if (count == slots.length) {
+            int[] newSlots = new int[2 * count];
+            System.arraycopy(slots, 0, newSlots, 0, count);
+            slots = newSlots;
+            Family[] newOwners = new Family[2 * count];
+            System.arraycopy(owners, 0, newOwners, 0, count);
+            owners = newOwners;
+        }
+        slots[count] = slot;
+        owners[count] = f;
+        ids[slot] = ++count;
+        return count;
+    }
+
+    private int lookup(Family f, int slot) {
+        int var = ids[slot];
+        if (var == 0) {
+            throw new RuntimeException("Variable of family " + f.name + " is not defined");
+        }
+        return var;
+    }
+}
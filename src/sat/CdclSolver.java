@@ -0,0 +1,752 @@
+package sat;
+
+import cnf.ClauseSink;
+
+import java.util.Arrays;
+
+/**
+ * Conflict-driven clause learning SAT solver running in process: two watched literals with blockers,
+ * VSIDS with phase saving, recursive minimization of learnt clauses, Luby restarts
+ * and deletion of learnt clauses by literal block distance and activity.
+ *
+ * Clauses are consumed as int arrays through {@link ClauseSink}, e.g. right from
+ * {@code FormulaBuilder.buildCNF(solver)}, and may be added between calls of {@link #solve(int...)}.
+ * Learnt clauses are kept between calls, so a sequence of calls with different assumptions,
+ * e.g. activation literals of an incremental formula, is solved incrementally.
+ */
+public class CdclSolver implements ClauseSink {
+    public enum Status {
+        SATISFIABLE, UNSATISFIABLE, UNKNOWN
+    }
+
+    private static final double VARIABLE_DECAY = 0.95;
+
+    private static final double CLAUSE_DECAY = 0.999;
+
+    private static final int RESTART_UNIT = 100;
+
+    private static final double LEARNTS_GROWTH = 1.1;
+
+    // per variable, indexed by variable
+    private int variablesCount = 0;
+
+    private byte[] values = new byte[1]; // 1 true, -1 false, 0 unassigned
+
+    private int[] levels = new int[1];
+
+    private int[] reasons = new int[1]; // clause which implied the value, -1 for decisions and level 0
+
+    private boolean[] phases = new boolean[1];
+
+    private double[] activity = new double[1];
+
+    private boolean[] seen = new boolean[1];
+
+    private int[] heap = new int[1]; // binary max-heap of variables by activity
+
+    private int[] heapIndex = new int[1]; // position in heap, -1 if not there
+
+    private int heapSize = 0;
+
+    // per literal index, see index(int): pairs of a clause watching the literal and its blocker,
+    // a literal of the clause which satisfies it when true
+    private int[][] watches = new int[2][];
+
+    private int[] watchCounts = new int[2];
+
+    private int[][] clauses = new int[16][];
+
+    private boolean[] learnt = new boolean[16];
+
+    private double[] clauseActivity = new double[16];
+
+    private int[] blockDistances = new int[16]; // number of decision levels in a learnt clause when it was learnt
+
+    private int clausesCount = 0;
+
+    private int learntsCount = 0;
+
+    private int[] trail = new int[1];
+
+    private int trailSize = 0;
+
+    private int propagated = 0;
+
+    private int[] levelStarts = new int[1];
+
+    private int decisionLevel = 0;
+
+    private double variableIncrement = 1;
+
+    private double clauseIncrement = 1;
+
+    private double maxLearnts = 0;
+
+    private boolean ok = true;
+
+    private long timeLimit = 0;
+
+    private long deadline;
+
+    private volatile boolean stopRequested = false;
+
+    private boolean stopped;
+
+    private boolean[] model = null;
+
+    private long conflicts = 0;
+
+    private long decisions = 0;
+
+    private long propagations = 0;
+
+    private int[] buffer = new int[16];
+
+    private int[] stack = new int[16];
+
+    private int[] toClear = new int[16];
+
+    private int toClearSize;
+
+    private int[] levelStamps = new int[1];
+
+    private int stamp = 0;
+
+    /**
+     * @param timeLimit limit of every {@link #solve(int...)} call in milliseconds, 0 for none
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Makes the running or the next {@link #solve(int...)} call return {@link Status#UNKNOWN},
+     * may be called from another thread. Interruption of the solving thread works the same way.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public int getVariablesCount() {
+        return variablesCount;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * Makes variables up to the given one known, so they get values in models even if they are in no clause.
+     */
+    public void ensureVariables(int count) {
+        if (count <= variablesCount) {
+            return;
+        }
+        if (count >= values.length) {
+            int capacity = Math.max(2 * values.length, count + 1);
+            values = Arrays.copyOf(values, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            heapIndex = Arrays.copyOf(heapIndex, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            stack = Arrays.copyOf(stack, capacity);
+            toClear = Arrays.copyOf(toClear, capacity);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            watchCounts = Arrays.copyOf(watchCounts, 2 * capacity);
+        }
+        for (int var = variablesCount + 1; var <= count; var++) {
+            reasons[var] = -1;
+            heapIndex[var] = -1;
+            watches[2 * var] = new int[8];
+            watches[2 * var + 1] = new int[8];
+            heapInsert(var);
+        }
+        variablesCount = count;
+    }
+
+    @Override
+    public void addClause(int... literals) {
+        addClause(literals, 0, literals.length);
+    }
+
+    @Override
+    public void addClause(int[] literals, int from, int to) {
+        if (!ok) {
+            return;
+        }
+        cancelUntil(0);
+        int length = 0;
+        if (buffer.length < to - from) {
+            buffer = new int[to - from];
+        }
+        boolean satisfied = false;
+        for (int i = from; i < to && !satisfied; i++) {
+            int literal = literals[i];
+            int var = Math.abs(literal);
+            ensureVariables(var);
+            if (value(literal) > 0 || seen[var] && contains(buffer, length, -literal)) {
+                satisfied = true; // true at level 0 or tautology
+            } else if (value(literal) == 0 && !(seen[var] && contains(buffer, length, literal))) {
+                seen[var] = true;
+                buffer[length++] = literal;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            seen[Math.abs(buffer[i])] = false;
+        }
+        if (satisfied) {
+            return;
+        }
+        if (length == 0) {
+            ok = false;
+        } else if (length == 1) {
+            assign(buffer[0], -1);
+            ok = propagate() < 0;
+        } else {
+            attach(Arrays.copyOf(buffer, length), false);
+        }
+    }
+
+    @Override
+    public void comment(String text) {
+    }
+
+    /**
+     * @param assumptions literals which are true in this call only
+     */
+    public Status solve(int... assumptions) {
+        model = null;
+        stopped = false;
+        if (!ok) {
+            return Status.UNSATISFIABLE;
+        }
+        for (int assumption : assumptions) {
+            ensureVariables(Math.abs(assumption));
+        }
+        deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+        if (maxLearnts == 0) {
+            maxLearnts = Math.max(clausesCount / 3.0, 2000);
+        }
+        Status status = Status.UNKNOWN;
+        for (int restart = 0; status == Status.UNKNOWN && !stopped; restart++) {
+            status = search((long) (luby(restart) * RESTART_UNIT), assumptions);
+        }
+        if (status == Status.SATISFIABLE) {
+            model = new boolean[variablesCount];
+            for (int var = 1; var <= variablesCount; var++) {
+                model[var - 1] = values[var] > 0;
+            }
+        }
+        cancelUntil(0);
+        stopRequested = false;
+        return status;
+    }
+
+    /**
+     * @return model[i] is the value of variable i + 1 after the last satisfiable call, null otherwise
+     */
+    public boolean[] getModel() {
+        return model;
+    }
+
+    private Status search(long conflictsBudget, int[] assumptions) {
+        long searchConflicts = 0;
+        while (true) {
+            int conflict = propagate();
+            if (conflict >= 0) {
+                conflicts++;
+                searchConflicts++;
+                if (decisionLevel == 0) {
+                    ok = false;
+                    return Status.UNSATISFIABLE;
+                }
+                int[] clause = analyze(conflict);
+                cancelUntil(clause.length == 1 ? 0 : levels[Math.abs(clause[1])]);
+                if (clause.length == 1) {
+                    assign(clause[0], -1);
+                } else {
+                    int c = attach(clause, true);
+                    blockDistances[c] = blockDistance(clause);
+                    bumpClause(c);
+                    assign(clause[0], c);
+                }
+                variableIncrement /= VARIABLE_DECAY;
+                clauseIncrement /= CLAUSE_DECAY;
+                if ((conflicts & 63) == 0 && shouldStop()) {
+                    stopped = true;
+                    return Status.UNKNOWN;
+                }
+            } else {
+                if (searchConflicts >= conflictsBudget) {
+                    cancelUntil(0);
+                    return Status.UNKNOWN;
+                }
+                if (learntsCount - trailSize >= maxLearnts) {
+                    reduceLearnts();
+                }
+                int next = 0;
+                while (decisionLevel < assumptions.length) {
+                    int assumption = assumptions[decisionLevel];
+                    if (value(assumption) > 0) {
+                        newDecisionLevel();
+                    } else if (value(assumption) < 0) {
+                        return Status.UNSATISFIABLE;
+                    } else {
+                        next = assumption;
+                        break;
+                    }
+                }
+                if (next == 0) {
+                    next = pickBranchLiteral();
+                    if (next == 0) {
+                        return Status.SATISFIABLE;
+                    }
+                    decisions++;
+                }
+                newDecisionLevel();
+                assign(next, -1);
+            }
+        }
+    }
+
+    private boolean shouldStop() {
+        return stopRequested || Thread.currentThread().isInterrupted() || System.currentTimeMillis() > deadline;
+    }
+
+    /**
+     * @return conflicting clause, -1 if there is none
+     */
+    private int propagate() {
+        while (propagated < trailSize) {
+            int falseLiteral = -trail[propagated++];
+            int falseIndex = index(falseLiteral);
+            int[] list = watches[falseIndex];
+            int count = watchCounts[falseIndex];
+            int i = 0, j = 0;
+            propagations++;
+            while (i < count) {
+                int c = list[i];
+                int blocker = list[i + 1];
+                i += 2;
+                if (value(blocker) > 0) {
+                    list[j++] = c;
+                    list[j++] = blocker;
+                    continue;
+                }
+                int[] lits = clauses[c];
+                if (lits[0] == falseLiteral) {
+                    lits[0] = lits[1];
+                    lits[1] = falseLiteral;
+                }
+                int first = lits[0];
+                if (first != blocker && value(first) > 0) {
+                    list[j++] = c;
+                    list[j++] = first;
+                    continue;
+                }
+                boolean moved = false;
+                for (int k = 2; k < lits.length; k++) {
+                    if (value(lits[k]) >= 0) {
+                        lits[1] = lits[k];
+                        lits[k] = falseLiteral;
+                        addWatch(lits[1], c, first);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+                list[j++] = c;
+                list[j++] = first;
+                if (value(first) < 0) {
+                    while (i < count) {
+                        list[j++] = list[i++];
+                    }
+                    watchCounts[falseIndex] = j;
+                    propagated = trailSize;
+                    return c;
+                }
+                assign(first, c);
+            }
+            watchCounts[falseIndex] = j;
+        }
+        return -1;
+    }
+
+    /**
+     * First UIP learning with removal of literals implied by the rest of the clause.
+     *
+     * @return learnt clause with the asserting literal first and a literal of the backjump level second
+     */
+    private int[] analyze(int conflict) {
+        int[] clause = new int[8];
+        int length = 1;
+        int pathCount = 0;
+        int literal = 0;
+        int position = trailSize - 1;
+        int c = conflict;
+        do {
+            if (learnt[c]) {
+                bumpClause(c);
+            }
+            int[] lits = clauses[c];
+            for (int k = literal == 0 ? 0 : 1; k < lits.length; k++) {
+                int var = Math.abs(lits[k]);
+                if (!seen[var] && levels[var] > 0) {
+                    bumpVariable(var);
+                    seen[var] = true;
+                    if (levels[var] >= decisionLevel) {
+                        pathCount++;
+                    } else {
+                        if (length == clause.length) {
+                            clause = Arrays.copyOf(clause, 2 * length);
+                        }
+                        clause[length++] = lits[k];
+                    }
+                }
+            }
+            while (!seen[Math.abs(trail[position--])]) {
+            }
+            literal = trail[position + 1];
+            c = reasons[Math.abs(literal)];
+            seen[Math.abs(literal)] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        clause[0] = -literal;
+
+        int abstractLevels = 0;
+        toClearSize = 0;
+        for (int i = 1; i < length; i++) {
+            abstractLevels |= abstractLevel(Math.abs(clause[i]));
+            toClear[toClearSize++] = clause[i];
+        }
+        int kept = 1;
+        for (int i = 1; i < length; i++) {
+            if (reasons[Math.abs(clause[i])] < 0 || !redundant(clause[i], abstractLevels)) {
+                clause[kept++] = clause[i];
+            }
+        }
+        for (int i = 0; i < toClearSize; i++) {
+            seen[Math.abs(toClear[i])] = false;
+        }
+
+        int[] ans = Arrays.copyOf(clause, kept);
+        if (kept > 1) {
+            int max = 1;
+            for (int i = 2; i < kept; i++) {
+                if (levels[Math.abs(ans[i])] > levels[Math.abs(ans[max])]) {
+                    max = i;
+                }
+            }
+            int swap = ans[1];
+            ans[1] = ans[max];
+            ans[max] = swap;
+        }
+        return ans;
+    }
+
+    /**
+     * Checks whether the literal of the learnt clause is implied by its other literals,
+     * marked as seen, following reasons down to decisions. Literals proven implied stay marked.
+     *
+     * @param abstractLevels bit set of levels of the learnt clause modulo 32, a reason reaching
+     *                       a level which is not there can't be implied
+     */
+    private boolean redundant(int literal, int abstractLevels) {
+        int stackSize = 0;
+        stack[stackSize++] = literal;
+        int top = toClearSize;
+        while (stackSize > 0) {
+            int[] lits = clauses[reasons[Math.abs(stack[--stackSize])]];
+            for (int k = 1; k < lits.length; k++) {
+                int var = Math.abs(lits[k]);
+                if (seen[var] || levels[var] == 0) {
+                    continue;
+                }
+                if (reasons[var] < 0 || (abstractLevel(var) & abstractLevels) == 0) {
+                    for (int i = top; i < toClearSize; i++) {
+                        seen[Math.abs(toClear[i])] = false;
+                    }
+                    toClearSize = top;
+                    return false;
+                }
+                seen[var] = true;
+                stack[stackSize++] = lits[k];
+                toClear[toClearSize++] = lits[k];
+            }
+        }
+        return true;
+    }
+
+    private int abstractLevel(int var) {
+        return 1 << (levels[var] & 31);
+    }
+
+    private int blockDistance(int[] clause) {
+        stamp++;
+        int distance = 0;
+        for (int literal : clause) {
+            int level = levels[Math.abs(literal)];
+            if (levelStamps[level] != stamp) {
+                levelStamps[level] = stamp;
+                distance++;
+            }
+        }
+        return distance;
+    }
+
+    private int pickBranchLiteral() {
+        while (heapSize > 0) {
+            int var = heapRemoveMax();
+            if (values[var] == 0) {
+                return phases[var] ? var : -var;
+            }
+        }
+        return 0;
+    }
+
+    private void assign(int literal, int reason) {
+        int var = Math.abs(literal);
+        values[var] = (byte) (literal > 0 ? 1 : -1);
+        levels[var] = decisionLevel;
+        reasons[var] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    /**
+     * Every assumption opens a level, even one which is already true, so there may be more levels
+     * than variables and the level arrays grow here rather than with the variables.
+     */
+    private void newDecisionLevel() {
+        if (decisionLevel + 1 >= levelStarts.length) {
+            levelStarts = Arrays.copyOf(levelStarts, 2 * (decisionLevel + 1));
+            levelStamps = Arrays.copyOf(levelStamps, 2 * (decisionLevel + 1));
+        }
+        levelStarts[decisionLevel++] = trailSize;
+    }
+
+    private void cancelUntil(int level) {
+        if (decisionLevel <= level) {
+            return;
+        }
+        for (int i = trailSize - 1; i >= levelStarts[level]; i--) {
+            int var = Math.abs(trail[i]);
+            phases[var] = values[var] > 0;
+            values[var] = 0;
+            reasons[var] = -1;
+            if (heapIndex[var] < 0) {
+                heapInsert(var);
+            }
+        }
+        trailSize = levelStarts[level];
+        propagated = trailSize;
+        decisionLevel = level;
+    }
+
+    private int value(int literal) {
+        return literal > 0 ? values[literal] : -values[-literal];
+    }
+
+    private static int index(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    private static boolean contains(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int attach(int[] lits, boolean isLearnt) {
+        if (clausesCount == clauses.length) {
+            clauses = Arrays.copyOf(clauses, 2 * clausesCount);
+            learnt = Arrays.copyOf(learnt, 2 * clausesCount);
+            clauseActivity = Arrays.copyOf(clauseActivity, 2 * clausesCount);
+            blockDistances = Arrays.copyOf(blockDistances, 2 * clausesCount);
+        }
+        int c = clausesCount++;
+        clauses[c] = lits;
+        learnt[c] = isLearnt;
+        clauseActivity[c] = 0;
+        if (isLearnt) {
+            learntsCount++;
+        }
+        addWatch(lits[0], c, lits[1]);
+        addWatch(lits[1], c, lits[0]);
+        return c;
+    }
+
+    private void addWatch(int literal, int c, int blocker) {
+        int i = index(literal);
+        if (watchCounts[i] == watches[i].length) {
+            watches[i] = Arrays.copyOf(watches[i], 2 * watchCounts[i]);
+        }
+        watches[i][watchCounts[i]++] = c;
+        watches[i][watchCounts[i]++] = blocker;
+    }
+
+    private boolean locked(int c) {
+        int first = clauses[c][0];
+        return value(first) > 0 && reasons[Math.abs(first)] == c;
+    }
+
+    /**
+     * Removes the worse half of learnt clauses, ones spanning more decision levels and then less active ones,
+     * except binary clauses, clauses spanning two levels and reasons of current values. The rest is renumbered.
+     */
+    private void reduceLearnts() {
+        Integer[] candidates = new Integer[learntsCount];
+        int count = 0;
+        for (int c = 0; c < clausesCount; c++) {
+            if (learnt[c]) {
+                candidates[count++] = c;
+            }
+        }
+        Arrays.sort(candidates, 0, count, (a, b) -> blockDistances[a] != blockDistances[b]
+                ? Integer.compare(blockDistances[b], blockDistances[a])
+                : Double.compare(clauseActivity[a], clauseActivity[b]));
+        boolean[] removed = new boolean[clausesCount];
+        for (int i = 0; i < count / 2; i++) {
+            int c = candidates[i];
+            if (clauses[c].length > 2 && blockDistances[c] > 2 && !locked(c)) {
+                removed[c] = true;
+            }
+        }
+
+        int[] newIds = new int[clausesCount];
+        int size = 0;
+        learntsCount = 0;
+        for (int c = 0; c < clausesCount; c++) {
+            if (!removed[c]) {
+                newIds[c] = size;
+                clauses[size] = clauses[c];
+                learnt[size] = learnt[c];
+                clauseActivity[size] = clauseActivity[c];
+                blockDistances[size] = blockDistances[c];
+                learntsCount += learnt[c] ? 1 : 0;
+                size++;
+            }
+        }
+        Arrays.fill(clauses, size, clausesCount, null);
+        clausesCount = size;
+        for (int i = 0; i < trailSize; i++) {
+            int var = Math.abs(trail[i]);
+            if (reasons[var] >= 0) {
+                reasons[var] = newIds[reasons[var]];
+            }
+        }
+        Arrays.fill(watchCounts, 0);
+        for (int c = 0; c < clausesCount; c++) {
+            addWatch(clauses[c][0], c, clauses[c][1]);
+            addWatch(clauses[c][1], c, clauses[c][0]);
+        }
+        maxLearnts *= LEARNTS_GROWTH;
+    }
+
+    private void bumpVariable(int var) {
+        activity[var] += variableIncrement;
+        if (activity[var] > 1e100) {
+            for (int v = 1; v <= variablesCount; v++) {
+                activity[v] *= 1e-100;
+            }
+            variableIncrement *= 1e-100;
+        }
+        if (heapIndex[var] >= 0) {
+            siftUp(heapIndex[var]);
+        }
+    }
+
+    private void bumpClause(int c) {
+        clauseActivity[c] += clauseIncrement;
+        if (clauseActivity[c] > 1e20) {
+            for (int i = 0; i < clausesCount; i++) {
+                clauseActivity[i] *= 1e-20;
+            }
+            clauseIncrement *= 1e-20;
+        }
+    }
+
+    private void heapInsert(int var) {
+        heap[heapSize] = var;
+        heapIndex[var] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int heapRemoveMax() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int var = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (activity[heap[parent]] >= activity[var]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapIndex[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = var;
+        heapIndex[var] = position;
+    }
+
+    private void siftDown(int position) {
+        int var = heap[position];
+        while (2 * position + 1 < heapSize) {
+            int child = 2 * position + 1;
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+                child++;
+            }
+            if (activity[heap[child]] <= activity[var]) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapIndex[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = var;
+        heapIndex[var] = position;
+    }
+
+    /**
+     * @return i-th element of the Luby sequence 1, 1, 2, 1, 1, 2, 4, ...
+     */
+    private static double luby(int i) {
+        int size = 1, sequence = 0;
+        while (size < i + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            sequence--;
+            i = i % size;
+        }
+        return Math.pow(2, sequence);
+    }
+}
@@ -0,0 +1,63 @@
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class AgreementForestBoundTest extends TestCase {
+    public void testKnownDistances() throws Exception {
+        assertEquals(0, bound("((0,1),(2,3));\n((2,3),(1,0));"));
+        assertEquals(1, bound("((0,1),(2,3));\n(((0,1),2),3);"));
+        assertEquals(2, bound("((0,1),(2,3));\n((0,2),(1,3));"));
+        assertEquals(2, bound("((0,(1,2)),((3,4),5));\n(((0,1),2),(3,(4,5)));\n((0,(1,2)),(3,(4,5)));"));
+        assertEquals(3, bound("(((((0,1),2),3),4),5);\n(0,(1,(2,(3,(4,5)))));"));
+    }
+
+    /**
+     * A tree and the tree after j random rSPR moves are at distance at most j, the bound must not exceed it.
+     */
+    public void testRandomMoves() throws Exception {
+        Random random = new Random(239);
+        for (int test = 0; test < 200; test++) {
+            int n = 4 + random.nextInt(12);
+            RandomTree tree = new RandomTree(n, random);
+            String first = tree.toNewick();
+            int moves = random.nextInt(5);
+            for (int i = 0; i < moves; i++) {
+                tree.move(random);
+            }
+            String second = tree.toNewick();
+            int bound = bound(first + "\n" + second);
+            assertTrue(first + " " + second, bound <= moves);
+            if (moves == 1) {
+                assertEquals(first + " " + second, clusters(first).equals(clusters(second)) ? 0 : 1, bound);
+            }
+        }
+    }
+
+    public void testBudget() throws Exception {
+        String trees = "(((((((0,1),2),3),4),5),6),7);\n(0,(1,(2,(3,(4,(5,(6,7)))))));";
+        assertEquals(0, new AgreementForestBound(0).lowerBound(NewickTrees.load(trees)));
+        assertTrue(new AgreementForestBound(5).lowerBound(NewickTrees.load(trees)) <= 5);
+    }
+
+    private static int bound(String newick) throws Exception {
+        return new AgreementForestBound(1_000_000).lowerBound(NewickTrees.load(newick));
+    }
+
+    private static List<String> clusters(String newick) throws Exception {
+        PhylogeneticTree tree = NewickTrees.load(newick).get(0);
+        List<String> clusters = new ArrayList<>();
+        for (int v = 0; v < tree.size(); v++) {
+            List<String> labels = new ArrayList<>();
+            for (int leaf : tree.getTaxa(v)) {
+                labels.add(tree.getLabel(leaf));
+            }
+            Collections.sort(labels);
+            clusters.add(labels.toString());
+        }
+        Collections.sort(clusters);
+        return clusters;
+    }
+}
@@ -0,0 +1,69 @@
+import cnf.AtMostOne;
+import cnf.AtMostOneEncoding;
+import cnf.ClauseArena;
+import junit.framework.TestCase;
+
+public class AtMostOneTest extends TestCase {
+    private static final String[] SPECS = {"pairwise", "sequential", "commander:2", "commander:3", "product",
+            "binary", "bimander:1", "bimander:2", "bimander:3"};
+
+    public void testParse() {
+        for (String spec : SPECS) {
+            assertEquals(spec, AtMostOne.parse(spec).getName());
+        }
+        assertEquals("bimander:2", AtMostOne.parse("bimander").getName());
+        try {
+            AtMostOne.parse("ladder");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * For every assignment of the literals the encoding must be satisfiable by some auxiliary
+     * assignment if and only if at most one literal is true.
+     */
+    public void testExhaustive() {
+        for (String spec : SPECS) {
+            AtMostOneEncoding encoding = AtMostOne.parse(spec);
+            for (int n = 0; n <= 9; n++) {
+                int auxiliaryCount = encoding.auxiliaryCount(n);
+                assertTrue(spec + " uses too many auxiliary variables for " + n, auxiliaryCount <= 14);
+                int[] literals = new int[n];
+                for (int i = 0; i < n; i++) {
+                    literals[i] = i + 1;
+                }
+                int[] auxiliary = new int[auxiliaryCount];
+                for (int i = 0; i < auxiliaryCount; i++) {
+                    auxiliary[i] = n + i + 1;
+                }
+                ClauseArena arena = new ClauseArena();
+                encoding.encode(literals, auxiliary, arena);
+                for (int mask = 0; mask < (1 << n); mask++) {
+                    boolean satisfiable = false;
+                    for (int auxMask = 0; auxMask < (1 << auxiliaryCount) && !satisfiable; auxMask++) {
+                        satisfiable = satisfies(arena, n, ((long) auxMask << n) | mask);
+                    }
+                    assertEquals(spec + " on " + n + " literals, assignment " + mask,
+                            Integer.bitCount(mask) <= 1, satisfiable);
+                }
+            }
+        }
+    }
+
+    private static boolean satisfies(ClauseArena arena, int n, long assignment) {
+        for (int c = 0; c < arena.size(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < arena.clauseLength(c) && !satisfied; i++) {
+                int literal = arena.literal(c, i);
+                boolean value = (assignment >> (Math.abs(literal) - 1) & 1) != 0;
+                satisfied = literal > 0 == value;
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
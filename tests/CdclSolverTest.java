@@ -0,0 +1,209 @@
+import cnf.ClauseArena;
+import jebl.evolution.io.NewickImporter;
+import jebl.evolution.trees.SimpleRootedTree;
+import jebl.evolution.trees.Tree;
+import junit.framework.TestCase;
+import sat.CdclSolver;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CdclSolverTest extends TestCase {
+    /**
+     * Answers on random formulas and under random assumptions must match brute force.
+     */
+    public void testRandom() {
+        Random random = new Random(239);
+        int n = 12;
+        for (int test = 0; test < 300; test++) {
+            ClauseArena arena = new ClauseArena();
+            CdclSolver solver = new CdclSolver();
+            int clauses = 20 + random.nextInt(50);
+            for (int c = 0; c < clauses; c++) {
+                int[] clause = new int[1 + random.nextInt(c % 8 == 0 ? 2 : 4)];
+                for (int i = 0; i < clause.length; i++) {
+                    clause[i] = (1 + random.nextInt(n)) * (random.nextBoolean() ? 1 : -1);
+                }
+                arena.addClause(clause);
+                solver.addClause(clause);
+            }
+            solver.ensureVariables(n);
+            for (int call = 0; call < 4; call++) {
+                int[] assumptions = new int[call];
+                for (int i = 0; i < call; i++) {
+                    int var = 1 + random.nextInt(n);
+                    assumptions[i] = random.nextBoolean() ? var : -var;
+                }
+                boolean expected = false;
+                for (int mask = 0; mask < (1 << n) && !expected; mask++) {
+                    expected = satisfies(arena, mask) && agrees(assumptions, mask);
+                }
+                CdclSolver.Status status = solver.solve(assumptions);
+                assertEquals(expected ? CdclSolver.Status.SATISFIABLE : CdclSolver.Status.UNSATISFIABLE, status);
+                if (expected) {
+                    int mask = mask(solver.getModel());
+                    assertTrue(satisfies(arena, mask));
+                    assertTrue(agrees(assumptions, mask));
+                }
+            }
+        }
+    }
+
+    /**
+     * Pigeonhole formulas need real conflict learning, clauses added later must be respected.
+     */
+    public void testPigeonhole() {
+        int holes = 6;
+        CdclSolver solver = new CdclSolver();
+        for (int p = 0; p <= holes; p++) {
+            int[] clause = new int[holes];
+            for (int h = 0; h < holes; h++) {
+                clause[h] = p * holes + h + 1;
+            }
+            solver.addClause(clause);
+        }
+        int unused = (holes + 1) * holes + 1;
+        for (int h = 0; h < holes; h++) {
+            for (int p = 0; p <= holes; p++) {
+                for (int q = p + 1; q <= holes; q++) {
+                    if (q == holes) {
+                        // the last pigeon may share a hole while the extra variable is true
+                        solver.addClause(-(p * holes + h + 1), -(q * holes + h + 1), unused);
+                    } else {
+                        solver.addClause(-(p * holes + h + 1), -(q * holes + h + 1));
+                    }
+                }
+            }
+        }
+        assertEquals(CdclSolver.Status.SATISFIABLE, solver.solve(unused));
+        assertEquals(CdclSolver.Status.UNSATISFIABLE, solver.solve(-unused));
+        assertEquals(CdclSolver.Status.SATISFIABLE, solver.solve());
+        assertTrue(solver.getModel()[unused - 1]);
+        solver.addClause(-unused);
+        assertEquals(CdclSolver.Status.UNSATISFIABLE, solver.solve());
+    }
+
+    /**
+     * Assumptions which are already true open empty levels, there may be more of them than variables.
+     */
+    public void testRepeatedAssumptions() {
+        CdclSolver solver = new CdclSolver();
+        solver.addClause(-1, 2);
+        solver.addClause(-2, 3);
+        solver.addClause(-3, 4);
+        solver.addClause(-4, 5);
+        assertEquals(CdclSolver.Status.SATISFIABLE, solver.solve(1, 2, 3, 4, 5, 5, 5, 5, 5));
+        assertTrue(solver.getModel()[4]);
+        assertEquals(CdclSolver.Status.UNSATISFIABLE, solver.solve(1, 1, 1, 1, 1, 1, 1, 1, 1, -5));
+    }
+
+    /**
+     * The incremental formula solved under assumptions gives the same minimal k as separate formulas.
+     */
+    public void testIncrementalNetworkFormula() throws Exception {
+        List<PhylogeneticTree> trees = new ArrayList<>();
+        NewickImporter importer = new NewickImporter(new StringReader(
+                "((0,(1,2)),((3,4),5));\n(((0,1),2),(3,(4,5)));\n((0,(1,2)),(3,(4,5)));"), false);
+        for (Tree tree : importer.importTrees()) {
+            PhylogeneticTree phTree = new PhylogeneticTree((SimpleRootedTree) tree);
+            phTree.addFictitiousRoot();
+            trees.add(phTree);
+        }
+        int maxK = 4;
+        FormulaBuilder incremental = new FormulaBuilder(trees, maxK, false, true);
+        incremental.setIncremental(true);
+        CdclSolver incrementalSolver = new CdclSolver();
+        incremental.buildCNF(incrementalSolver);
+
+        int answer = -1;
+        for (int k = 0; k <= maxK && answer < 0; k++) {
+            FormulaBuilder builder = new FormulaBuilder(trees, k, false, true);
+            ClauseArena formula = builder.buildCNF();
+            CdclSolver solver = new CdclSolver();
+            formula.writeTo(solver);
+            CdclSolver.Status status = solver.solve();
+            assertEquals("k = " + k, status, incrementalSolver.solve(incremental.getAssumptions(k)));
+            if (status == CdclSolver.Status.SATISFIABLE) {
+                solver.ensureVariables(builder.getVariablesCount());
+                assertTrue(satisfies(formula, solver.getModel()));
+                answer = k;
+            }
+        }
+        assertEquals(2, answer);
+    }
+
+    /**
+     * Linear SAT-UNSAT search bounding the number of active nodes ends at the same minimal k.
+     */
+    public void testBoundedNetworkFormula() throws Exception {
+        List<PhylogeneticTree> trees = new ArrayList<>();
+        NewickImporter importer = new NewickImporter(new StringReader(
+                "((0,(1,2)),((3,4),5));\n(((0,1),2),(3,(4,5)));\n((0,(1,2)),(3,(4,5)));"), false);
+        for (Tree tree : importer.importTrees()) {
+            PhylogeneticTree phTree = new PhylogeneticTree((SimpleRootedTree) tree);
+            phTree.addFictitiousRoot();
+            trees.add(phTree);
+        }
+        int maxK = 4;
+        FormulaBuilder incremental = new FormulaBuilder(trees, maxK, false, true);
+        incremental.setIncremental(true);
+        CdclSolver solver = new CdclSolver();
+        incremental.buildCNF(solver);
+        solver.ensureVariables(incremental.getVariablesCount());
+
+        int best = maxK + 1;
+        while (solver.solve(incremental.getBoundAssumptions(best - 1)) == CdclSolver.Status.SATISFIABLE) {
+            int k = incremental.getActiveCount(solver.getModel());
+            assertTrue(k < best);
+            best = k;
+        }
+        assertEquals(2, best);
+    }
+
+    private static boolean agrees(int[] assumptions, int mask) {
+        for (int literal : assumptions) {
+            if (literal > 0 != ((mask >> (Math.abs(literal) - 1) & 1) != 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mask(boolean[] model) {
+        int mask = 0;
+        for (int i = 0; i < model.length; i++) {
+            mask |= model[i] ? 1 << i : 0;
+        }
+        return mask;
+    }
+
+    private static boolean satisfies(ClauseArena arena, int assignment) {
+        for (int c = 0; c < arena.size(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < arena.clauseLength(c) && !satisfied; i++) {
+                int literal = arena.literal(c, i);
+                satisfied = literal > 0 == ((assignment >> (Math.abs(literal) - 1) & 1) != 0);
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean satisfies(ClauseArena arena, boolean[] model) {
+        for (int c = 0; c < arena.size(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < arena.clauseLength(c) && !satisfied; i++) {
+                int literal = arena.literal(c, i);
+                satisfied = literal > 0 == model[Math.abs(literal) - 1];
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
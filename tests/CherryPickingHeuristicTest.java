@@ -0,0 +1,50 @@
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+
+public class CherryPickingHeuristicTest extends TestCase {
+    public void testSameTrees() throws Exception {
+        List<PhylogeneticTree> trees = NewickTrees.load("((0,1),(2,(3,4)));\n((2,(4,3)),(1,0));");
+        PhylogeneticNetwork network = new CherryPickingHeuristic(trees).build();
+        assertEquals(0, network.getK());
+        assertTrue(network.displays(trees.get(0)));
+    }
+
+    /**
+     * Trees made by a few rSPR moves from one tree must all be displayed, with no fewer reticulations
+     * than the lower bound. The heuristic may need more reticulations than the moves made, but not
+     * on the whole.
+     */
+    public void testRandomTrees() throws Exception {
+        Random random = new Random(239);
+        int totalK = 0, totalMoves = 0;
+        for (int test = 0; test < 100; test++) {
+            RandomTree tree = new RandomTree(3 + random.nextInt(10), random);
+            StringBuilder newick = new StringBuilder(tree.toNewick());
+            int count = 2 + random.nextInt(3), moves = 0;
+            for (int i = 1; i < count; i++) {
+                int treeMoves = random.nextInt(3);
+                for (int j = 0; j < treeMoves; j++) {
+                    tree.move(random);
+                }
+                moves += treeMoves;
+                newick.append("\n").append(tree.toNewick());
+            }
+            List<PhylogeneticTree> trees = NewickTrees.load(newick.toString());
+            if (test % 2 == 0) {
+                for (PhylogeneticTree phTree : trees) {
+                    phTree.addFictitiousRoot();
+                }
+            }
+            PhylogeneticNetwork network = new CherryPickingHeuristic(trees).build();
+            assertTrue(newick.toString(), network.getK() >= new AgreementForestBound(1_000_000).lowerBound(trees));
+            totalK += network.getK();
+            totalMoves += moves;
+            for (PhylogeneticTree phTree : trees) {
+                assertTrue(newick.toString(), network.displays(phTree));
+            }
+        }
+        assertTrue(totalK + " > " + totalMoves, totalK <= totalMoves);
+    }
+}
@@ -0,0 +1,53 @@
+import cnf.BinaryCnfFormat;
+import cnf.ClauseArena;
+import cnf.DimacsFileSink;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class ClauseArenaTest extends TestCase {
+    private ClauseArena sample() {
+        ClauseArena arena = new ClauseArena(2, 1);
+        arena.comment("first");
+        arena.addClause(1, -2, 3);
+        arena.addClause(-1);
+        arena.comment("second");
+        arena.addClause(2, 3);
+        arena.comment("last");
+        return arena;
+    }
+
+    public void testDimacs() throws Exception {
+        File file = File.createTempFile("arena", ".cnf");
+        try {
+            DimacsFileSink sink = new DimacsFileSink(file);
+            sample().writeTo(sink);
+            sink.finish(3);
+            List<String> lines = Files.readAllLines(file.toPath());
+            assertEquals(Arrays.asList("p cnf 3 3", "c first", "1 -2 3 0", "-1 0", "c second", "2 3 0", "c last"),
+                    Arrays.asList(lines.get(0).trim(), lines.get(1), lines.get(2), lines.get(3), lines.get(4),
+                            lines.get(5), lines.get(6)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testBinaryRoundTrip() throws Exception {
+        File file = File.createTempFile("arena", ".bcnf");
+        try {
+            ClauseArena arena = sample();
+            BinaryCnfFormat.write(arena, 3, file);
+            ClauseArena read = BinaryCnfFormat.read(file);
+            assertEquals(3, BinaryCnfFormat.readVariablesCount(file));
+            assertEquals(arena.size(), read.size());
+            for (int i = 0; i < arena.size(); i++) {
+                assertTrue(Arrays.equals(arena.getClause(i), read.getClause(i)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+public class CryptominisatPortTest extends TestCase {
+    public void testReadModel() throws Exception {
+        String output = "c solver banner\ns SATISFIABLE\nv 1 -2 3\nv -5 6\nv -7 0";
+        StringWriter echo = new StringWriter();
+        StringBuilder rest = new StringBuilder();
+        boolean[] model = CryptominisatPort.readModel(new ByteArrayInputStream(output.getBytes()),
+                new PrintWriter(echo, true), rest);
+        assertTrue(Arrays.equals(new boolean[]{true, false, true, true, false, true, false}, model));
+        assertEquals("c solver banner\ns SATISFIABLE\n", rest.toString());
+        assertEquals((output + "\n").replace("\n", System.lineSeparator()), echo.toString());
+    }
+
+    public void testReadLargeModel() throws Exception {
+        StringBuilder output = new StringBuilder("s SATISFIABLE\n");
+        int n = 100_000;
+        for (int var = 1; var <= n; var++) {
+            output.append(var % 10 == 1 ? "v " : "").append(var % 3 == 0 ? -var : var)
+                    .append(var % 10 == 0 ? "\n" : " ");
+        }
+        output.append("v 0\n");
+        boolean[] model = CryptominisatPort.readModel(new ByteArrayInputStream(output.toString().getBytes()),
+                null, new StringBuilder());
+        assertEquals(n, model.length);
+        for (int var = 1; var <= n; var++) {
+            assertEquals(var % 3 != 0, model[var - 1]);
+        }
+    }
+
+    public void testUnsatisfiable() throws Exception {
+        assertNull(CryptominisatPort.readModel(new ByteArrayInputStream("s UNSATISFIABLE\n".getBytes()),
+                null, new StringBuilder()));
+    }
+
+    public void testReadStatistics() {
+        String cryptominisat = "c restarts : 12\nc conflicts : 4196 (3225.79 / sec)\n"
+                + "c decisions : 5312 (0.00 % random)\nc propagations : 2.43 M (1.87 M / sec)\n"
+                + "c Total time (this thread) : 1.30\ns SATISFIABLE\n";
+        assertTrue(Arrays.equals(new long[]{4196, 5312, 2_430_000, 1300},
+                CryptominisatPort.readStatistics(cryptominisat)));
+        String minisat = "conflicts             : 17             (1700 /sec)\nCPU time              : 0.01 s\n";
+        assertTrue(Arrays.equals(new long[]{17, -1, -1, 10}, CryptominisatPort.readStatistics(minisat)));
+    }
+
+    /**
+     * A writer which fails leaves no clause cut in the middle.
+     */
+    public void testCompleteLines() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CryptominisatPort.LineOutputStream lines = new CryptominisatPort.LineOutputStream(out);
+        StringBuilder clauses = new StringBuilder();
+        for (int i = 1; i <= 20000; i++) {
+            clauses.append(i).append(" -").append(i + 1).append(" 0\n");
+        }
+        lines.write(clauses.toString().getBytes());
+        lines.write("7 8".getBytes());
+        String written = out.toString();
+        assertTrue(written.isEmpty() || written.endsWith(" 0\n"));
+        assertTrue(clauses.toString().startsWith(written));
+        lines.finish();
+        assertEquals(clauses + "7 8", out.toString());
+    }
+}
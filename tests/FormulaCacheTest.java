@@ -0,0 +1,78 @@
+import cnf.ClauseArena;
+import cnf.FormulaCache;
+import cnf.Simplifier;
+import cnf.VariableRegistry;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class FormulaCacheTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("formulas").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        VariableRegistry vars = new VariableRegistry();
+        VariableRegistry.Family x = vars.family("x", 4);
+        for (int i = 0; i < 4; i++) {
+            vars.create(x, i);
+        }
+        ClauseArena original = new ClauseArena();
+        original.addClause(1);
+        original.addClause(-1, 2, 3);
+        original.addClause(-3, 4);
+        original.addClause(-4, -2);
+        Simplifier simplifier = new Simplifier(original, 4);
+
+        FormulaCache cache = new FormulaCache(directory, 1 << 20);
+        String key = FormulaCache.key("formula");
+        assertNull(cache.get(key));
+        cache.put(key, simplifier.getFormula(), simplifier.getVariablesCount(), vars, simplifier);
+        FormulaCache.Entry entry = cache.get(key);
+        assertNotNull(entry);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(entry.getFormulaFile()))))) {
+            assertEquals("p cnf " + simplifier.getVariablesCount() + " " + simplifier.getFormula().size(),
+                    reader.readLine());
+        }
+        assertEquals(vars.asMap(), entry.getVariableMap());
+        boolean[] model = {true, false, true};
+        assertTrue(Arrays.equals(simplifier.lift(model), entry.lift(model)));
+    }
+
+    public void testEviction() throws Exception {
+        VariableRegistry vars = new VariableRegistry();
+        vars.create(vars.family("x", 1), 0);
+        ClauseArena formula = new ClauseArena();
+        formula.addClause(1);
+
+        FormulaCache cache = new FormulaCache(directory, 1 << 20);
+        cache.put("a", formula, 1, vars, null);
+        long entrySize = cache.size();
+        cache = new FormulaCache(directory, 2 * entrySize);
+        cache.put("b", formula, 1, vars, null);
+        cache.get("a").getFormulaFile().setLastModified(System.currentTimeMillis() + 10_000);
+        cache.put("c", formula, 1, vars, null);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2 * entrySize, cache.size());
+    }
+}
@@ -0,0 +1,36 @@
+import cnf.ClauseArena;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class FormulaSizeEstimatorTest extends TestCase {
+    public void testExactCounts() throws Exception {
+        List<PhylogeneticTree> trees = NewickTrees.load(
+                "((0,(1,2)),((3,4),5));\n(((0,1),2),(3,(4,5)));\n((0,3),((1,4),(2,5)));");
+        for (PhylogeneticTree tree : trees) {
+            tree.addFictitiousRoot();
+        }
+        String[] encodings = {null, "*=pairwise", "*=sequential", "*=commander:3", "*=product", "x=binary,up=bimander:3"};
+        for (int k = 0; k <= 3; k++) {
+            for (String encoding : encodings) {
+                for (SymmetryBreaking symmetryBreaking : SymmetryBreaking.values()) {
+                    for (boolean incremental : new boolean[]{false, true}) {
+                        FormulaBuilder builder = new FormulaBuilder(trees, k, false, true);
+                        if (encoding != null) {
+                            builder.setAtMostOneEncodings(encoding);
+                        }
+                        builder.setSymmetryBreaking(symmetryBreaking);
+                        builder.setIncremental(incremental);
+                        FormulaSizeEstimator estimator = new FormulaSizeEstimator(builder);
+                        ClauseArena formula = builder.buildCNF();
+
+                        String config = k + " " + encoding + " " + symmetryBreaking + " " + incremental;
+                        assertEquals(config, builder.getVariablesCount(), estimator.getVariablesCount());
+                        assertEquals(config, builder.getClausesCount(), estimator.getClausesCount());
+                        assertEquals(config, formula.getLiteralsCount(), estimator.getLiteralsCount());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class KSearchSchedulerTest extends TestCase {
+    private static final Logger LOGGER = Logger.getLogger("KSearchSchedulerTest");
+
+    /**
+     * k >= answer is SAT, every call takes work[k] ms and times out if the limit is smaller.
+     */
+    private static KSearchScheduler.Solver solver(int answer, long[] work, List<Integer> cancelled) {
+        return (k, timeLimit) -> {
+            long start = System.currentTimeMillis();
+            try {
+                Thread.sleep(Math.min(work[k], timeLimit));
+            } catch (InterruptedException e) {
+                cancelled.add(k);
+                return SolveResult.of(SolveResult.Status.CANCELLED, System.currentTimeMillis() - start);
+            }
+            if (work[k] > timeLimit) {
+                return SolveResult.of(SolveResult.Status.TIMEOUT, timeLimit);
+            }
+            return k >= answer ? sat(k, work[k]) : SolveResult.of(SolveResult.Status.UNSAT, work[k]);
+        };
+    }
+
+    private static SolveResult sat(int k, long time) {
+        return new SolveResult(SolveResult.Status.SAT, new boolean[0], time, -1, -1, -1, -1, null)
+                .withNetwork(new PhylogeneticNetwork(new ArrayList<>(), new ArrayList<>(), k));
+    }
+
+    public void testMinimalK() throws Exception {
+        long[] work = {10, 10, 30, 20, 5, 5, 5};
+        for (int jobs = 1; jobs <= 4; jobs++) {
+            List<Integer> cancelled = Collections.synchronizedList(new ArrayList<>());
+            KSearchScheduler scheduler = new KSearchScheduler(solver(3, work, cancelled), jobs, LOGGER);
+            assertEquals(3, scheduler.search(0, 6, 100, 1000).getK());
+        }
+    }
+
+    public void testCancellation() throws Exception {
+        // k = 0 is hard, UNSAT of k = 1 decides it and SAT of k = 2 decides everything above
+        long[] work = {60_000, 10, 50, 60_000, 60_000};
+        List<Integer> cancelled = Collections.synchronizedList(new ArrayList<>());
+        KSearchScheduler scheduler = new KSearchScheduler(solver(2, work, cancelled), 5, LOGGER);
+        long start = System.currentTimeMillis();
+        assertEquals(2, scheduler.search(0, 4, 100_000, 100_000).getK());
+        assertTrue(System.currentTimeMillis() - start < 10_000);
+        Collections.sort(cancelled);
+        assertEquals(Arrays.asList(0, 3, 4), cancelled);
+    }
+
+    public void testAdaptiveTimeLimits() throws Exception {
+        // k = 1 needs the largest limit, SAT everywhere above is found with short ones
+        long[] work = {5, 2_500, 5, 5};
+        List<Integer> cancelled = Collections.synchronizedList(new ArrayList<>());
+        KSearchScheduler scheduler = new KSearchScheduler(solver(2, work, cancelled), 2, LOGGER);
+        assertEquals(2, scheduler.search(0, 3, 30, 3_000).getK());
+        assertNull(new KSearchScheduler(solver(5, work, cancelled), 2, LOGGER).search(0, 3, 30, 300));
+    }
+
+    public void testErrors() throws Exception {
+        // the first call for k = 1 fails, the retry proves it UNSAT
+        AtomicInteger calls = new AtomicInteger();
+        KSearchScheduler.Solver flaky = (k, timeLimit) -> k == 1 && calls.getAndIncrement() == 0
+                ? SolveResult.of(SolveResult.Status.ERROR, 0)
+                : k >= 2 ? sat(k, 0) : SolveResult.of(SolveResult.Status.UNSAT, 0);
+        assertEquals(2, new KSearchScheduler(flaky, 1, LOGGER).search(0, 3, 100, 100).getK());
+
+        // larger k time out, so k = 1 is not proved UNSAT by them
+        KSearchScheduler.Solver broken = (k, timeLimit) -> SolveResult.of(k == 0 ? SolveResult.Status.UNSAT
+                : k == 1 ? SolveResult.Status.ERROR : SolveResult.Status.TIMEOUT, timeLimit);
+        try {
+            new KSearchScheduler(broken, 2, LOGGER).search(0, 3, 100, 100);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("k = 1"));
+        }
+    }
+
+    public void testGivenUp() throws Exception {
+        // k = 2 is hard, so SAT of k = 3 is not proved minimal
+        long[] work = {5, 5, 60_000, 5, 5};
+        List<Integer> cancelled = Collections.synchronizedList(new ArrayList<>());
+        KSearchScheduler scheduler = new KSearchScheduler(solver(2, work, cancelled), 2, LOGGER);
+        assertEquals(3, scheduler.search(0, 4, 10, 100).getK());
+        assertFalse(scheduler.isMinimal());
+
+        // UNSAT of k = 3 decides the hard k = 2
+        scheduler = new KSearchScheduler(solver(4, work, cancelled), 2, LOGGER);
+        assertEquals(4, scheduler.search(0, 4, 10, 100).getK());
+        assertTrue(scheduler.isMinimal());
+
+        assertNull(scheduler.search(0, 2, 10, 100));
+        assertFalse(scheduler.isMinimal());
+    }
+}
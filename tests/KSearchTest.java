@@ -0,0 +1,97 @@
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class KSearchTest extends TestCase {
+    private static final Logger LOGGER = Logger.getLogger("KSearchTest");
+
+    /**
+     * k >= answer is SAT, k in hard times out, every call is logged to calls.
+     */
+    private static KSearchScheduler.Solver solver(int answer, List<Integer> hard, List<Integer> calls) {
+        return (k, timeLimit) -> {
+            calls.add(k);
+            if (hard.contains(k)) {
+                return SolveResult.of(SolveResult.Status.TIMEOUT, timeLimit);
+            }
+            if (k < answer) {
+                return SolveResult.of(SolveResult.Status.UNSAT, 1);
+            }
+            return new SolveResult(SolveResult.Status.SAT, new boolean[0], 1, -1, -1, -1, -1, null)
+                    .withNetwork(network(k));
+        };
+    }
+
+    private static PhylogeneticNetwork network(int k) {
+        return new PhylogeneticNetwork(new ArrayList<>(), new ArrayList<>(), k);
+    }
+
+    public void testMinimalK() throws Exception {
+        for (KSearchStrategy strategy : KSearchStrategy.values()) {
+            for (int answer = 2; answer <= 12; answer++) {
+                List<Integer> calls = new ArrayList<>();
+                KSearchMemo memo = new KSearch(solver(answer, Collections.emptyList(), calls), LOGGER)
+                        .search(strategy, 2, network(12), 0, 10, 100);
+                assertEquals(strategy + " " + calls, answer, memo.getBest().getK());
+                assertTrue(memo.isMinimal());
+                assertEquals(answer == 12, memo.isUpperBest());
+            }
+        }
+    }
+
+    /**
+     * Descending proves UNSAT once, galloping and bisection a logarithmic number of times.
+     */
+    public void testUnsatCalls() throws Exception {
+        for (int answer = 3; answer <= 20; answer++) {
+            int[] unsat = new int[KSearchStrategy.values().length];
+            for (KSearchStrategy strategy : KSearchStrategy.values()) {
+                KSearchMemo memo = new KSearch(solver(answer, Collections.emptyList(), new ArrayList<>()), LOGGER)
+                        .search(strategy, 0, network(21), 0, 10, 100);
+                unsat[strategy.ordinal()] = memo.getUnsatCalls();
+            }
+            // the short call for the lower bound is UNSAT as well
+            assertEquals(answer, unsat[KSearchStrategy.ASCENDING.ordinal()]);
+            assertEquals(2, unsat[KSearchStrategy.DESCENDING.ordinal()]);
+            assertTrue(unsat[KSearchStrategy.GALLOPING.ordinal()] <= 1 + 5);
+            assertTrue(unsat[KSearchStrategy.BISECTION.ordinal()] <= 1 + 5);
+        }
+    }
+
+    public void testShortCallsDecide() throws Exception {
+        List<Integer> calls = new ArrayList<>();
+        KSearchMemo memo = new KSearch(solver(4, Collections.emptyList(), calls), LOGGER)
+                .search(KSearchStrategy.DESCENDING, 2, network(10), 3, 10, 100);
+        assertEquals(4, memo.getBest().getK());
+        assertEquals(Arrays.asList(2, 3, 4), calls);
+    }
+
+    public void testGivenUp() throws Exception {
+        List<Integer> calls = new ArrayList<>();
+        KSearchMemo memo = new KSearch(solver(3, Arrays.asList(3, 4), calls), LOGGER)
+                .search(KSearchStrategy.DESCENDING, 0, network(6), 0, 10, 100);
+        assertEquals(5, memo.getBest().getK());
+        assertFalse(memo.isMinimal());
+        assertEquals(Arrays.asList(0, 5, 4, 3, 2), calls);
+
+        calls.clear();
+        memo = new KSearch(solver(3, Collections.singletonList(4), calls), LOGGER)
+                .search(KSearchStrategy.ASCENDING, 0, network(6), 0, 10, 100);
+        assertEquals(3, memo.getBest().getK());
+        assertTrue(memo.isMinimal());
+        assertEquals(Arrays.asList(0, 1, 2, 3), calls);
+    }
+
+    public void testChoose() {
+        KSearchMemo memo = new KSearchMemo(2, network(5));
+        assertEquals(KSearchStrategy.DESCENDING, KSearchStrategy.choose(memo));
+        memo = new KSearchMemo(2, network(10));
+        assertEquals(KSearchStrategy.BISECTION, KSearchStrategy.choose(memo));
+        memo.record(2, SolveResult.of(SolveResult.Status.TIMEOUT, 10));
+        assertEquals(KSearchStrategy.GALLOPING, KSearchStrategy.choose(memo));
+    }
+}
@@ -0,0 +1,23 @@
+import jebl.evolution.io.NewickImporter;
+import jebl.evolution.trees.SimpleRootedTree;
+import jebl.evolution.trees.Tree;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trees of a Newick string, one per line, loaded as the input trees are.
+ */
+class NewickTrees {
+    private NewickTrees() {
+    }
+
+    static List<PhylogeneticTree> load(String newick) throws Exception {
+        List<PhylogeneticTree> trees = new ArrayList<>();
+        for (Tree tree : new NewickImporter(new StringReader(newick), false).importTrees()) {
+            trees.add(new PhylogeneticTree((SimpleRootedTree) tree));
+        }
+        return trees;
+    }
+}
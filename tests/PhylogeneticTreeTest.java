@@ -5,6 +5,7 @@ import junit.framework.TestCase;
 
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class PhylogeneticTreeTest extends TestCase {
@@ -32,4 +33,42 @@ public class PhylogeneticTreeTest extends TestCase {
                     originalTrees.get(i), originalTrees.get(i).size() - 1));
         }
     }
-}
\ No newline at end of file
+
+    public void testCanonicalNumbering() throws Exception {
+        String s = "((0,(1,2)),((3,4),(5,(6,7))));\n((((7,6),5),(4,3)),((2,1),0));";
+        List<PhylogeneticTree> trees = new ArrayList<>();
+        for (Tree tree : new NewickImporter(new StringReader(s), false).importTrees()) {
+            trees.add(new PhylogeneticTree((SimpleRootedTree) tree));
+        }
+        PhylogeneticTree first = trees.get(0);
+        PhylogeneticTree second = trees.get(1);
+        assertEquals(first.size(), second.size());
+        for (int node = 0; node < first.size(); node++) {
+            assertEquals(first.getParent(node), second.getParent(node));
+            assertEquals(first.getChildren(node), second.getChildren(node));
+        }
+        for (int taxon = 0; taxon < first.getTaxaSize(); taxon++) {
+            assertEquals(first.getLabel(taxon), second.getLabel(taxon));
+        }
+    }
+
+    public void testCluster() throws Exception {
+        NewickImporter importer = new NewickImporter(new StringReader("((0,(1,2)),(3,4));"), false);
+        PhylogeneticTree tree = new PhylogeneticTree((SimpleRootedTree) importer.importTrees().get(0));
+        for (int step = 0; step < 3; step++) {
+            for (int node = 0; node < tree.size(); node++) {
+                List<Integer> taxa = tree.getTaxa(node);
+                BitSet cluster = tree.getCluster(node);
+                assertEquals(taxa.size(), cluster.cardinality());
+                for (int taxon : taxa) {
+                    assertTrue(cluster.get(taxon));
+                }
+            }
+            if (step == 0) {
+                tree.addFictitiousRoot();
+            } else if (step == 1) {
+                tree.removeFictitiousRoot();
+            }
+        }
+    }
+}
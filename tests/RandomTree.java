@@ -0,0 +1,82 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random rooted binary tree on taxa 0, ..., n - 1 which can be changed by rSPR moves.
+ */
+class RandomTree {
+    final int[] parent;
+
+    final int[][] children;
+
+    int root;
+
+    RandomTree(int n, Random random) {
+        parent = new int[2 * n - 1];
+        children = new int[2 * n - 1][];
+        List<Integer> roots = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            roots.add(v);
+        }
+        for (int v = n; v < 2 * n - 1; v++) {
+            int a = roots.remove(random.nextInt(roots.size()));
+            int b = roots.remove(random.nextInt(roots.size()));
+            children[v] = new int[]{a, b};
+            parent[a] = parent[b] = v;
+            roots.add(v);
+        }
+        root = roots.get(0);
+        parent[root] = -1;
+    }
+
+    /**
+     * Prunes a subtree and regrafts it onto an edge outside of it or above the root.
+     */
+    void move(Random random) {
+        int x;
+        do {
+            x = random.nextInt(parent.length);
+        } while (x == root);
+        int p = parent[x], s = children[p][children[p][0] == x ? 1 : 0], g = parent[p];
+        parent[s] = g;
+        if (g == -1) {
+            root = s;
+        } else {
+            children[g][children[g][0] == p ? 0 : 1] = s;
+        }
+        int y;
+        do {
+            y = random.nextInt(parent.length);
+        } while (y == p || inSubtree(y, x));
+        int yParent = parent[y];
+        parent[p] = yParent;
+        if (yParent == -1) {
+            root = p;
+        } else {
+            children[yParent][children[yParent][0] == y ? 0 : 1] = p;
+        }
+        children[p] = new int[]{x, y};
+        parent[x] = parent[y] = p;
+    }
+
+    private boolean inSubtree(int v, int subtreeRoot) {
+        for (; v != -1; v = parent[v]) {
+            if (v == subtreeRoot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String toNewick() {
+        return toNewick(root) + ";";
+    }
+
+    private String toNewick(int v) {
+        if (children[v] == null) {
+            return String.valueOf(v);
+        }
+        return "(" + toNewick(children[v][0]) + "," + toNewick(children[v][1]) + ")";
+    }
+}
@@ -0,0 +1,68 @@
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class SearchJournalTest extends TestCase {
+    private static final String TREES = "(('a b',(c,d)),((e,f),g));\n((('a b',c),d),(e,(f,g)));\n"
+            + "(('a b',(c,d)),(e,(f,g)));";
+
+    public void testResume() throws Exception {
+        File file = Files.createTempFile("journal-test", ".txt").toFile();
+        List<PhylogeneticTree> trees = NewickTrees.load(TREES);
+        String key = SearchJournal.key(trees, false);
+        PhylogeneticNetwork network = new CherryPickingHeuristic(trees).build();
+
+        SearchJournal journal = new SearchJournal(file, false);
+        journal.recordUnsat(key, 0, 10);
+        journal.recordUnsat(key, 1, 20);
+        journal.recordSat(key, network, 30);
+        assertEquals(1, journal.get(key).getMaxUnsat());
+        assertNull(journal.get(key).getSolved());
+
+        journal = new SearchJournal(file, true);
+        SearchJournal.Entry entry = journal.get(key);
+        assertEquals(1, entry.getMaxUnsat());
+        assertEquals(30, entry.getUnsatTime());
+        assertEquals(network.getK(), entry.getBest().getK());
+        for (PhylogeneticTree tree : trees) {
+            assertTrue(entry.getBest().displays(tree));
+        }
+        journal.recordSolved(key, network);
+        assertEquals(network.serialize(), new SearchJournal(file, true).get(key).getSolved().serialize());
+
+        assertNull(new SearchJournal(file, false).get(key));
+        assertTrue(file.delete());
+    }
+
+    /**
+     * The last line cut by a crash is skipped and the next fact is not glued to it.
+     */
+    public void testCutLine() throws Exception {
+        File file = Files.createTempFile("journal-test", ".txt").toFile();
+        String key = SearchJournal.key(NewickTrees.load(TREES), false);
+        new SearchJournal(file, false).recordUnsat(key, 2, 10);
+        Files.write(file.toPath(), ("unsat " + key + " 5").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        SearchJournal journal = new SearchJournal(file, true);
+        assertEquals(1, journal.getSkippedLines());
+        assertEquals(2, journal.get(key).getMaxUnsat());
+        journal.recordUnsat(key, 3, 10);
+        journal = new SearchJournal(file, true);
+        assertEquals(1, journal.getSkippedLines());
+        assertEquals(3, journal.get(key).getMaxUnsat());
+        assertTrue(file.delete());
+    }
+
+    public void testKey() throws Exception {
+        String key = SearchJournal.key(NewickTrees.load(TREES), false);
+        assertEquals(key, SearchJournal.key(NewickTrees.load(TREES), false));
+        assertFalse(key.equals(SearchJournal.key(NewickTrees.load(TREES), true)));
+        assertFalse(key.equals(SearchJournal.key(
+                NewickTrees.load("(('a b',(c,d)),((e,f),g));\n((('a b',c),d),(e,(f,g)));"), false)));
+    }
+}
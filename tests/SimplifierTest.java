@@ -0,0 +1,96 @@
+import cnf.ClauseArena;
+import cnf.Simplifier;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class SimplifierTest extends TestCase {
+    public void testSimple() {
+        ClauseArena arena = new ClauseArena();
+        arena.addClause(1);
+        arena.addClause(-1, 2);
+        arena.addClause(-2, 3, 4);
+        arena.addClause(3, -4);
+        arena.addClause(-4, 3);
+        arena.addClause(3, -4, 5);
+        arena.addClause(-5, 6);
+        Simplifier simplifier = new Simplifier(arena, 6);
+        assertFalse(simplifier.isUnsatisfiable());
+        assertEquals(2, simplifier.getFixedCount());
+        assertEquals(3, simplifier.getFormula().size());
+        assertEquals(4, simplifier.getVariablesCount());
+        assertEquals(1, simplifier.fixedValue(2));
+        assertEquals(0, simplifier.newVariable(1));
+        assertEquals(1, simplifier.newVariable(3));
+    }
+
+    public void testUnsatisfiable() {
+        ClauseArena arena = new ClauseArena();
+        arena.addClause(1, 2);
+        arena.addClause(-1);
+        arena.addClause(-2, 3);
+        arena.addClause(-3);
+        assertTrue(new Simplifier(arena, 3).isUnsatisfiable());
+    }
+
+    /**
+     * Simplified random formulas must be equisatisfiable and lifted models must satisfy the original.
+     */
+    public void testRandom() {
+        Random random = new Random(239);
+        int n = 10;
+        for (int test = 0; test < 500; test++) {
+            ClauseArena arena = new ClauseArena();
+            int clauses = 5 + random.nextInt(35);
+            for (int c = 0; c < clauses; c++) {
+                int[] clause = new int[1 + random.nextInt(c % 4 == 0 ? 2 : 4)];
+                for (int i = 0; i < clause.length; i++) {
+                    clause[i] = (1 + random.nextInt(n)) * (random.nextBoolean() ? 1 : -1);
+                }
+                arena.addClause(clause);
+            }
+            Simplifier simplifier = new Simplifier(arena, n);
+            ClauseArena simplified = simplifier.getFormula();
+            boolean originalSatisfiable = false;
+            for (int mask = 0; mask < (1 << n); mask++) {
+                originalSatisfiable |= satisfies(arena, mask);
+            }
+            if (simplifier.isUnsatisfiable()) {
+                assertFalse(originalSatisfiable);
+                continue;
+            }
+            int m = simplifier.getVariablesCount();
+            boolean simplifiedSatisfiable = false;
+            for (int mask = 0; mask < (1 << m); mask++) {
+                if (satisfies(simplified, mask)) {
+                    simplifiedSatisfiable = true;
+                    boolean[] model = new boolean[m];
+                    for (int i = 0; i < m; i++) {
+                        model[i] = (mask >> i & 1) != 0;
+                    }
+                    boolean[] lifted = simplifier.lift(model);
+                    int liftedMask = 0;
+                    for (int i = 0; i < lifted.length; i++) {
+                        liftedMask |= lifted[i] ? 1 << i : 0;
+                    }
+                    assertTrue(satisfies(arena, liftedMask));
+                }
+            }
+            assertEquals(originalSatisfiable, simplifiedSatisfiable);
+        }
+    }
+
+    private static boolean satisfies(ClauseArena arena, int assignment) {
+        for (int c = 0; c < arena.size(); c++) {
+            boolean satisfied = false;
+            for (int i = 0; i < arena.clauseLength(c) && !satisfied; i++) {
+                int literal = arena.literal(c, i);
+                satisfied = literal > 0 == ((assignment >> (Math.abs(literal) - 1) & 1) != 0);
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class SubtaskSearchTest extends TestCase {
+    private static final Logger LOGGER = Logger.getLogger("SubtaskSearchTest");
+
+    private static final String TREES = "((a,(b,c)),((d,e),f));\n(((a,b),c),(d,(e,f)));\n((a,(b,c)),(d,(e,f)));";
+
+    /**
+     * Every k below the heuristic network is UNSAT, the solved subtask is restored by the next run.
+     */
+    public void testJournal() throws Exception {
+        File file = Files.createTempFile("journal-test", ".txt").toFile();
+        List<PhylogeneticTree> trees = NewickTrees.load(TREES);
+        int heuristicK = new CherryPickingHeuristic(trees).build().getK();
+        assertTrue(heuristicK > 0);
+        List<Integer> calls = new ArrayList<>();
+        SubtaskSearch search = new SubtaskSearch(LOGGER, 0, KSearchStrategy.ASCENDING,
+                new SearchJournal(file, false), false);
+        PhylogeneticNetwork network = search.solve(trees, (k, timeLimit) -> {
+            calls.add(k);
+            return SolveResult.of(SolveResult.Status.UNSAT, 1);
+        });
+        assertEquals(heuristicK, network.getK());
+        assertEquals(heuristicK, calls.size());
+
+        search = new SubtaskSearch(LOGGER, 0, null, new SearchJournal(file, true), false);
+        network = search.solve(NewickTrees.load(TREES), (k, timeLimit) -> {
+            throw new AssertionError("Solved subtask is searched again");
+        });
+        assertEquals(heuristicK, network.getK());
+        assertTrue(file.delete());
+    }
+}
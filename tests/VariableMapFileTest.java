@@ -0,0 +1,36 @@
+import cnf.VariableMapFile;
+import cnf.VariableRegistry;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class VariableMapFileTest extends TestCase {
+    public void testRoundTrip() throws Exception {
+        VariableRegistry vars = new VariableRegistry();
+        VariableRegistry.Family parent = vars.family("parent", 4, 4);
+        VariableRegistry.Family act = vars.family("act", 2);
+        VariableRegistry.Family x = vars.family("x", 2, 3, 5);
+        vars.create(parent, 1, 3);
+        vars.create(x, 1, 2, 4);
+        vars.exclude(x, 0, 0, 0);
+        vars.create(act, 1);
+        vars.create(parent, 0, 2);
+        vars.create(x, 0, 1, 0);
+
+        File file = File.createTempFile("vars", ".map");
+        try {
+            VariableMapFile.write(vars, file);
+            VariableMapFile map = VariableMapFile.open(file);
+            assertEquals(vars.size(), map.getVariablesCount());
+            assertEquals(3, map.getFamiliesCount());
+            for (int var = 1; var <= vars.size(); var++) {
+                assertEquals(vars.nameOf(var), map.nameOf(var));
+                assertTrue(Arrays.equals(vars.getParams(var), map.getParams(var)));
+                assertEquals(vars.getFamily(var).getName(), map.getFamilyName(map.familyOf(var)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
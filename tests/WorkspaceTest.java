@@ -0,0 +1,43 @@
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+public class WorkspaceTest extends TestCase {
+    public void testCleanup() throws Exception {
+        File parent = Files.createTempDirectory("workspace-test").toFile();
+        Workspace first = new Workspace(parent, "job", false, Workspace.Cleanup.ALWAYS);
+        Workspace second = new Workspace(parent, "job", false, Workspace.Cleanup.ON_SUCCESS);
+        File file = first.child("subtask0").child("k1").file("cnf");
+        Files.write(file.toPath(), new byte[]{1});
+        Files.write(second.child("subtask0").file("cnf").toPath(), new byte[]{2});
+        assertFalse(first.getDirectory().equals(second.getDirectory()));
+
+        first.close();
+        assertFalse(file.exists());
+        second.close();
+        assertTrue(second.getDirectory().exists());
+        second.setSucceeded(true);
+        second.close();
+        assertEquals(0, parent.list().length);
+        assertTrue(parent.delete());
+    }
+
+    public void testInMemory() throws Exception {
+        File parent = Files.createTempDirectory("workspace-test").toFile();
+        Workspace workspace = new Workspace(parent, "job", true, Workspace.Cleanup.ALWAYS);
+        Workspace child = workspace.child("k0");
+        try (OutputStream out = child.output("sat.solution")) {
+            out.write("x = true".getBytes());
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(child.input("sat.solution")))) {
+            assertEquals("x = true", in.readLine());
+        }
+        assertEquals(0, parent.list().length);
+        workspace.close();
+        assertTrue(parent.delete());
+    }
+}